@@ -8,23 +8,165 @@ const deviceLocationInput = document.getElementById('deviceLocation');
 const addDeviceBtn = document.getElementById('addDeviceBtn');
 const devicesTableBody = document.getElementById('devicesTableBody');
 const deviceMessageDiv = document.getElementById('deviceMessage');
+const deviceSearchInput = document.getElementById('deviceSearch');
 
 const loanDeviceSelect = document.getElementById('loanDeviceSelect');
 const loanBorrowedByInput = document.getElementById('loanBorrowedBy');
+const loanDueDateInput = document.getElementById('loanDueDate');
 const addLoanBtn = document.getElementById('addLoanBtn');
 const loansTableBody = document.getElementById('loansTableBody');
 const loanMessageDiv = document.getElementById('loanMessage');
 
+// Lists are served in keyset pages; follow X-Next-Cursor until the last page
+async function fetchAllPages(path) {
+    const items = [];
+    let cursor = null;
+    do {
+        const url = cursor === null ? `${API_BASE}${path}` : `${API_BASE}${path}?cursor=${cursor}`;
+        const res = await fetch(url);
+        if (!res.ok) return null;
+        items.push(...await res.json());
+        cursor = res.headers.get('X-Next-Cursor');
+    } while (cursor !== null);
+    return items;
+}
+
+// Local copies of both tables; the change feed keeps them current so actions never refetch everything
+const devicesById = new Map();
+const loansById = new Map();
+
+// Keeps whichever copy has the higher version, so a late full fetch cannot undo a newer event
+function upsert(map, item) {
+    const current = map.get(item.id);
+    if (!current || current.version == null || item.version == null || item.version >= current.version) {
+        map.set(item.id, item);
+    }
+}
+
+// Feed events that arrived while a full listing of that table was loading. The listing may predate them,
+// so they are applied again on top of it; each load registers its own list here until it is done
+const changesDuringLoad = { device: new Set(), loan: new Set() };
+
+function applyDeviceChange(change) {
+    if (change.kind === 'DELETED') {
+        devicesById.delete(change.id);
+    } else {
+        upsert(devicesById, change.data);
+    }
+}
+
+function applyLoanChange(change) {
+    upsert(loansById, change.data);
+}
+
+const applyChanges = { device: applyDeviceChange, loan: applyLoanChange };
+
+function applyChange(entity, change) {
+    changesDuringLoad[entity].forEach((changes) => changes.push(change));
+    applyChanges[entity](change);
+}
+
+// Fetches a full listing into map: ids it lacks are dropped, then everything the feed delivered since the
+// fetch started is replayed, so rows added meanwhile stay and rows deleted meanwhile do not come back
+async function loadAll(entity, path, map) {
+    const changes = [];
+    changesDuringLoad[entity].add(changes);
+    try {
+        const items = await fetchAllPages(path);
+        if (items === null) return false;
+        const ids = new Set(items.map((item) => item.id));
+        for (const id of [...map.keys()]) {
+            if (!ids.has(id)) map.delete(id);
+        }
+        items.forEach((item) => upsert(map, item));
+        changes.forEach(applyChanges[entity]);
+        return true;
+    } finally {
+        changesDuringLoad[entity].delete(changes);
+    }
+}
+
+function byId(map) {
+    return [...map.values()].sort((a, b) => a.id - b.id);
+}
+
+// EventSource reconnects on its own and resends Last-Event-ID; a reset means the server could not
+// replay what we missed, so fall back to one full load
+function subscribeToChanges() {
+    const source = new EventSource(`${API_BASE}/changes`);
+    let loaded = false;
+    const loadOnce = () => {
+        if (!loaded) {
+            loaded = true;
+            fetchDevices();
+            fetchLoans();
+        }
+    };
+    // Still load the tables if the feed is unreachable, so errors show up as before
+    source.addEventListener('open', loadOnce);
+    source.addEventListener('error', loadOnce);
+    source.addEventListener('reset', () => {
+        fetchDevices();
+        fetchLoans();
+    });
+    source.addEventListener('device', (event) => {
+        applyChange('device', JSON.parse(event.data));
+        refreshDevices();
+    });
+    source.addEventListener('loan', (event) => {
+        applyChange('loan', JSON.parse(event.data));
+        renderLoans(byId(loansById));
+    });
+}
+
 // Device Functions
+// Ranked ids of the current search, or null to list every device; rows still come from devicesById
+// so feed updates show up in the results too
+let searchResultIds = null;
+let searchRequest = 0;
+let searchTimer = null;
+
+function renderDeviceList() {
+    renderDevices(searchResultIds === null
+        ? byId(devicesById)
+        : searchResultIds.map((id) => devicesById.get(id)).filter(Boolean));
+}
+
+// Device data changed, so the loan picker may have too
+function refreshDevices() {
+    renderDeviceList();
+    populateDeviceSelect();
+}
+
+async function searchDevices() {
+    const query = deviceSearchInput.value.trim();
+    const request = ++searchRequest;
+    if (query === '') {
+        searchResultIds = null;
+        renderDeviceList();
+        return;
+    }
+    try {
+        const res = await fetch(`${API_BASE}/devices/search?q=${encodeURIComponent(query)}`);
+        if (!res.ok) throw new Error('Failed to search devices');
+        const devices = await res.json();
+        // A slower answer to an earlier keystroke must not replace the latest results
+        if (request !== searchRequest) return;
+        devices.forEach((device) => upsert(devicesById, device));
+        searchResultIds = devices.map((device) => device.id);
+        renderDeviceList();
+    } catch (err) {
+        deviceMessageDiv.textContent = err.message;
+        deviceMessageDiv.className = 'error';
+    }
+}
+
 async function fetchDevices() {
     deviceMessageDiv.textContent = '';
     deviceMessageDiv.className = '';
     try {
-        const res = await fetch(`${API_BASE}/devices`);
-        if (!res.ok) throw new Error('Failed to fetch devices');
-        const devices = await res.json();
-        renderDevices(devices);
-        populateDeviceSelect(devices);
+        if (!await loadAll('device', '/devices', devicesById)) throw new Error('Failed to fetch devices');
+        refreshDevices();
     } catch (err) {
         deviceMessageDiv.textContent = err.message;
         deviceMessageDiv.className = 'error';
@@ -49,15 +191,41 @@ function renderDevices(devices) {
     }
 }
 
-function populateDeviceSelect(devices) {
-    loanDeviceSelect.innerHTML = '';
-    for (const device of devices) {
-        if (device.status === 'AVAILABLE') {
+// The picker lists what the server's availability index reports as free. Calls made while a fetch is running
+// collapse into one more fetch once it is done; an unchanged list is answered with 304 from the ETag
+let deviceSelectLoading = false;
+let deviceSelectStale = false;
+
+async function populateDeviceSelect() {
+    if (deviceSelectLoading) {
+        deviceSelectStale = true;
+        return;
+    }
+    deviceSelectLoading = true;
+    try {
+        const res = await fetch(`${API_BASE}/devices/available`);
+        if (!res.ok) throw new Error('Failed to fetch available devices');
+        const devices = await res.json();
+        const selected = loanDeviceSelect.value;
+        loanDeviceSelect.innerHTML = '';
+        for (const device of devices) {
             const option = document.createElement('option');
             option.value = device.id;
             option.textContent = `${device.name} (${device.type})`;
             loanDeviceSelect.appendChild(option);
         }
+        if (devices.some((device) => String(device.id) === selected)) {
+            loanDeviceSelect.value = selected;
+        }
+    } catch (err) {
+        loanMessageDiv.textContent = err.message;
+        loanMessageDiv.className = 'error';
+    } finally {
+        deviceSelectLoading = false;
+        if (deviceSelectStale) {
+            deviceSelectStale = false;
+            populateDeviceSelect();
+        }
     }
 }
 
@@ -81,12 +249,13 @@ async function addDevice() {
             body: JSON.stringify({ name, type, location }),
         });
         if (!res.ok) throw new Error('Failed to add device');
+        upsert(devicesById, await res.json());
+        refreshDevices();
         deviceMessageDiv.textContent = 'Device added successfully';
         deviceMessageDiv.className = 'success';
         deviceNameInput.value = '';
         deviceTypeInput.value = '';
         deviceLocationInput.value = '';
-        fetchDevices();
     } catch (err) {
         deviceMessageDiv.textContent = err.message;
         deviceMessageDiv.className = 'error';
@@ -102,10 +271,10 @@ async function deleteDevice(id) {
             const errText = await res.text();
             throw new Error(`Failed to delete device`);
         }
+        devicesById.delete(id);
+        refreshDevices();
         deviceMessageDiv.textContent = 'Device deleted successfully';
         deviceMessageDiv.className = 'success';
-        fetchDevices();
-        fetchLoans();
     } catch (err) {
         deviceMessageDiv.textContent = err.message;
         deviceMessageDiv.className = 'error';
@@ -117,10 +286,8 @@ async function fetchLoans() {
     loanMessageDiv.textContent = '';
     loanMessageDiv.className = '';
     try {
-        const res = await fetch(`${API_BASE}/loans`);
-        if (!res.ok) throw new Error('Failed to fetch loans');
-        const loans = await res.json();
-        renderLoans(loans);
+        if (!await loadAll('loan', '/loans', loansById)) throw new Error('Failed to fetch loans');
+        renderLoans(byId(loansById));
     } catch (err) {
         loanMessageDiv.textContent = err.message;
         loanMessageDiv.className = 'error';
@@ -137,6 +304,7 @@ function renderLoans(loans) {
             <td>${loan.borrowedBy}</td>
             <td>${new Date(loan.startDate).toLocaleString()}</td>
             <td>${loan.returned ? new Date(loan.endDate).toLocaleString() : 'Not returned'}</td>
+            <td>${new Date(loan.dueDate).toLocaleDateString()}${loan.overdue && !loan.returned ? ' (overdue)' : ''}</td>
             <td>
                 ${loan.returned ? '' : `<button onclick="markReturned(${loan.id})">Mark Returned</button>`}
             </td>
@@ -150,6 +318,8 @@ async function addLoan() {
     loanMessageDiv.className = '';
     const deviceId = parseInt(loanDeviceSelect.value);
     const borrowedBy = loanBorrowedByInput.value.trim();
+    // Left empty, the server applies its default loan duration
+    const dueDate = loanDueDateInput.valueAsNumber || undefined;
 
     if (!deviceId || !borrowedBy) {
         loanMessageDiv.textContent = 'Please select a device and enter borrower name';
@@ -157,21 +327,22 @@ async function addLoan() {
         return;
     }
 
+    const deviceVersion = devicesById.get(deviceId)?.version;
     try {
         const res = await fetch(`${API_BASE}/loans`, {
             method: 'POST',
             headers: { 'Content-Type': 'application/json' },
-            body: JSON.stringify({ deviceId, borrowedBy }),
+            body: JSON.stringify({ deviceId, borrowedBy, dueDate }),
         });
         if (!res.ok) {
             const errText = await res.text();
             throw new Error(`Failed to add loan: ${errText}`);
         }
+        applyLoan(await res.json(), 'LOANED', deviceVersion);
         loanMessageDiv.textContent = 'Loan added successfully';
         loanMessageDiv.className = 'success';
         loanBorrowedByInput.value = '';
-        fetchLoans();
-        fetchDevices();
+        loanDueDateInput.value = '';
     } catch (err) {
         loanMessageDiv.textContent = err.message;
         loanMessageDiv.className = 'error';
@@ -181,26 +352,43 @@ async function addLoan() {
 async function markReturned(id) {
     loanMessageDiv.textContent = '';
     loanMessageDiv.className = '';
+    const loan = loansById.get(id);
+    const deviceVersion = loan ? devicesById.get(loan.deviceId)?.version : undefined;
     try {
         const res = await fetch(`${API_BASE}/loans/${id}/return`, { method: 'PUT' });
         if (!res.ok) {
             const errText = await res.text();
             throw new Error(`Failed to mark returned: ${errText}`);
         }
+        applyLoan(await res.json(), 'AVAILABLE', deviceVersion);
         loanMessageDiv.textContent = `Loan ${id} marked as returned`;
         loanMessageDiv.className = 'success';
-        fetchLoans();
-        fetchDevices();
     } catch (err) {
         loanMessageDiv.textContent = err.message;
         loanMessageDiv.className = 'error';
     }
 }
 
+// Shows our own change right away; the matching feed events arrive shortly after and carry the same data.
+// The device keeps the version it had before the request, so our write's device event still replaces it;
+// if the version moved while the request ran, the feed already delivered a state at least as new as ours
+function applyLoan(loan, deviceStatus, deviceVersion) {
+    upsert(loansById, loan);
+    renderLoans(byId(loansById));
+    const device = devicesById.get(loan.deviceId);
+    if (device && device.version === deviceVersion) {
+        devicesById.set(device.id, { ...device, status: deviceStatus });
+        refreshDevices();
+    }
+}
+
 // Event Listeners
 addDeviceBtn.addEventListener('click', addDevice);
+deviceSearchInput.addEventListener('input', () => {
+    clearTimeout(searchTimer);
+    searchTimer = setTimeout(searchDevices, 200);
+});
 addLoanBtn.addEventListener('click', addLoan);
 
-// Initial load
-fetchDevices();
-fetchLoans();
+// Initial load happens once the change feed is open, so nothing committed in between is missed
+subscribeToChanges();
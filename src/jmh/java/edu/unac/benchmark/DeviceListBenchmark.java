@@ -0,0 +1,86 @@
+package edu.unac.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.service.CursorPage;
+import edu.unac.service.DeviceListSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// The body of GET /api/devices (default first page) as the controller produces it: queried and written by
+// Jackson, or taken from the device list snapshot. patchedPage changes one device's status first, so every
+// read has to patch that device into a new snapshot; statusChangeOnly is the same change without the read.
+// patchedLaterPage changes a device past the first page, whose bytes the patch then keeps.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class DeviceListBenchmark {
+    private ObjectMapper objectMapper;
+    private boolean loaned;
+
+    @Setup
+    public void warmUp(InventoryFixture fixture) {
+        objectMapper = fixture.context.getBean(ObjectMapper.class);
+        // Builds the snapshot, so the parallel readers do not race for the first build
+        encodedPage(fixture);
+    }
+
+    @Benchmark
+    public byte[] queriedPage(InventoryFixture fixture) throws IOException {
+        return objectMapper.writeValueAsBytes(
+                fixture.deviceService.getDevicesPage(null, CursorPage.DEFAULT_LIMIT, null, null, null).items());
+    }
+
+    @Benchmark
+    public byte[] snapshotPage(InventoryFixture fixture) {
+        return encodedPage(fixture).json();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public byte[] snapshotPageParallel(InventoryFixture fixture) {
+        return encodedPage(fixture).json();
+    }
+
+    @Benchmark
+    public byte[] patchedPage(InventoryFixture fixture) {
+        loaned = !loaned;
+        fixture.deviceService.updateDeviceStatus(1L, loaned ? DeviceStatus.MAINTENANCE : DeviceStatus.AVAILABLE);
+        return encodedPage(fixture).json();
+    }
+
+    @Benchmark
+    public byte[] patchedLaterPage(InventoryFixture fixture) {
+        loaned = !loaned;
+        fixture.deviceService.updateDeviceStatus(fixture.uncontendedDevices,
+                loaned ? DeviceStatus.MAINTENANCE : DeviceStatus.AVAILABLE);
+        return encodedPage(fixture).json();
+    }
+
+    @Benchmark
+    public DeviceStatus statusChangeOnly(InventoryFixture fixture) {
+        loaned = !loaned;
+        return fixture.deviceService.updateDeviceStatus(1L, loaned ? DeviceStatus.MAINTENANCE : DeviceStatus.AVAILABLE)
+                .getStatus();
+    }
+
+    private static DeviceListSnapshot.EncodedDevicePage encodedPage(InventoryFixture fixture) {
+        return fixture.deviceService.getEncodedDevicesPage(null, CursorPage.DEFAULT_LIMIT)
+                .orElseThrow(() -> new AssertionError("No device list snapshot"));
+    }
+}
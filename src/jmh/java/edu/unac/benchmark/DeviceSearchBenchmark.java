@@ -0,0 +1,81 @@
+package edu.unac.benchmark;
+
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.service.DeviceSearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Exercises the index on its own, without Spring or the database lookup of the hits.
+// Query shapes, for the default 1M devices:
+//   exact     every term is rare, a handful of candidates
+//   prefix    short terms answered from the padded prefix grams
+//   broad     one common whole word; the scan stops once the top hits all score the maximum
+//   partial   one common word fragment; no whole word can match, so word-prefix hits are already the best
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class DeviceSearchBenchmark {
+    private static final String[] BRANDS = {"Epson", "Dell", "Lenovo", "Canon", "Sony", "Logitech", "Samsung", "Apple",
+            "Asus", "Benq", "Brother", "Cisco", "Garmin", "Hitachi", "Jabra", "Nikon"};
+    private static final String[] KINDS = {"Projector", "Laptop", "Tablet", "Camera", "Microphone", "Monitor", "Printer",
+            "Speaker", "Router", "Headset", "Scanner", "Webcam", "Dock", "Keyboard", "Tripod", "Charger",
+            "Drone", "Plotter", "Switch", "Whiteboard"};
+
+    @Param({"1000000"})
+    public int devices;
+
+    private DeviceSearchIndex index;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        index = new DeviceSearchIndex();
+        for (long id = 1; id <= devices; id++) {
+            String brand = BRANDS[(int) (id % BRANDS.length)];
+            String kind = KINDS[(int) (id / BRANDS.length % KINDS.length)];
+            index.index(new Device(id, brand + " " + kind + " " + id, kind, "Building " + (id % 40) + " Room " + (id % 997),
+                    DeviceStatus.AVAILABLE, 0L));
+        }
+    }
+
+    @Benchmark
+    public List<Long> exact() {
+        return index.search("epson projector 480016", DeviceSearchIndex.DEFAULT_LIMIT);
+    }
+
+    @Benchmark
+    public List<Long> prefix() {
+        return index.search("ep pr 48", DeviceSearchIndex.DEFAULT_LIMIT);
+    }
+
+    @Benchmark
+    public List<Long> broad() {
+        return index.search("laptop", DeviceSearchIndex.DEFAULT_LIMIT);
+    }
+
+    @Benchmark
+    public List<Long> partial() {
+        return index.search("lapt", DeviceSearchIndex.DEFAULT_LIMIT);
+    }
+
+    @Benchmark
+    public List<Long> missing() {
+        return index.search("typewriter", DeviceSearchIndex.DEFAULT_LIMIT);
+    }
+}
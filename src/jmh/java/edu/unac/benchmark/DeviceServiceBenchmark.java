@@ -0,0 +1,83 @@
+package edu.unac.benchmark;
+
+import edu.unac.domain.Device;
+import edu.unac.service.CursorPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeviceServiceBenchmark {
+
+    @Benchmark
+    public Long registerAndDelete(InventoryFixture fixture) {
+        return registerAndDeleteOnce(fixture);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Long registerAndDeleteParallel(InventoryFixture fixture) {
+        return registerAndDeleteOnce(fixture);
+    }
+
+    // The device has an open loan, so this measures the EXISTS guard on the loan table
+    @Benchmark
+    public Exception deleteRejected(InventoryFixture fixture) {
+        return deleteRejectedOnce(fixture);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Exception deleteRejectedParallel(InventoryFixture fixture) {
+        return deleteRejectedOnce(fixture);
+    }
+
+    @Benchmark
+    public CursorPage<Device> firstPage(InventoryFixture fixture) {
+        return fixture.deviceService.getDevicesPage(null, CursorPage.DEFAULT_LIMIT, null, null, null);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public CursorPage<Device> firstPageParallel(InventoryFixture fixture) {
+        return fixture.deviceService.getDevicesPage(null, CursorPage.DEFAULT_LIMIT, null, null, null);
+    }
+
+    @Benchmark
+    public List<Device> allDevices(InventoryFixture fixture) {
+        return fixture.deviceService.getAllDevices();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public List<Device> allDevicesParallel(InventoryFixture fixture) {
+        return fixture.deviceService.getAllDevices();
+    }
+
+    private static Long registerAndDeleteOnce(InventoryFixture fixture) {
+        Device device = fixture.deviceService.registerDevice(new Device(null, "Benchmark device", "Benchmark", "Lab", null, 0L));
+        fixture.deviceService.deleteDevice(device.getId());
+        return device.getId();
+    }
+
+    private static Exception deleteRejectedOnce(InventoryFixture fixture) {
+        try {
+            fixture.deviceService.deleteDevice(fixture.lockedDeviceId);
+            throw new AssertionError("Device with an open loan was deleted");
+        } catch (IllegalStateException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package edu.unac.benchmark;
+
+import edu.unac.InventoryManagementApplication;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.service.DeviceService;
+import edu.unac.service.LoanGroupCommitter;
+import edu.unac.service.LoanService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Boots the application without a web server against a fresh in-memory H2 and seeds it through JDBC batches.
+// Layout of the seeded device ids:
+//   1 .. uncontendedDevices               split into per-thread slices
+//   next HOT_DEVICES ids                  shared by every thread to force lost races
+//   deviceCount                           has an open loan, so deleting it is always rejected
+@State(Scope.Benchmark)
+public class InventoryFixture {
+    public static final int HOT_DEVICES = 4;
+    private static final int SEED_BATCH = 10_000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int loans;
+
+    public ConfigurableApplicationContext context;
+    public DeviceService deviceService;
+    public LoanService loanService;
+    public LoanGroupCommitter groupCommitter;
+    public long deviceCount;
+    public long uncontendedDevices;
+    public long lockedDeviceId;
+
+    @Setup(Level.Trial)
+    public void boot() {
+        context = new SpringApplicationBuilder(InventoryManagementApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:benchmark-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1",
+                        "spring.h2.console.enabled=false",
+                        "logging.level.root=WARN",
+                        // Only the calls made through groupCommitter are grouped; loanService is still called directly
+                        "inventory.loans.group-commit.enabled=true")
+                .run();
+        deviceService = context.getBean(DeviceService.class);
+        loanService = context.getBean(LoanService.class);
+        groupCommitter = context.getBean(LoanGroupCommitter.class);
+
+        deviceCount = Math.max(1_000, loans / 10);
+        uncontendedDevices = deviceCount - HOT_DEVICES - 1;
+        lockedDeviceId = deviceCount;
+        seed(context.getBean(JdbcTemplate.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        context.close();
+    }
+
+    private void seed(JdbcTemplate jdbc) {
+        long now = System.currentTimeMillis();
+        List<Object[]> rows = new ArrayList<>(SEED_BATCH);
+        for (long id = 1; id <= deviceCount; id++) {
+            DeviceStatus status = id == lockedDeviceId ? DeviceStatus.LOANED : DeviceStatus.AVAILABLE;
+            rows.add(new Object[]{id, "Device " + id, "Type " + (id % 20), "Room " + (id % 50), status.ordinal(), now});
+            if (rows.size() == SEED_BATCH || id == deviceCount) {
+                jdbc.batchUpdate("INSERT INTO device (id, name, type, location, status, added_date, version) VALUES (?, ?, ?, ?, ?, ?, 0)", rows);
+                rows.clear();
+            }
+        }
+
+        for (long id = 1; id <= loans; id++) {
+            boolean open = id == loans;
+            long deviceId = open ? lockedDeviceId : 1 + (id % deviceCount);
+            rows.add(new Object[]{id, deviceId, "Borrower " + (id % 5_000), now - 86_400_000L, open ? 0L : now, open, now + 86_400_000L});
+            if (rows.size() == SEED_BATCH || id == loans) {
+                jdbc.batchUpdate("INSERT INTO loan (id, device_id, borrowed_by, start_date, end_date, returned, due_date, overdue, version) VALUES (?, ?, ?, ?, ?, NOT ?, ?, FALSE, 0)", rows);
+                rows.clear();
+            }
+        }
+
+        // Move the pooled sequences past the seeded ids
+        jdbc.execute("ALTER SEQUENCE device_seq RESTART WITH " + (deviceCount + 100));
+        jdbc.execute("ALTER SEQUENCE loan_seq RESTART WITH " + (loans + 100L));
+    }
+}
@@ -0,0 +1,73 @@
+package edu.unac.benchmark;
+
+import edu.unac.domain.Loan;
+import edu.unac.ledger.Ledger;
+import edu.unac.ledger.LedgerRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Appends one loan record per operation to a fresh ledger under target/, which has to be on a real disk
+// for the forces to mean anything (on tmpfs they are free).
+//   syncEvery   1 forces every append, 64 batches the forces, 0 never forces (what sync-interval leaves to the timer)
+//   batch       records per append call, i.e. changes per committed transaction
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LedgerAppendBenchmark {
+    @Param({"1", "64", "0"})
+    public int syncEvery;
+
+    @Param({"1", "2"})
+    public int batch;
+
+    private Path dir;
+    private Ledger ledger;
+    private List<LedgerRecord> records;
+
+    @Setup(Level.Iteration)
+    public void open() throws IOException {
+        Files.createDirectories(Path.of("target"));
+        dir = Files.createTempDirectory(Path.of("target"), "ledger-bench");
+        ledger = Ledger.open(dir, 64 * 1024 * 1024, syncEvery);
+        Loan loan = new Loan(1L, 42L, "Borrower 4242", 1_000L, 0L, false, 1_209_601_000L, false, 0L);
+        records = Collections.nCopies(batch, LedgerRecord.of(LedgerRecord.Kind.LOAN_CREATED, loan, 1_000L));
+    }
+
+    @TearDown(Level.Iteration)
+    public void delete() throws IOException {
+        ledger.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        return ledger.append(records);
+    }
+}
@@ -0,0 +1,70 @@
+package edu.unac.benchmark;
+
+import edu.unac.domain.Loan;
+import edu.unac.service.CursorPage;
+import edu.unac.service.LoanArchive;
+import edu.unac.service.LoanArchiveReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Loan reads against the same seeded history with every returned loan left in the loan table (archived=false)
+// or moved to the archive first (archived=true). The archive report is printed once per trial.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class LoanArchiveBenchmark {
+    @Param({"false", "true"})
+    public boolean archived;
+
+    private long next;
+
+    @Setup(Level.Trial)
+    public void archive(InventoryFixture fixture) {
+        if (archived) {
+            // The fixture returns its loans "now", so a cutoff a day ahead takes all of them
+            LoanArchiveReport report = fixture.context.getBean(LoanArchive.class)
+                    .archiveReturnedBefore(System.currentTimeMillis() + 86_400_000L);
+            System.out.println("\n" + report);
+        }
+    }
+
+    @Benchmark
+    public List<Loan> loansOfDevice(InventoryFixture fixture) {
+        return fixture.loanService.getLoansByDeviceId(nextDevice(fixture));
+    }
+
+    @Benchmark
+    public List<Loan> loansOfDeviceWithArchive(InventoryFixture fixture) {
+        return fixture.loanService.getLoansByDeviceId(nextDevice(fixture), true);
+    }
+
+    @Benchmark
+    public CursorPage<Loan> openLoansPage(InventoryFixture fixture) {
+        return fixture.loanService.getLoansPage(null, 100, false, null, null);
+    }
+
+    @Benchmark
+    public CursorPage<Loan> firstLoansPage(InventoryFixture fixture) {
+        return fixture.loanService.getLoansPage(null, 100, null, null, null);
+    }
+
+    private long nextDevice(InventoryFixture fixture) {
+        return 1 + (next++ % fixture.uncontendedDevices);
+    }
+}
@@ -0,0 +1,101 @@
+package edu.unac.benchmark;
+
+import edu.unac.domain.Loan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.dao.ConcurrencyFailureException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// registerLoan and markAsReturned are measured as a pair so every device ends the invocation AVAILABLE again
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoanServiceBenchmark {
+    private static final int MAX_THREADS = 64;
+
+    @State(Scope.Thread)
+    public static class Borrower {
+        private static final AtomicInteger THREADS = new AtomicInteger();
+
+        private long first;
+        private long size;
+        private long next;
+
+        // Each thread cycles through its own slice of devices so uncontended runs never race each other
+        @Setup(Level.Trial)
+        public void pickSlice(InventoryFixture fixture) {
+            size = Math.max(1, fixture.uncontendedDevices / MAX_THREADS);
+            first = 1 + (THREADS.getAndIncrement() % MAX_THREADS) * size;
+        }
+
+        long nextDevice() {
+            return first + (next++ % size);
+        }
+    }
+
+    @Benchmark
+    public Loan loanAndReturn(InventoryFixture fixture, Borrower borrower) {
+        return cycle(fixture, borrower.nextDevice());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Loan loanAndReturnParallel(InventoryFixture fixture, Borrower borrower) {
+        return cycle(fixture, borrower.nextDevice());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Loan loanAndReturnGroupCommitted(InventoryFixture fixture, Borrower borrower) {
+        return groupCycle(fixture, borrower.nextDevice());
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Loan loanAndReturnParallelWide(InventoryFixture fixture, Borrower borrower) {
+        return cycle(fixture, borrower.nextDevice());
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Loan loanAndReturnGroupCommittedWide(InventoryFixture fixture, Borrower borrower) {
+        return groupCycle(fixture, borrower.nextDevice());
+    }
+
+    // All threads fight over a handful of devices; losers pay for the failed compare-and-set
+    @Benchmark
+    @Threads(8)
+    public Object loanAndReturnContended(InventoryFixture fixture) {
+        long device = fixture.uncontendedDevices + 1 + ThreadLocalRandom.current().nextInt(InventoryFixture.HOT_DEVICES);
+        try {
+            return cycle(fixture, device);
+        } catch (IllegalStateException | ConcurrencyFailureException e) {
+            return e;
+        }
+    }
+
+    private static Loan cycle(InventoryFixture fixture, long deviceId) {
+        Loan loan = fixture.loanService.registerLoan(new Loan(null, deviceId, "Benchmark", 0L, 0L, false));
+        return fixture.loanService.markAsReturned(loan.getId());
+    }
+
+    private static Loan groupCycle(InventoryFixture fixture, long deviceId) {
+        Loan loan = fixture.groupCommitter.registerLoan(new Loan(null, deviceId, "Benchmark", 0L, 0L, false));
+        return fixture.groupCommitter.markAsReturned(loan.getId());
+    }
+}
@@ -0,0 +1,102 @@
+package edu.unac.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.unac.domain.Loan;
+import edu.unac.service.CursorPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// One full page of loans (the 1000-row limit) read as entities or as a sparse fieldset, and written as JSON or
+// CBOR with the application's own mappers into a stream that only counts. The body sizes are printed once per
+// trial; the fetch benchmarks time the queries alone.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class RepresentationBenchmark {
+    private static final int PAGE = 1000;
+    private static final List<String> FIELDS = List.of("deviceId", "returned", "dueDate");
+
+    private ObjectMapper json;
+    private ObjectMapper cbor;
+    private List<Loan> full;
+    private List<Map<String, Object>> sparse;
+
+    @Setup(Level.Trial)
+    public void fetch(InventoryFixture fixture) throws IOException {
+        json = fixture.context.getBean(ObjectMapper.class);
+        cbor = fixture.context.getBean(MappingJackson2CborHttpMessageConverter.class).getObjectMapper();
+        full = fixture.loanService.getLoansPage(null, PAGE, null, null, null).items();
+        sparse = fixture.loanService.getLoanFieldsPage(null, PAGE, null, null, null, FIELDS).items();
+        System.out.printf("%nbytes for %d loans: json %d, cbor %d, json %s %d, cbor %s %d%n", full.size(),
+                write(json, full), write(cbor, full), FIELDS, write(json, sparse), FIELDS, write(cbor, sparse));
+    }
+
+    @Benchmark
+    public long jsonFull() throws IOException {
+        return write(json, full);
+    }
+
+    @Benchmark
+    public long cborFull() throws IOException {
+        return write(cbor, full);
+    }
+
+    @Benchmark
+    public long jsonSparse() throws IOException {
+        return write(json, sparse);
+    }
+
+    @Benchmark
+    public long cborSparse() throws IOException {
+        return write(cbor, sparse);
+    }
+
+    @Benchmark
+    public CursorPage<Loan> fetchFull(InventoryFixture fixture) {
+        return fixture.loanService.getLoansPage(null, PAGE, null, null, null);
+    }
+
+    @Benchmark
+    public CursorPage<Map<String, Object>> fetchSparse(InventoryFixture fixture) {
+        return fixture.loanService.getLoanFieldsPage(null, PAGE, null, null, null, FIELDS);
+    }
+
+    private static long write(ObjectMapper mapper, Object body) throws IOException {
+        CountingStream out = new CountingStream();
+        mapper.writeValue(out, body);
+        return out.count;
+    }
+
+    private static final class CountingStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
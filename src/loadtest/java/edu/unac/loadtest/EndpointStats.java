@@ -0,0 +1,85 @@
+package edu.unac.loadtest;
+
+import io.micrometer.core.instrument.binder.http.Outcome;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Responses are grouped by status class the way http.server.requests tags its outcome, so 4xx answers count as
+// errors as well as 5xx ones; the exact status codes and failure types are kept alongside for the detail
+final class EndpointStats {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(2);
+    // Requests that got no HTTP response at all
+    private static final String FAILED = "FAILED";
+    private static final String DROPPED = "DROPPED";
+
+    private final Histogram latencyMicros = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> statuses = new ConcurrentHashMap<>();
+
+    void recordResponse(long latencyNanos, int status) {
+        Outcome outcome = Outcome.forStatus(status);
+        record(latencyNanos, outcome.name(), String.valueOf(status),
+                outcome != Outcome.SUCCESS && outcome != Outcome.REDIRECTION && outcome != Outcome.INFORMATIONAL);
+    }
+
+    void recordFailure(long latencyNanos, Throwable cause) {
+        record(latencyNanos, FAILED, cause.getClass().getSimpleName(), true);
+    }
+
+    // The generator could not send the request on time because too many were still in flight
+    void recordDropped() {
+        requests.increment();
+        errors.increment();
+        count(outcomes, DROPPED);
+    }
+
+    private void record(long latencyNanos, String outcome, String status, boolean error) {
+        latencyMicros.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), HIGHEST_TRACKABLE_MICROS));
+        requests.increment();
+        if (error) {
+            errors.increment();
+        }
+        count(outcomes, outcome);
+        count(statuses, status);
+    }
+
+    private static void count(Map<String, LongAdder> counts, String key) {
+        counts.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    Map<String, Object> toReport(double measuredSeconds) {
+        long count = requests.sum();
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("p50", latencyMicros.getValueAtPercentile(50));
+        latency.put("p90", latencyMicros.getValueAtPercentile(90));
+        latency.put("p99", latencyMicros.getValueAtPercentile(99));
+        latency.put("p99.9", latencyMicros.getValueAtPercentile(99.9));
+        latency.put("max", latencyMicros.getMaxValue());
+        latency.put("mean", Math.round(latencyMicros.getMean()));
+
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("requests", count);
+        report.put("errors", errors.sum());
+        report.put("errorRate", count == 0 ? 0.0 : (double) errors.sum() / count);
+        report.put("throughputPerSecond", count / measuredSeconds);
+        report.put("latencyMicros", latency);
+        report.put("outcomes", sums(outcomes));
+        report.put("statuses", sums(statuses));
+        return report;
+    }
+
+    private static Map<String, Long> sums(Map<String, LongAdder> counts) {
+        Map<String, Long> sums = new LinkedHashMap<>();
+        counts.forEach((key, adder) -> sums.put(key, adder.sum()));
+        return sums;
+    }
+}
@@ -0,0 +1,77 @@
+package edu.unac.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+// Parsed from --key=value arguments, every key is optional
+public record LoadTestConfig(
+        String target,
+        double rate,
+        Duration duration,
+        Duration warmup,
+        int seedDevices,
+        int maxInFlight,
+        int clients,
+        boolean compareThreads,
+        Map<Operation, Integer> mix,
+        Path report,
+        String label,
+        Map<String, String> appProperties) {
+
+    static final String DEFAULT_MIX = "register_device:15,loan:20,return:20,list_devices:30,list_loans:10,delete_device:5";
+
+    boolean closedLoop() {
+        return clients > 0;
+    }
+
+    LoadTestConfig withAppProperty(String key, String value) {
+        Map<String, String> properties = new HashMap<>(appProperties);
+        properties.put(key, value);
+        return new LoadTestConfig(target, rate, duration, warmup, seedDevices, maxInFlight, clients, compareThreads,
+                mix, report, label, properties);
+    }
+
+    static LoadTestConfig parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        Map<String, String> appProperties = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value but got " + arg);
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            // --app.<property>=<value> is passed through to the application under test
+            if (key.startsWith("app.")) {
+                appProperties.put(key.substring(4), value);
+            } else {
+                options.put(key, value);
+            }
+        }
+
+        return new LoadTestConfig(
+                options.get("target"),
+                Double.parseDouble(options.getOrDefault("rate", "100")),
+                Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "30"))),
+                Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "5"))),
+                Integer.parseInt(options.getOrDefault("seed-devices", "200")),
+                Integer.parseInt(options.getOrDefault("max-in-flight", "2000")),
+                Integer.parseInt(options.getOrDefault("clients", "0")),
+                Boolean.parseBoolean(options.getOrDefault("compare-threads", "false")),
+                parseMix(options.getOrDefault("mix", DEFAULT_MIX)),
+                Path.of(options.getOrDefault("report", "target/loadtest-report.json")),
+                options.getOrDefault("label", "default"),
+                appProperties);
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split(":");
+            weights.put(Operation.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,326 @@
+package edu.unac.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.unac.InventoryManagementApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * HTTP load generator for the inventory REST API.
+ *
+ * <p>By default it runs open-loop: requests are scheduled at a fixed arrival rate whether or not earlier ones
+ * have completed, and every latency is measured from the intended send time, so a stalled server shows up in
+ * the percentiles instead of silently lowering the offered load. With {@code --clients=N} it runs closed-loop
+ * instead: N concurrent clients (one virtual thread each) send a request, wait for the response and
+ * immediately send the next, which is how many idle-then-busy desk clients hold connections open. Unless
+ * {@code --target} points at a running server, the application is started in-process on a random port
+ * against a private in-memory H2. {@code --compare-threads=true} runs the same load twice in-process, first
+ * with platform request threads and then with {@code spring.threads.virtual.enabled=true}, and writes both
+ * results side by side.
+ *
+ * <pre>
+ * mvn -Ploadtest test-compile exec:exec -Dloadtest.args="--rate=300 --duration=60 --label=release-1.2"
+ * mvn -Ploadtest test-compile exec:exec -Dloadtest.args="--clients=2000 --duration=60 --compare-threads=true"
+ * </pre>
+ *
+ * Options: {@code --rate} (requests/s), {@code --clients}, {@code --compare-threads}, {@code --duration} and
+ * {@code --warmup} (seconds), {@code --mix} (e.g. {@code loan:20,return:20,list_devices:60}),
+ * {@code --seed-devices}, {@code --max-in-flight},
+ * {@code --report} (JSON output path), {@code --label}, {@code --target} and {@code --app.<property>=<value>}
+ * to override application properties. The JSON report has one entry per operation with request count,
+ * error rate, throughput, outcomes by status class, status codes and p50/p90/p99/p99.9 latency in microseconds.
+ * Every response outside 1xx-3xx counts as an error.
+ */
+public final class LoadTestRunner {
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final String VIRTUAL_THREADS_PROPERTY = "spring.threads.virtual.enabled";
+
+    private final LoadTestConfig config;
+    private final URI base;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Operation, EndpointStats> stats = new EnumMap<>(Operation.class);
+    private final Queue<Long> availableDevices = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> openLoans = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Operation[] weightedOperations;
+    private long measureFromNanos;
+
+    LoadTestRunner(LoadTestConfig config, URI base) {
+        this.config = config;
+        this.base = base;
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new EndpointStats());
+        }
+        int total = config.mix().values().stream().mapToInt(Integer::intValue).sum();
+        weightedOperations = new Operation[total];
+        int i = 0;
+        for (Map.Entry<Operation, Integer> entry : config.mix().entrySet()) {
+            for (int w = 0; w < entry.getValue(); w++) {
+                weightedOperations[i++] = entry.getKey();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.parse(args);
+        Map<String, Object> report;
+        if (config.compareThreads()) {
+            if (config.target() != null) {
+                throw new IllegalArgumentException("--compare-threads starts the application itself and cannot use --target");
+            }
+            Map<String, Object> comparison = new LinkedHashMap<>();
+            comparison.put("platform", runAgainst(config.withAppProperty(VIRTUAL_THREADS_PROPERTY, "false")));
+            comparison.put("virtual", runAgainst(config.withAppProperty(VIRTUAL_THREADS_PROPERTY, "true")));
+            report = new LinkedHashMap<>();
+            report.put("label", config.label());
+            report.put("comparison", comparison);
+        } else {
+            report = runAgainst(config);
+        }
+
+        Files.createDirectories(config.report().toAbsolutePath().getParent());
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(config.report().toFile(), report);
+        System.out.println("Report written to " + config.report().toAbsolutePath());
+    }
+
+    private static Map<String, Object> runAgainst(LoadTestConfig config) throws Exception {
+        ConfigurableApplicationContext application = null;
+        String target = config.target();
+        if (target == null) {
+            application = startApplication(config);
+            target = "http://localhost:" + ((WebServerApplicationContext) application).getWebServer().getPort();
+        }
+
+        try {
+            return new LoadTestRunner(config, URI.create(target)).run();
+        } finally {
+            if (application != null) {
+                application.close();
+            }
+        }
+    }
+
+    static ConfigurableApplicationContext startApplication(LoadTestConfig config) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("spring.datasource.url", "jdbc:h2:mem:loadtest-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        properties.put("spring.h2.console.enabled", "false");
+        properties.put("logging.level.root", "WARN");
+        properties.putAll(config.appProperties());
+        return new SpringApplicationBuilder(InventoryManagementApplication.class)
+                .properties(properties)
+                .logStartupInfo(false)
+                .run();
+    }
+
+    Map<String, Object> run() throws Exception {
+        Instant startedAt = Instant.now();
+        seed();
+
+        long start = System.nanoTime();
+        measureFromNanos = start + config.warmup().toNanos();
+        long end = measureFromNanos + config.duration().toNanos();
+        if (config.closedLoop()) {
+            runClosedLoop(end);
+        } else {
+            runOpenLoop(start, end);
+        }
+
+        long drainDeadline = System.nanoTime() + REQUEST_TIMEOUT.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+
+        return report(startedAt);
+    }
+
+    private void runOpenLoop(long start, long end) {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / config.rate());
+        for (long intended = start; intended < end; intended += intervalNanos) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Operation operation = nextOperation();
+            if (inFlight.get() >= config.maxInFlight()) {
+                if (intended >= measureFromNanos) {
+                    stats.get(operation).recordDropped();
+                }
+                continue;
+            }
+            dispatch(operation, intended);
+        }
+    }
+
+    // Each client waits for its response before sending again, so latency is measured from the actual send
+    private void runClosedLoop(long end) {
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < config.clients(); c++) {
+                clients.execute(() -> {
+                    while (System.nanoTime() < end) {
+                        dispatch(nextOperation(), System.nanoTime()).join();
+                    }
+                });
+            }
+        }
+    }
+
+    private Operation nextOperation() {
+        return weightedOperations[ThreadLocalRandom.current().nextInt(weightedOperations.length)];
+    }
+
+    private void seed() throws IOException, InterruptedException {
+        for (int i = 0; i < config.seedDevices(); i++) {
+            HttpResponse<String> response = httpClient.send(registerDeviceRequest(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 201) {
+                availableDevices.add(objectMapper.readTree(response.body()).get("id").asLong());
+            }
+        }
+    }
+
+    private CompletableFuture<Void> dispatch(Operation operation, long intended) {
+        return switch (operation) {
+            case REGISTER_DEVICE -> send(operation, intended, registerDeviceRequest(), response -> {
+                if (response.statusCode() == 201) {
+                    availableDevices.add(idOf(response));
+                }
+            });
+            case LOAN -> {
+                Long deviceId = availableDevices.poll();
+                if (deviceId == null) {
+                    yield dispatch(Operation.LIST_DEVICES, intended);
+                }
+                String body = "{\"deviceId\":" + deviceId + ",\"borrowedBy\":\"Load Test\"}";
+                yield send(operation, intended, json("/api/loans").POST(HttpRequest.BodyPublishers.ofString(body)).build(), response -> {
+                    if (response.statusCode() == 201) {
+                        openLoans.add(idOf(response));
+                    }
+                });
+            }
+            case RETURN -> {
+                Long loanId = openLoans.poll();
+                if (loanId == null) {
+                    yield dispatch(Operation.LIST_LOANS, intended);
+                }
+                yield send(operation, intended, json("/api/loans/" + loanId + "/return").PUT(HttpRequest.BodyPublishers.noBody()).build(), response -> {
+                    if (response.statusCode() == 200) {
+                        availableDevices.add(field(response, "deviceId"));
+                    }
+                });
+            }
+            case LIST_DEVICES -> send(operation, intended, json("/api/devices?limit=100").GET().build(), response -> { });
+            case LIST_LOANS -> send(operation, intended, json("/api/loans?limit=100").GET().build(), response -> { });
+            case DELETE_DEVICE -> {
+                Long deviceId = availableDevices.poll();
+                if (deviceId == null) {
+                    yield dispatch(Operation.LIST_DEVICES, intended);
+                }
+                yield send(operation, intended, json("/api/devices/" + deviceId).DELETE().build(), response -> { });
+            }
+        };
+    }
+
+    // Failures are counted in the stats rather than surfaced through the returned stage
+    private CompletableFuture<Void> send(Operation operation, long intended, HttpRequest request, Consumer<HttpResponse<String>> onResponse) {
+        inFlight.incrementAndGet();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()).handle((response, failure) -> {
+            long latency = System.nanoTime() - intended;
+            try {
+                if (intended >= measureFromNanos) {
+                    if (failure != null) {
+                        Throwable cause = failure.getCause() != null ? failure.getCause() : failure;
+                        stats.get(operation).recordFailure(latency, cause);
+                    } else {
+                        stats.get(operation).recordResponse(latency, response.statusCode());
+                    }
+                }
+                if (response != null) {
+                    onResponse.accept(response);
+                }
+            } catch (IllegalStateException e) {
+                // Unexpected body; the status was already recorded above
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            return null;
+        });
+    }
+
+    private HttpRequest registerDeviceRequest() {
+        String body = "{\"name\":\"Load test device\",\"type\":\"Benchmark\",\"location\":\"Lab\"}";
+        return json("/api/devices").POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+
+    private HttpRequest.Builder json(String path) {
+        return HttpRequest.newBuilder(base.resolve(path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json");
+    }
+
+    private long idOf(HttpResponse<String> response) {
+        return field(response, "id");
+    }
+
+    private long field(HttpResponse<String> response, String name) {
+        try {
+            JsonNode node = objectMapper.readTree(response.body());
+            return node.get(name).asLong();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected response body: " + response.body(), e);
+        }
+    }
+
+    private Map<String, Object> report(Instant startedAt) {
+        double measuredSeconds = config.duration().toMillis() / 1000.0;
+
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("mode", config.closedLoop() ? "closed" : "open");
+        settings.put("clients", config.clients());
+        settings.put("rate", config.rate());
+        settings.put("durationSeconds", config.duration().toSeconds());
+        settings.put("warmupSeconds", config.warmup().toSeconds());
+        settings.put("mix", config.mix());
+        settings.put("maxInFlight", config.maxInFlight());
+        settings.put("appProperties", config.appProperties());
+
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        stats.forEach((operation, endpoint) -> endpoints.put(operation.name().toLowerCase(), endpoint.toReport(measuredSeconds)));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("label", config.label());
+        report.put("target", base.toString());
+        report.put("startedAt", startedAt.toString());
+        report.put("config", settings);
+        report.put("endpoints", endpoints);
+        return report;
+    }
+}
@@ -0,0 +1,10 @@
+package edu.unac.loadtest;
+
+public enum Operation {
+    REGISTER_DEVICE,
+    LOAN,
+    RETURN,
+    LIST_DEVICES,
+    LIST_LOANS,
+    DELETE_DEVICE
+}
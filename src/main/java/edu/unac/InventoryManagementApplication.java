@@ -1,11 +1,26 @@
 package edu.unac;
 
+import edu.unac.ledger.LedgerWriter;
+import edu.unac.service.ChangeLogService;
+import edu.unac.service.LoanArchive;
+import edu.unac.service.OverdueLoanScanner;
+import org.springframework.boot.LazyInitializationExcludeFilter;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class InventoryManagementApplication {
     public static void main(String[] args) {
         SpringApplication.run(InventoryManagementApplication.class, args);
     }
+
+    // With spring.main.lazy-initialization the scheduled jobs would never run until something injected their beans
+    @Bean
+    static LazyInitializationExcludeFilter eagerScheduledJobs() {
+        return LazyInitializationExcludeFilter.forBeanTypes(ChangeLogService.class, OverdueLoanScanner.class, LedgerWriter.class,
+                LoanArchive.class);
+    }
 }
@@ -0,0 +1,46 @@
+package edu.unac.controller;
+
+import edu.unac.service.AnalyticsRebuildReport;
+import edu.unac.service.AnalyticsService;
+import edu.unac.service.UsageReport;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/analytics")
+@CrossOrigin(origins = "*")
+public class AnalyticsController {
+    private final AnalyticsService analyticsService;
+
+    public AnalyticsController(AnalyticsService analyticsService) {
+        this.analyticsService = analyticsService;
+    }
+
+    @GetMapping("/devices/{deviceId}")
+    public ResponseEntity<UsageReport> getDeviceUsage(@PathVariable("deviceId") Long deviceId) {
+        return analyticsService.getDeviceUsage(deviceId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+
+    @GetMapping("/types")
+    public ResponseEntity<List<UsageReport>> getAllTypeUsage() {
+        return ResponseEntity.ok(analyticsService.getAllTypeUsage());
+    }
+
+    @GetMapping("/types/{type}")
+    public ResponseEntity<UsageReport> getTypeUsage(@PathVariable("type") String type) {
+        return analyticsService.getTypeUsage(type)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+
+    // Recomputes every aggregate from the loan history; reads keep being served from the partial state meanwhile
+    @PostMapping("/rebuild")
+    public ResponseEntity<AnalyticsRebuildReport> rebuild() {
+        return ResponseEntity.ok(analyticsService.rebuild());
+    }
+}
@@ -0,0 +1,23 @@
+package edu.unac.controller;
+
+import edu.unac.event.ChangeFeed;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/api/changes")
+@CrossOrigin(origins = "*")
+public class ChangeFeedController {
+    private final ChangeFeed changeFeed;
+
+    public ChangeFeedController(ChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+
+    // EventSource resends the id of the last event it saw in Last-Event-ID when it reconnects
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return changeFeed.subscribe(lastEventId);
+    }
+}
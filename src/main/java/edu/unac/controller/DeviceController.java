@@ -2,32 +2,158 @@ package edu.unac.controller;
 
 import edu.unac.domain.Device;
 import edu.unac.domain.DeviceStatus;
+import edu.unac.service.ChangeLogService;
+import edu.unac.service.ChangeSet;
+import edu.unac.service.ChangesCompactedException;
+import edu.unac.service.CursorPage;
+import edu.unac.service.DeviceCache;
+import edu.unac.service.DeviceImportReport;
+import edu.unac.service.DeviceImportService;
+import edu.unac.service.DeviceListSnapshot;
+import edu.unac.service.DeviceSearchIndex;
 import edu.unac.service.DeviceService;
+import edu.unac.service.ResourceVersions;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/devices")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = {CursorPage.NEXT_CURSOR_HEADER, HttpHeaders.ETAG})
 public class  DeviceController {
+    private static final String TEXT_CSV_VALUE = "text/csv";
+
     private final DeviceService deviceService;
+    private final DeviceImportService deviceImportService;
+    private final ChangeLogService changeLogService;
+    private final ResourceVersions resourceVersions;
 
-    public DeviceController(DeviceService deviceService) {
+    public DeviceController(DeviceService deviceService, DeviceImportService deviceImportService,
+                            ChangeLogService changeLogService, ResourceVersions resourceVersions) {
         this.deviceService = deviceService;
+        this.deviceImportService = deviceImportService;
+        this.changeLogService = changeLogService;
+        this.resourceVersions = resourceVersions;
     }
 
     @GetMapping
-    public ResponseEntity<List<Device>> getAllDevices() {
-        return ResponseEntity.ok(deviceService.getAllDevices());
+    public ResponseEntity<?> getAllDevices(
+            @RequestParam(value = "cursor", required = false) Long cursor,
+            @RequestParam(value = "limit", defaultValue = "" + CursorPage.DEFAULT_LIMIT) int limit,
+            @RequestParam(value = "status", required = false) DeviceStatus status,
+            @RequestParam(value = "type", required = false) String type,
+            @RequestParam(value = "location", required = false) String location,
+            @RequestParam(value = "fields", required = false) List<String> fields,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            WebRequest request) {
+        boolean cbor = Representation.prefersCbor(accept, MediaType.APPLICATION_CBOR);
+        String tag = resourceVersions.devicesTag();
+        try {
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .contentType(cbor ? MediaType.APPLICATION_CBOR : MediaType.APPLICATION_JSON)
+                    .cacheControl(CacheControl.noCache())
+                    .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+            // The plain list is written from the snapshot's bytes as they are. Reading the snapshot costs no query,
+            // so its tag can name the encoding actually sent
+            if (status == null && type == null && location == null && fields == null && !cbor) {
+                Optional<DeviceListSnapshot.EncodedDevicePage> encoded = deviceService.getEncodedDevicesPage(cursor, limit);
+                if (encoded.isPresent()) {
+                    boolean gzip = encoded.get().gzip() != null && Representation.acceptsGzip(acceptEncoding);
+                    if (request.checkNotModified(Representation.etag(tag, false, null, gzip))) {
+                        return null;
+                    }
+                    return encodedPage(response, encoded.get(), gzip);
+                }
+            }
+            // A matching If-None-Match is answered with 304 before any query or serialization
+            if (request.checkNotModified(Representation.etag(tag, cbor, fields))) {
+                return null;
+            }
+            CursorPage<?> page = fields == null
+                    ? deviceService.getDevicesPage(cursor, limit, status, type, location)
+                    : deviceService.getDeviceFieldsPage(cursor, limit, status, type, location, fields);
+            if (page.nextCursor() != null) {
+                response.header(CursorPage.NEXT_CURSOR_HEADER, page.nextCursor().toString());
+            }
+            return response.body(page.items());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+
+    private static ResponseEntity<byte[]> encodedPage(ResponseEntity.BodyBuilder response,
+                                                      DeviceListSnapshot.EncodedDevicePage page, boolean gzip) {
+        if (page.nextCursor() != null) {
+            response.header(CursorPage.NEXT_CURSOR_HEADER, page.nextCursor().toString());
+        }
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(page.gzip());
+        }
+        return response.body(page.json());
+    }
+
+    @GetMapping("/available")
+    public ResponseEntity<List<Device>> getAvailableDevices(
+            @RequestParam(value = "type", required = false) String type,
+            @RequestParam(value = "location", required = false) String location,
+            WebRequest request) {
+        // Every device change moves the tag, so it also covers the filtered lists
+        if (request.checkNotModified(resourceVersions.devicesTag())) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache())
+                .body(deviceService.getAvailableDevices(type, location));
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<List<Device>> searchDevices(
+            @RequestParam(value = "q") String query,
+            @RequestParam(value = "limit", defaultValue = "" + DeviceSearchIndex.DEFAULT_LIMIT) int limit) {
+        try {
+            return ResponseEntity.ok(deviceService.searchDevices(query, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+
+    @GetMapping("/changes")
+    public ResponseEntity<ChangeSet<Device>> getDeviceChanges(
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestParam(value = "limit", defaultValue = "" + ChangeSet.DEFAULT_LIMIT) int limit) {
+        try {
+            return ResponseEntity.ok(changeLogService.getDeviceChanges(since, limit));
+        } catch (ChangesCompactedException e) {
+            // Client is too far behind; it has to reload everything
+            return ResponseEntity.status(HttpStatus.GONE).build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, DeviceCache.CacheRegionStats>> getCacheStats() {
+        return ResponseEntity.ok(deviceService.getCacheStats());
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Device> getDeviceById(@PathVariable("id") Long id) {
+    public ResponseEntity<Device> getDeviceById(@PathVariable("id") Long id, WebRequest request) {
+        if (request.checkNotModified(resourceVersions.deviceTag(id))) {
+            return null;
+        }
         return deviceService.getDeviceById(id)
-                .map(ResponseEntity::ok)
+                .map(device -> ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(device))
                 .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
     }
 
@@ -41,6 +167,21 @@ public class  DeviceController {
         }
     }
 
+    @PostMapping(value = "/import", consumes = {TEXT_CSV_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<DeviceImportReport> importDevices(
+            @RequestHeader("Content-Type") MediaType contentType,
+            @RequestParam(value = "chunkSize", required = false) Integer chunkSize,
+            InputStream body) throws IOException {
+        try {
+            DeviceImportReport report = MediaType.APPLICATION_NDJSON.isCompatibleWith(contentType)
+                    ? deviceImportService.importNdjson(body, chunkSize)
+                    : deviceImportService.importCsv(body, chunkSize);
+            return ResponseEntity.ok(report);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+
     @PutMapping("/{id}/status")
     public ResponseEntity<Device> updateDeviceStatus(@PathVariable("id") Long id, @RequestParam("status") DeviceStatus status) {
         try {
@@ -48,6 +189,9 @@ public class  DeviceController {
             return ResponseEntity.ok(updated);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        } catch (ConcurrencyFailureException e) {
+            // Device was modified by a concurrent request
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         }
     }
 
@@ -1,28 +1,148 @@
 package edu.unac.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import edu.unac.domain.Loan;
+import edu.unac.service.BatchMode;
+import edu.unac.service.BorrowerLoanCount;
+import edu.unac.service.ChangeLogService;
+import edu.unac.service.ChangeSet;
+import edu.unac.service.ChangesCompactedException;
+import edu.unac.service.CursorPage;
+import edu.unac.service.LoanArchive;
+import edu.unac.service.LoanArchiveReport;
+import edu.unac.service.LoanBatchResult;
+import edu.unac.service.LoanGroupCommitter;
 import edu.unac.service.LoanService;
+import edu.unac.service.ResourceVersions;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/loans")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = {CursorPage.NEXT_CURSOR_HEADER, HttpHeaders.ETAG})
 public class LoanController {
+    private static final int EXPORT_FLUSH_EVERY = 500;
+
     private final LoanService loanService;
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper cborMapper;
+    private final ChangeLogService changeLogService;
+    private final ResourceVersions resourceVersions;
+    private final LoanGroupCommitter groupCommitter;
+    private final LoanArchive loanArchive;
 
-    public LoanController(LoanService loanService) {
+    public LoanController(LoanService loanService, ObjectMapper objectMapper, ChangeLogService changeLogService,
+                          ResourceVersions resourceVersions, LoanGroupCommitter groupCommitter,
+                          LoanArchive loanArchive, MappingJackson2CborHttpMessageConverter cborConverter) {
         this.loanService = loanService;
+        this.objectMapper = objectMapper;
+        this.cborMapper = cborConverter.getObjectMapper();
+        this.changeLogService = changeLogService;
+        this.resourceVersions = resourceVersions;
+        this.groupCommitter = groupCommitter;
+        this.loanArchive = loanArchive;
     }
 
     @GetMapping
-    public ResponseEntity<List<Loan>> getAllLoans() {
-        return ResponseEntity.ok(loanService.getAllLoans());
+    public ResponseEntity<List<?>> getAllLoans(
+            @RequestParam(value = "cursor", required = false) Long cursor,
+            @RequestParam(value = "limit", defaultValue = "" + CursorPage.DEFAULT_LIMIT) int limit,
+            @RequestParam(value = "returned", required = false) Boolean returned,
+            @RequestParam(value = "deviceId", required = false) Long deviceId,
+            @RequestParam(value = "overdue", required = false) Boolean overdue,
+            @RequestParam(value = "fields", required = false) List<String> fields,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        boolean cbor = Representation.prefersCbor(accept, MediaType.APPLICATION_CBOR);
+        try {
+            CursorPage<?> page = fields == null
+                    ? loanService.getLoansPage(cursor, limit, returned, deviceId, overdue)
+                    : loanService.getLoanFieldsPage(cursor, limit, returned, deviceId, overdue, fields);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .contentType(cbor ? MediaType.APPLICATION_CBOR : MediaType.APPLICATION_JSON)
+                    .varyBy(HttpHeaders.ACCEPT);
+            if (page.nextCursor() != null) {
+                response.header(CursorPage.NEXT_CURSOR_HEADER, page.nextCursor().toString());
+            }
+            return response.body(page.items());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+
+    @GetMapping("/changes")
+    public ResponseEntity<ChangeSet<Loan>> getLoanChanges(
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestParam(value = "limit", defaultValue = "" + ChangeSet.DEFAULT_LIMIT) int limit) {
+        try {
+            return ResponseEntity.ok(changeLogService.getLoanChanges(since, limit));
+        } catch (ChangesCompactedException e) {
+            // Client is too far behind; it has to reload everything
+            return ResponseEntity.status(HttpStatus.GONE).build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+
+    // NDJSON by default; a CBOR sequence (RFC 8742), one item per loan, for clients that prefer it
+    @GetMapping(value = "/export", produces = {MediaType.APPLICATION_NDJSON_VALUE, Representation.APPLICATION_CBOR_SEQ_VALUE})
+    public ResponseEntity<StreamingResponseBody> exportLoans(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestParam(value = "includeArchived", defaultValue = "false") boolean includeArchived) {
+        boolean gzip = Representation.acceptsGzip(acceptEncoding);
+        boolean cbor = Representation.prefersCbor(accept, Representation.APPLICATION_CBOR_SEQ);
+        ObjectMapper mapper = cbor ? cborMapper : objectMapper;
+        // Flushing is left to EXPORT_FLUSH_EVERY; a flush per row would sync-flush the gzip stream once per loan
+        ObjectWriter writer = mapper.writerFor(Loan.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        StreamingResponseBody body = out -> {
+            OutputStream target = gzip ? new GZIPOutputStream(out, 8192, true) : out;
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(target)) {
+                int[] written = {0};
+                loanService.exportLoans(loan -> {
+                    try {
+                        writer.writeValue(generator, loan);
+                        // CBOR items delimit themselves
+                        if (!cbor) {
+                            generator.writeRaw('\n');
+                        }
+                        if (++written[0] % EXPORT_FLUSH_EVERY == 1) {
+                            generator.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, includeArchived);
+            }
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(cbor ? Representation.APPLICATION_CBOR_SEQ : MediaType.APPLICATION_NDJSON)
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
     }
 
     @GetMapping("/{id}")
@@ -35,28 +155,110 @@ public class LoanController {
     @PostMapping
     public ResponseEntity<Loan> registerLoan(@RequestBody Loan loan) {
         try {
-            Loan created = loanService.registerLoan(loan);
+            Loan created = groupCommitter.registerLoan(loan);
             return ResponseEntity.status(HttpStatus.CREATED).body(created);
         } catch (IllegalArgumentException | IllegalStateException e) {
             return ResponseEntity.badRequest().body(null);
+        } catch (ConcurrencyFailureException e) {
+            // Another request loaned the device first
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         }
     }
 
     @PutMapping("/{id}/return")
     public ResponseEntity<Loan> markAsReturned(@PathVariable("id") Long id) {
         try {
-            Loan updated = loanService.markAsReturned(id);
+            Loan updated = groupCommitter.markAsReturned(id);
             return ResponseEntity.ok(updated);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-        } catch (IllegalStateException e) {
-            // Loan already returned
+        } catch (IllegalStateException | ConcurrencyFailureException e) {
+            // Loan already returned, possibly by a concurrent request
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    @PostMapping("/batch")
+    public ResponseEntity<List<LoanBatchResult>> registerLoans(
+            @RequestBody List<Loan> loans,
+            @RequestParam(value = "mode", defaultValue = "ALL_OR_NOTHING") BatchMode mode) {
+        try {
+            return batchResponse(loanService.registerLoans(loans, mode), mode);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        } catch (ConcurrencyFailureException e) {
+            // A device in the batch was changed by a concurrent request, nothing was applied
             return ResponseEntity.status(HttpStatus.CONFLICT).build();
         }
     }
 
+    @PutMapping("/return/batch")
+    public ResponseEntity<List<LoanBatchResult>> markAllAsReturned(
+            @RequestBody List<Long> loanIds,
+            @RequestParam(value = "mode", defaultValue = "ALL_OR_NOTHING") BatchMode mode) {
+        try {
+            return batchResponse(loanService.markAllAsReturned(loanIds, mode), mode);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        } catch (ConcurrencyFailureException e) {
+            // A loan or device in the batch was changed by a concurrent request, nothing was applied
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    private static ResponseEntity<List<LoanBatchResult>> batchResponse(List<LoanBatchResult> results, BatchMode mode) {
+        if (mode == BatchMode.ALL_OR_NOTHING && results.stream().anyMatch(result -> !result.applied())) {
+            return ResponseEntity.badRequest().body(results);
+        }
+        return ResponseEntity.ok(results);
+    }
+
     @GetMapping("/device/{deviceId}")
-    public ResponseEntity<List<Loan>> getLoansByDeviceId(@PathVariable("deviceId") Long deviceId) {
-        return ResponseEntity.ok(loanService.getLoansByDeviceId(deviceId));
+    public ResponseEntity<List<Loan>> getLoansByDeviceId(
+            @PathVariable("deviceId") Long deviceId,
+            @RequestParam(value = "includeArchived", defaultValue = "false") boolean includeArchived,
+            WebRequest request) {
+        // A matching If-None-Match is answered with 304 before any query or serialization
+        if (request.checkNotModified(resourceVersions.deviceLoansTag(deviceId, includeArchived))) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache())
+                .body(loanService.getLoansByDeviceId(deviceId, includeArchived));
+    }
+
+    // Full history by default; active=true keeps only the loans not yet returned
+    @GetMapping("/borrower/{name}")
+    public ResponseEntity<List<Loan>> getLoansByBorrower(
+            @PathVariable("name") String name,
+            @RequestParam(value = "active", defaultValue = "false") boolean active,
+            @RequestParam(value = "cursor", required = false) Long cursor,
+            @RequestParam(value = "limit", defaultValue = "" + CursorPage.DEFAULT_LIMIT) int limit) {
+        try {
+            CursorPage<Loan> page = loanService.getLoansByBorrower(name, active, cursor, limit);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.nextCursor() != null) {
+                response.header(CursorPage.NEXT_CURSOR_HEADER, page.nextCursor().toString());
+            }
+            return response.body(page.items());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+
+    // Answered from memory, without a query
+    @GetMapping("/borrower/{name}/count")
+    public ResponseEntity<BorrowerLoanCount> getBorrowerLoanCount(@PathVariable("name") String name) {
+        return ResponseEntity.ok(loanService.getBorrowerLoanCount(name));
+    }
+
+    // Moves loans returned longer ago than olderThan (default inventory.archive.min-age) to the archive
+    @PostMapping("/archive")
+    public ResponseEntity<LoanArchiveReport> archiveLoans(
+            @RequestParam(value = "olderThan", required = false) Duration olderThan) {
+        try {
+            return ResponseEntity.ok(olderThan == null ? loanArchive.archive() : loanArchive.archiveOlderThan(olderThan));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
     }
 }
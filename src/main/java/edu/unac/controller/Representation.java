@@ -0,0 +1,97 @@
+package edu.unac.controller;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// JSON stays the default for lists and exports; CBOR is only written to clients that name it in Accept and
+// prefer it over JSON. A wildcard at the same quality does not count as preferring JSON.
+final class Representation {
+    static final String APPLICATION_CBOR_SEQ_VALUE = "application/cbor-seq";
+    static final MediaType APPLICATION_CBOR_SEQ = MediaType.parseMediaType(APPLICATION_CBOR_SEQ_VALUE);
+
+    private Representation() {
+    }
+
+    static boolean prefersCbor(String accept, MediaType cborType) {
+        if (accept == null) {
+            return false;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+        double cbor = 0;
+        double json = 0;
+        double wildcard = 0;
+        for (MediaType type : accepted) {
+            double quality = type.getQualityValue();
+            if (type.equalsTypeAndSubtype(cborType)) {
+                cbor = Math.max(cbor, quality);
+            } else if (type.isWildcardType() || type.isWildcardSubtype()) {
+                wildcard = Math.max(wildcard, quality);
+            } else if (type.getSubtype().equals("json") || type.getSubtype().endsWith("+json")
+                    || type.equalsTypeAndSubtype(MediaType.APPLICATION_NDJSON)) {
+                json = Math.max(json, quality);
+            }
+        }
+        return cbor > 0 && cbor > json && cbor >= wildcard;
+    }
+
+    // gzip counts as accepted when it, or failing that "*", is listed with a quality above 0; "gzip;q=0" refuses it
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        double wildcard = 0;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+                gzip = Math.max(gzip == null ? 0 : gzip, quality);
+            } else if (name.equals("*")) {
+                wildcard = Math.max(wildcard, quality);
+            }
+        }
+        return (gzip != null ? gzip : wildcard) > 0;
+    }
+
+    // One resource tag per representation, so a 304 never confirms a body in another format, field set or encoding
+    static String etag(String tag, boolean cbor, List<String> fields) {
+        return etag(tag, cbor, fields, false);
+    }
+
+    static String etag(String tag, boolean cbor, List<String> fields, boolean gzip) {
+        if (!cbor && fields == null && !gzip) {
+            return tag;
+        }
+        StringBuilder variant = new StringBuilder(tag.substring(0, tag.length() - 1));
+        if (cbor) {
+            variant.append("-cbor");
+        }
+        if (fields != null) {
+            variant.append("-fields=").append(URLEncoder.encode(String.join(",", fields), StandardCharsets.UTF_8));
+        }
+        if (gzip) {
+            variant.append("-gzip");
+        }
+        return variant.append('"').toString();
+    }
+}
@@ -0,0 +1,36 @@
+package edu.unac.domain;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One row per changed entity per transaction; sequence is assigned just before commit, see ChangeLogWriter
+@Entity
+@Table(name = "change_log", indexes = {
+        @Index(name = "idx_change_log_entity_sequence", columnList = "entity, sequence"),
+        @Index(name = "idx_change_log_entity_id", columnList = "entity, entityId, sequence")
+})
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ChangeLogEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "change_log_seq")
+    @SequenceGenerator(name = "change_log_seq", sequenceName = "change_log_seq", allocationSize = 50)
+    private Long sequence;
+
+    @Enumerated(EnumType.STRING)
+    private ChangedEntity entity;
+    private Long entityId;
+    private boolean deleted;
+    private long changedAt;
+}
@@ -0,0 +1,22 @@
+package edu.unac.domain;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Single row; compactedThrough is the highest sequence compaction has removed
+@Entity
+@Table(name = "change_log_state")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ChangeLogState {
+    public static final int ID = 1;
+
+    @Id
+    private Integer id;
+    private long compactedThrough;
+}
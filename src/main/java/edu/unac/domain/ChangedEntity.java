@@ -0,0 +1,6 @@
+package edu.unac.domain;
+
+public enum ChangedEntity {
+    DEVICE,
+    LOAN
+}
@@ -1,24 +1,43 @@
 package edu.unac.domain;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
+@Table(indexes = @Index(name = "idx_device_status_type_location", columnList = "status, type, location"))
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 public class Device {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "device_seq")
+    @SequenceGenerator(name = "device_seq", sequenceName = "device_seq", allocationSize = 50)
     private Long id;
     private String name;
     private String type;
     private String location;
     private DeviceStatus status;
     private long addedDate;
+
+    @Version
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long version;
+
+    public Device(Long id, String name, String type, String location, DeviceStatus status, long addedDate) {
+        this(id, name, type, location, status, addedDate, null);
+    }
+
+    public Device copy() {
+        return new Device(id, name, type, location, status, addedDate, version);
+    }
 }
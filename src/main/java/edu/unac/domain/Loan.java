@@ -1,17 +1,25 @@
 package edu.unac.domain;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_loan_device_returned", columnList = "deviceId, returned"),
+        @Index(name = "idx_loan_borrower_returned", columnList = "borrowedBy, returned, id"),
+        @Index(name = "idx_loan_overdue_scan", columnList = "returned, overdue, dueDate, id"),
+        @Index(name = "idx_loan_archive_scan", columnList = "returned, deviceId, id")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 public class Loan {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_seq")
+    @SequenceGenerator(name = "loan_seq", sequenceName = "loan_seq", allocationSize = 50)
     private Long id;
 
     private Long deviceId;
@@ -19,4 +27,21 @@ public class Loan {
     private long startDate;
     private long endDate;
     private boolean returned;
+    // When the client sends none, LoanService sets it from inventory.loans.default-duration
+    private long dueDate;
+    // Set by OverdueLoanScanner once an open loan is past its due date
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private boolean overdue;
+
+    @Version
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long version;
+
+    public Loan(Long id, Long deviceId, String borrowedBy, long startDate, long endDate, boolean returned) {
+        this(id, deviceId, borrowedBy, startDate, endDate, returned, 0L, false, null);
+    }
+
+    public Loan copy() {
+        return new Loan(id, deviceId, borrowedBy, startDate, endDate, returned, dueDate, overdue, version);
+    }
 }
@@ -0,0 +1,39 @@
+package edu.unac.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Returned loans of one device moved out of the loan table by one archive run; data holds them compressed
+// (see LoanArchiveCodec). Chunks are never changed once written.
+@Entity
+@Table(name = "loan_archive", indexes = {
+        @Index(name = "idx_loan_archive_device", columnList = "deviceId, firstLoanId")
+})
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LoanArchiveChunk {
+    public static final int MAX_DATA_BYTES = 1_000_000;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_archive_seq")
+    @SequenceGenerator(name = "loan_archive_seq", sequenceName = "loan_archive_seq", allocationSize = 50)
+    private Long id;
+
+    private Long deviceId;
+    private long firstLoanId;
+    private long lastLoanId;
+    private int loanCount;
+    private long archivedAt;
+    @Column(length = MAX_DATA_BYTES)
+    private byte[] data;
+}
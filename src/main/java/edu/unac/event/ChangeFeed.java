@@ -0,0 +1,279 @@
+package edu.unac.event;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Fans committed device and loan changes out to SSE subscribers. Each change is encoded once and kept in a
+// ring buffer so a reconnecting client can resume from its Last-Event-ID; ids are "<boot epoch>-<sequence>"
+// so an id from a previous process, or one that fell out of the buffer, gets a reset event instead.
+// One dispatcher thread puts every change on each subscriber's queue in sequence order, and each subscriber's
+// queue is drained by its own sender task, so a client that reads slowly only holds up itself. A subscriber whose
+// queue fills up (it is further behind than the ring buffer reaches) or whose send has been stuck for longer than
+// send-timeout is dropped; its EventSource reconnects and resumes from its Last-Event-ID.
+@Component
+public class ChangeFeed {
+    public static final String RESET_EVENT = "reset";
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final ObjectMapper objectMapper;
+    private final long emitterTimeoutMillis;
+    private final long sendTimeoutNanos;
+    private final ScheduledExecutorService dispatcher;
+    private final ExecutorService senders;
+
+    // Guarded by lock; appends also enqueue their broadcast under it so the queue matches sequence order
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Change[] buffer;
+    private long lastSequence;
+
+    // Only touched on the dispatcher thread
+    private final List<Subscriber> subscribers = new ArrayList<>();
+
+    public ChangeFeed(ObjectMapper objectMapper,
+                      @Value("${inventory.changes.buffer-size:1000}") int bufferSize,
+                      @Value("${inventory.changes.heartbeat:PT15S}") Duration heartbeat,
+                      @Value("${inventory.changes.emitter-timeout:PT30M}") Duration emitterTimeout,
+                      @Value("${inventory.changes.send-timeout:PT10S}") Duration sendTimeout) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Change feed buffer size must be at least 1");
+        }
+        this.objectMapper = objectMapper;
+        this.buffer = new Change[bufferSize];
+        this.emitterTimeoutMillis = emitterTimeout.toMillis();
+        this.sendTimeoutNanos = sendTimeout.toNanos();
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.senders = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "change-feed-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher.scheduleAtFixedRate(this::heartbeat, heartbeat.toMillis(), heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDeviceChanged(DeviceChangedEvent event) {
+        append("device", new ChangePayload(event.kind().name(), event.deviceId(), event.device()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLoanChanged(LoanChangedEvent event) {
+        append("loan", new ChangePayload(event.kind().name(), event.loanId(), event.loan()));
+    }
+
+    public SseEmitter subscribe(String lastEventId) {
+        return subscribe(new SseEmitter(emitterTimeoutMillis), lastEventId);
+    }
+
+    SseEmitter subscribe(SseEmitter emitter, String lastEventId) {
+        Subscriber subscriber = new Subscriber(emitter, buffer.length);
+        Runnable unsubscribe = () -> dispatcher.execute(() -> subscribers.remove(subscriber));
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(error -> unsubscribe.run());
+        // A new subscriber starts from the changes appended after this call, not after the dispatcher gets to it
+        String after = lastEventId != null ? lastEventId : lastEventId();
+        dispatcher.execute(() -> {
+            replay(subscriber, after);
+            subscribers.add(subscriber);
+        });
+        return emitter;
+    }
+
+    public String lastEventId() {
+        lock.lock();
+        try {
+            return eventId(lastSequence);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void append(String entity, ChangePayload payload) {
+        String data;
+        try {
+            data = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode change event", e);
+        }
+
+        lock.lock();
+        try {
+            Change change = new Change(++lastSequence, entity, data);
+            buffer[(int) (change.sequence() % buffer.length)] = change;
+            dispatcher.execute(() -> broadcast(change));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A subscriber is brought up to the current sequence here; broadcasts already queued behind this
+    // task are skipped for it by comparing against lastQueued
+    private void replay(Subscriber subscriber, String lastEventId) {
+        List<Change> missed = new ArrayList<>();
+        boolean reset = false;
+        lock.lock();
+        try {
+            Long after = parseSequence(lastEventId);
+            if (after == null || after > lastSequence || after < lastSequence - buffer.length) {
+                reset = true;
+            } else {
+                for (long sequence = after + 1; sequence <= lastSequence; sequence++) {
+                    missed.add(buffer[(int) (sequence % buffer.length)]);
+                }
+            }
+            subscriber.lastQueued = lastSequence;
+        } finally {
+            lock.unlock();
+        }
+
+        if (reset) {
+            subscriber.queue.add(SseEmitter.event()
+                    .id(eventId(subscriber.lastQueued))
+                    .name(RESET_EVENT)
+                    .data("{}", MediaType.APPLICATION_JSON));
+        }
+        // The queue holds as many events as the ring buffer, so a replay always fits
+        missed.forEach(change -> subscriber.queue.add(event(change)));
+        startSending(subscriber);
+    }
+
+    private void broadcast(Change change) {
+        for (Subscriber subscriber : List.copyOf(subscribers)) {
+            if (change.sequence() <= subscriber.lastQueued) {
+                continue;
+            }
+            if (!subscriber.queue.offer(event(change))) {
+                drop(subscriber);
+                continue;
+            }
+            subscriber.lastQueued = change.sequence();
+            startSending(subscriber);
+        }
+    }
+
+    // Keeps idle connections open through proxies and finds clients that went away without closing; a subscriber
+    // with events still queued is not idle and gets no keepalive
+    private void heartbeat() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : List.copyOf(subscribers)) {
+            long sendingSince = subscriber.sendingSince;
+            if (sendingSince != 0 && now - sendingSince > sendTimeoutNanos) {
+                drop(subscriber);
+            } else if (subscriber.queue.isEmpty() && subscriber.queue.offer(SseEmitter.event().comment("keepalive"))) {
+                startSending(subscriber);
+            }
+        }
+    }
+
+    // Runs on the dispatcher thread. Completing waits for a send in progress, so it is left to a sender
+    private void drop(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        subscriber.closed = true;
+        subscriber.queue.clear();
+        senders.execute(subscriber.emitter::complete);
+    }
+
+    private void startSending(Subscriber subscriber) {
+        if (subscriber.sending.compareAndSet(false, true)) {
+            senders.execute(() -> send(subscriber));
+        }
+    }
+
+    // At most one of these runs per subscriber at a time, so its events go out in the order they were queued
+    private void send(Subscriber subscriber) {
+        try {
+            SseEmitter.SseEventBuilder event;
+            while (!subscriber.closed && (event = subscriber.queue.poll()) != null) {
+                subscriber.sendingSince = System.nanoTime();
+                subscriber.emitter.send(event);
+                subscriber.sendingSince = 0;
+            }
+        } catch (IOException | IllegalStateException e) {
+            subscriber.closed = true;
+            subscriber.emitter.completeWithError(e);
+            dispatcher.execute(() -> subscribers.remove(subscriber));
+        } finally {
+            subscriber.sendingSince = 0;
+            subscriber.sending.set(false);
+        }
+        // An event queued after the loop found the queue empty but before the flag was cleared
+        if (!subscriber.closed && !subscriber.queue.isEmpty()) {
+            startSending(subscriber);
+        }
+    }
+
+    private SseEmitter.SseEventBuilder event(Change change) {
+        return SseEmitter.event()
+                .id(eventId(change.sequence()))
+                .name(change.entity())
+                .data(change.data(), MediaType.APPLICATION_JSON);
+    }
+
+    private String eventId(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    private Long parseSequence(String eventId) {
+        int separator = eventId.lastIndexOf('-');
+        if (separator < 0 || !eventId.substring(0, separator).equals(epoch)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(eventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        senders.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    private record Change(long sequence, String entity, String data) {
+    }
+
+    private record ChangePayload(String kind, Long id, Object data) {
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> queue;
+        private final AtomicBoolean sending = new AtomicBoolean();
+        // Only touched on the dispatcher thread
+        private long lastQueued;
+        // When the send in progress started, 0 while none is
+        private volatile long sendingSince;
+        private volatile boolean closed;
+
+        private Subscriber(SseEmitter emitter, int capacity) {
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package edu.unac.event;
+
+import edu.unac.domain.Device;
+
+// Published by the services once per changed device; device is a detached copy and null for DELETED
+public record DeviceChangedEvent(Kind kind, Long deviceId, Device device) {
+    public enum Kind {
+        REGISTERED,
+        STATUS_CHANGED,
+        DELETED
+    }
+
+    public static DeviceChangedEvent registered(Device device) {
+        return new DeviceChangedEvent(Kind.REGISTERED, device.getId(), device.copy());
+    }
+
+    public static DeviceChangedEvent statusChanged(Device device) {
+        return new DeviceChangedEvent(Kind.STATUS_CHANGED, device.getId(), device.copy());
+    }
+
+    public static DeviceChangedEvent deleted(Long deviceId) {
+        return new DeviceChangedEvent(Kind.DELETED, deviceId, null);
+    }
+}
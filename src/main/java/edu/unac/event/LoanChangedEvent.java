@@ -0,0 +1,25 @@
+package edu.unac.event;
+
+import edu.unac.domain.Loan;
+
+// Published by LoanService once per created or returned loan, and by OverdueLoanScanner once per loan it
+// flags as overdue; loan is a detached copy
+public record LoanChangedEvent(Kind kind, Long loanId, Loan loan) {
+    public enum Kind {
+        CREATED,
+        RETURNED,
+        OVERDUE
+    }
+
+    public static LoanChangedEvent created(Loan loan) {
+        return new LoanChangedEvent(Kind.CREATED, loan.getId(), loan.copy());
+    }
+
+    public static LoanChangedEvent returned(Loan loan) {
+        return new LoanChangedEvent(Kind.RETURNED, loan.getId(), loan.copy());
+    }
+
+    public static LoanChangedEvent overdue(Loan loan) {
+        return new LoanChangedEvent(Kind.OVERDUE, loan.getId(), loan.copy());
+    }
+}
@@ -0,0 +1,51 @@
+package edu.unac.event;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+// What one transaction has published to an in-transaction listener, bound to the transaction under the
+// listener's key. A subclass that writes the items out in beforeCommit does so while the transaction still holds
+// its row locks, so two changes to the same row are written in commit order. The buffer is unbound once the
+// transaction completes, whether or not it committed.
+public abstract class TransactionBuffer<T> implements TransactionSynchronization {
+    private final Object owner;
+    private final List<T> items = new ArrayList<>();
+
+    protected TransactionBuffer(Object owner) {
+        this.owner = owner;
+    }
+
+    // Adds item to the current transaction's buffer for owner, created by factory on first use. False outside a
+    // transaction, where the caller handles the item itself
+    @SuppressWarnings("unchecked")
+    public static <T> boolean add(Object owner, Supplier<? extends TransactionBuffer<T>> factory, T item) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return false;
+        }
+        TransactionBuffer<T> buffer = (TransactionBuffer<T>) TransactionSynchronizationManager.getResource(owner);
+        if (buffer == null) {
+            buffer = factory.get();
+            TransactionSynchronizationManager.bindResource(owner, buffer);
+            TransactionSynchronizationManager.registerSynchronization(buffer);
+        }
+        buffer.items.add(item);
+        return true;
+    }
+
+    protected List<T> items() {
+        return items;
+    }
+
+    @Override
+    public final void afterCompletion(int status) {
+        TransactionSynchronizationManager.unbindResource(owner);
+        completed(status);
+    }
+
+    protected void completed(int status) {
+    }
+}
@@ -0,0 +1,227 @@
+package edu.unac.ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static edu.unac.ledger.LedgerCodec.HEADER_BYTES;
+
+// Append-only log of CRC-checked records in memory-mapped segment files of a fixed size, each named after the
+// sequence of its first record. An append is a copy into the mapping, so it costs no system call; the page
+// cache writes it out on its own, and sync() forces what was appended since the last sync to disk.
+// With syncEvery > 0 that also happens once that many records are pending, so a caller picks how much a
+// crash may lose: 1 forces every append, larger values batch the forces, 0 leaves them to sync().
+// Opening a ledger drops a torn record at the end of the last segment, left by a crash mid-append.
+public final class Ledger implements Closeable {
+    static final int MAX_RECORD_BYTES = 64 * 1024;
+    private static final String SUFFIX = ".ledger";
+
+    private final Path dir;
+    private final int segmentSize;
+    private final int syncEvery;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ByteBuffer scratch = ByteBuffer.allocate(MAX_RECORD_BYTES);
+    private MappedByteBuffer segment;
+    private int syncedPosition;
+    private int unsynced;
+    private long nextSequence;
+
+    private Ledger(Path dir, int segmentSize, int syncEvery) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.syncEvery = syncEvery;
+    }
+
+    public static Ledger open(Path dir, int segmentSize, int syncEvery) throws IOException {
+        if (segmentSize < HEADER_BYTES + MAX_RECORD_BYTES) {
+            throw new IllegalArgumentException("Segment size must be at least " + (HEADER_BYTES + MAX_RECORD_BYTES) + " bytes");
+        }
+        Files.createDirectories(dir);
+        Ledger ledger = new Ledger(dir, segmentSize, syncEvery);
+        List<Path> segments = segments(dir);
+        if (segments.isEmpty()) {
+            ledger.startSegment(1);
+        } else {
+            ledger.recover(segments.get(segments.size() - 1));
+        }
+        return ledger;
+    }
+
+    // Reads every intact record in sequence order; a damaged record ends its segment. Safe to call on the
+    // directory of a ledger that is open for appends, which is how the replay tool can run next to a live app
+    public static long read(Path dir, Consumer<LedgerRecord> consumer) throws IOException {
+        long records = 0;
+        for (Path path : segments(dir)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                long[] count = new long[1];
+                scan(mapped, firstSequenceOf(path), record -> {
+                    count[0]++;
+                    consumer.accept(record);
+                });
+                records += count[0];
+            }
+        }
+        return records;
+    }
+
+    // All records of one call get consecutive sequences and share the first one as their batch. A record too
+    // large to store fails the call; whatever part of the batch was already written is then cancelled with an
+    // ABORTED record
+    public long append(List<LedgerRecord> records) throws IOException {
+        lock.lock();
+        try {
+            if (segment == null) {
+                throw new IllegalStateException("Ledger is closed");
+            }
+            long batch = nextSequence;
+            try {
+                for (LedgerRecord record : records) {
+                    write(record.at(nextSequence, batch));
+                }
+            } catch (IllegalArgumentException e) {
+                if (nextSequence > batch) {
+                    write(LedgerRecord.aborted(batch, System.currentTimeMillis()).at(nextSequence, nextSequence));
+                }
+                throw e;
+            }
+            unsynced += records.size();
+            if (syncEvery > 0 && unsynced >= syncEvery) {
+                forceSegment();
+            }
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void sync() {
+        lock.lock();
+        try {
+            if (segment != null) {
+                forceSegment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long nextSequence() {
+        lock.lock();
+        try {
+            return nextSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The mapping itself is released by the garbage collector; there is no supported way to unmap earlier
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (segment != null) {
+                forceSegment();
+                segment = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(LedgerRecord record) throws IOException {
+        LedgerCodec.encodePayload(record, scratch);
+        if (segment.remaining() < HEADER_BYTES + scratch.remaining()) {
+            forceSegment();
+            startSegment(nextSequence);
+        }
+        segment.putInt(scratch.remaining());
+        segment.putInt(LedgerCodec.crc(scratch));
+        segment.put(scratch);
+        nextSequence++;
+    }
+
+    private void forceSegment() {
+        int position = segment.position();
+        if (position > syncedPosition) {
+            segment.force(syncedPosition, position - syncedPosition);
+            syncedPosition = position;
+        }
+        unsynced = 0;
+    }
+
+    private void startSegment(long firstSequence) throws IOException {
+        Path path = dir.resolve(String.format("%020d%s", firstSequence, SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        syncedPosition = 0;
+        nextSequence = firstSequence;
+    }
+
+    private void recover(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+        long[] last = {firstSequenceOf(path) - 1};
+        int end = scan(segment, firstSequenceOf(path), record -> last[0] = record.sequence());
+
+        // Zero the record a crash tore mid-append, so no later append can be read as part of it
+        int room = segment.capacity() - end - HEADER_BYTES;
+        int claimed = room < 0 ? 0 : Math.max(0, Math.min(segment.getInt(end), room));
+        for (int i = end; i < Math.min(segment.capacity(), end + HEADER_BYTES + claimed); i++) {
+            segment.put(i, (byte) 0);
+        }
+        segment.position(end);
+        segment.force();
+        syncedPosition = end;
+        nextSequence = last[0] + 1;
+    }
+
+    // Stops at the first record that is cut short, fails its CRC or breaks the sequence
+    private static int scan(ByteBuffer segment, long firstSequence, Consumer<LedgerRecord> consumer) {
+        int position = 0;
+        long expected = firstSequence;
+        while (segment.capacity() - position >= HEADER_BYTES) {
+            int length = segment.getInt(position);
+            if (length <= 0 || length > segment.capacity() - position - HEADER_BYTES) {
+                break;
+            }
+            ByteBuffer payload = segment.slice(position + HEADER_BYTES, length);
+            if (LedgerCodec.crc(payload) != segment.getInt(position + 4)) {
+                break;
+            }
+            LedgerRecord record = LedgerCodec.decodePayload(payload);
+            if (record.sequence() != expected++) {
+                break;
+            }
+            consumer.accept(record);
+            position += HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+    }
+
+    private static long firstSequenceOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,128 @@
+package edu.unac.ledger;
+
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.domain.Loan;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+// Record layout, all big-endian:
+//   int   payload length (0 marks the end of the written part of a segment)
+//   int   CRC32C of the payload
+//   long  sequence, long batch, long timestamp, byte kind, long entityId, then the snapshot fields
+// Nullable values are written behind a presence byte, strings as an int byte count (-1 for null) and UTF-8.
+final class LedgerCodec {
+    static final int HEADER_BYTES = 8;
+    private static final DeviceStatus[] STATUSES = DeviceStatus.values();
+    private static final LedgerRecord.Kind[] KINDS = LedgerRecord.Kind.values();
+
+    private LedgerCodec() {
+    }
+
+    // Writes the payload of record into scratch, which is cleared first and left flipped
+    static void encodePayload(LedgerRecord record, ByteBuffer scratch) {
+        scratch.clear();
+        try {
+            scratch.putLong(record.sequence());
+            scratch.putLong(record.batch());
+            scratch.putLong(record.timestamp());
+            scratch.put((byte) record.kind().ordinal());
+            scratch.putLong(record.entityId());
+            if (record.device() != null) {
+                Device device = record.device();
+                putString(scratch, device.getName());
+                putString(scratch, device.getType());
+                putString(scratch, device.getLocation());
+                scratch.put(device.getStatus() == null ? -1 : (byte) device.getStatus().ordinal());
+                scratch.putLong(device.getAddedDate());
+                putNullableLong(scratch, device.getVersion());
+            } else if (record.loan() != null) {
+                Loan loan = record.loan();
+                putNullableLong(scratch, loan.getDeviceId());
+                putString(scratch, loan.getBorrowedBy());
+                scratch.putLong(loan.getStartDate());
+                scratch.putLong(loan.getEndDate());
+                scratch.put((byte) (loan.isReturned() ? 1 : 0));
+                scratch.putLong(loan.getDueDate());
+                scratch.put((byte) (loan.isOverdue() ? 1 : 0));
+                putNullableLong(scratch, loan.getVersion());
+            }
+        } catch (BufferOverflowException e) {
+            throw new IllegalArgumentException("Ledger record is larger than " + scratch.capacity() + " bytes");
+        }
+        scratch.flip();
+    }
+
+    static int crc(ByteBuffer payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    static LedgerRecord decodePayload(ByteBuffer payload) {
+        long sequence = payload.getLong();
+        long batch = payload.getLong();
+        long timestamp = payload.getLong();
+        LedgerRecord.Kind kind = KINDS[payload.get()];
+        long entityId = payload.getLong();
+        return switch (kind) {
+            case DEVICE_REGISTERED, DEVICE_STATUS_CHANGED -> {
+                String name = getString(payload);
+                String type = getString(payload);
+                String location = getString(payload);
+                byte status = payload.get();
+                long addedDate = payload.getLong();
+                Device device = new Device(entityId, name, type, location, status < 0 ? null : STATUSES[status], addedDate);
+                device.setVersion(getNullableLong(payload));
+                yield new LedgerRecord(sequence, batch, timestamp, kind, entityId, device, null);
+            }
+            case LOAN_CREATED, LOAN_RETURNED, LOAN_OVERDUE -> {
+                Long deviceId = getNullableLong(payload);
+                String borrowedBy = getString(payload);
+                long startDate = payload.getLong();
+                long endDate = payload.getLong();
+                boolean returned = payload.get() != 0;
+                long dueDate = payload.getLong();
+                boolean overdue = payload.get() != 0;
+                Long version = getNullableLong(payload);
+                Loan loan = new Loan(entityId, deviceId, borrowedBy, startDate, endDate, returned, dueDate, overdue, version);
+                yield new LedgerRecord(sequence, batch, timestamp, kind, entityId, null, loan);
+            }
+            case DEVICE_DELETED, ABORTED -> new LedgerRecord(sequence, batch, timestamp, kind, entityId, null, null);
+        };
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putNullableLong(ByteBuffer buffer, Long value) {
+        buffer.put((byte) (value == null ? 0 : 1));
+        if (value != null) {
+            buffer.putLong(value);
+        }
+    }
+
+    private static Long getNullableLong(ByteBuffer buffer) {
+        return buffer.get() == 0 ? null : buffer.getLong();
+    }
+}
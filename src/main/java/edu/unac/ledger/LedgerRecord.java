@@ -0,0 +1,41 @@
+package edu.unac.ledger;
+
+import edu.unac.domain.Device;
+import edu.unac.domain.Loan;
+
+// One ledger entry. batch is the sequence of the first record appended with it, i.e. one committed
+// transaction; an ABORTED record names, in entityId, a batch whose transaction rolled back after it was
+// appended. device and loan are full snapshots, and null for DEVICE_DELETED and ABORTED.
+public record LedgerRecord(long sequence, long batch, long timestamp, Kind kind, long entityId, Device device, Loan loan) {
+    // Stored by ordinal, so new kinds may only be added at the end
+    public enum Kind {
+        DEVICE_REGISTERED,
+        DEVICE_STATUS_CHANGED,
+        DEVICE_DELETED,
+        LOAN_CREATED,
+        LOAN_RETURNED,
+        LOAN_OVERDUE,
+        ABORTED
+    }
+
+    // Sequence and batch are assigned by Ledger.append
+    public static LedgerRecord of(Kind kind, Device device, long timestamp) {
+        return new LedgerRecord(0, 0, timestamp, kind, device.getId(), device, null);
+    }
+
+    public static LedgerRecord of(Kind kind, Loan loan, long timestamp) {
+        return new LedgerRecord(0, 0, timestamp, kind, loan.getId(), null, loan);
+    }
+
+    public static LedgerRecord deviceDeleted(long deviceId, long timestamp) {
+        return new LedgerRecord(0, 0, timestamp, Kind.DEVICE_DELETED, deviceId, null, null);
+    }
+
+    public static LedgerRecord aborted(long batch, long timestamp) {
+        return new LedgerRecord(0, 0, timestamp, Kind.ABORTED, batch, null, null);
+    }
+
+    LedgerRecord at(long sequence, long batch) {
+        return new LedgerRecord(sequence, batch, timestamp, kind, entityId, device, loan);
+    }
+}
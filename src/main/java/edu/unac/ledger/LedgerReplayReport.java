@@ -0,0 +1,5 @@
+package edu.unac.ledger;
+
+public record LedgerReplayReport(long records, long devices, long loans, long deletedDevices, long abortedBatches,
+                                 long elapsedMillis) {
+}
@@ -0,0 +1,36 @@
+package edu.unac.ledger;
+
+import edu.unac.InventoryManagementApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+// Replays a ledger directory into the database the given Spring arguments point at, without starting the web
+// server or a ledger writer of its own, e.g.
+//   mvn -q compile exec:java -Dexec.mainClass=edu.unac.ledger.LedgerReplayTool
+//       -Dexec.args="./data/ledger --spring.profiles.active=durable --inventory.data-dir=./data"
+// Stop the application first when replaying into a file database: H2 allows only one process to open it.
+public final class LedgerReplayTool {
+    private LedgerReplayTool() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: LedgerReplayTool <ledger-dir> [--spring.option=value ...]");
+            System.exit(2);
+        }
+        // Passed as arguments so they win over whatever the active profiles set
+        String[] springArgs = Stream.concat(Arrays.stream(args, 1, args.length), Stream.of("--inventory.ledger.enabled=false"))
+                .toArray(String[]::new);
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(InventoryManagementApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(springArgs)) {
+            LedgerReplayReport report = context.getBean(LedgerReplayer.class).replay(Path.of(args[0]));
+            System.out.println(report);
+        }
+    }
+}
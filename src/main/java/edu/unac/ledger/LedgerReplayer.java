@@ -0,0 +1,119 @@
+package edu.unac.ledger;
+
+import edu.unac.domain.Device;
+import edu.unac.domain.Loan;
+import edu.unac.service.LoanArchive;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Rebuilds the device and loan tables from a ledger: every row is upserted with the last snapshot the ledger
+// holds for it and deleted devices are removed, all in one transaction. Rows the ledger never mentions are
+// left alone, so replaying twice changes nothing. Loans already moved to the loan archive stay there rather than
+// coming back into the loan table. Writes go straight through JDBC, so no change events fire.
+@Component
+public class LedgerReplayer {
+    static final String MERGE_DEVICE_SQL = "MERGE INTO device (id, name, type, location, status, added_date, version)"
+            + " KEY (id) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    static final String MERGE_LOAN_SQL = "MERGE INTO loan (id, device_id, borrowed_by, start_date, end_date, returned,"
+            + " due_date, overdue, version) KEY (id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // Hibernate's pooled sequences hand out the block below the value they read, so keep a block of headroom
+    private static final long SEQUENCE_HEADROOM = 100;
+    private static final int BATCH_SIZE = 1_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final LoanArchive loanArchive;
+
+    public LedgerReplayer(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                          LoanArchive loanArchive) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.loanArchive = loanArchive;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public LedgerReplayReport replay(Path dir) throws IOException {
+        long startedAt = System.nanoTime();
+        Set<Long> abortedBatches = new HashSet<>();
+        Ledger.read(dir, record -> {
+            if (record.kind() == LedgerRecord.Kind.ABORTED) {
+                abortedBatches.add(record.entityId());
+            }
+        });
+
+        Map<Long, Device> devices = new HashMap<>();
+        Map<Long, Loan> loans = new HashMap<>();
+        Set<Long> deletedDevices = new HashSet<>();
+        long records = Ledger.read(dir, record -> {
+            if (record.kind() == LedgerRecord.Kind.ABORTED || abortedBatches.contains(record.batch())) {
+                return;
+            }
+            switch (record.kind()) {
+                case DEVICE_REGISTERED, DEVICE_STATUS_CHANGED -> {
+                    devices.put(record.entityId(), record.device());
+                    deletedDevices.remove(record.entityId());
+                }
+                case DEVICE_DELETED -> {
+                    devices.remove(record.entityId());
+                    deletedDevices.add(record.entityId());
+                }
+                default -> loans.put(record.entityId(), record.loan());
+            }
+        });
+
+        long maxLoanId = max(loans.keySet(), Set.of());
+        transactionTemplate.executeWithoutResult(status -> {
+            loanArchive.exportLoans(archived -> loans.remove(archived.getId()));
+            batchUpdate(MERGE_DEVICE_SQL, devices.values().stream().map(device -> new Object[]{
+                    device.getId(), device.getName(), device.getType(), device.getLocation(),
+                    device.getStatus() == null ? null : device.getStatus().ordinal(), device.getAddedDate(),
+                    device.getVersion() == null ? 0L : device.getVersion()}).toList());
+            batchUpdate(MERGE_LOAN_SQL, loans.values().stream().map(loan -> new Object[]{
+                    loan.getId(), loan.getDeviceId(), loan.getBorrowedBy(), loan.getStartDate(), loan.getEndDate(),
+                    loan.isReturned(), loan.getDueDate(), loan.isOverdue(),
+                    loan.getVersion() == null ? 0L : loan.getVersion()}).toList());
+            batchUpdate("DELETE FROM device WHERE id = ?", deletedDevices.stream().map(id -> new Object[]{id}).toList());
+
+            moveSequencePast("DEVICE_SEQ", max(devices.keySet(), deletedDevices));
+            moveSequencePast("LOAN_SEQ", maxLoanId);
+        });
+        return new LedgerReplayReport(records, devices.size(), loans.size(), deletedDevices.size(), abortedBatches.size(),
+                (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    private void batchUpdate(String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(sql, new ArrayList<>(rows.subList(from, Math.min(rows.size(), from + BATCH_SIZE))));
+        }
+    }
+
+    // Only ever moves a sequence forward, so ids the running application already handed out stay unique
+    private void moveSequencePast(String sequence, long maxId) {
+        Long current = jdbcTemplate.queryForObject(
+                "SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = ?", Long.class, sequence);
+        if (current != null && maxId + SEQUENCE_HEADROOM > current) {
+            jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + (maxId + SEQUENCE_HEADROOM));
+        }
+    }
+
+    private static long max(Set<Long> ids, Set<Long> moreIds) {
+        long max = 0;
+        for (long id : ids) {
+            max = Math.max(max, id);
+        }
+        for (long id : moreIds) {
+            max = Math.max(max, id);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,111 @@
+package edu.unac.ledger;
+
+import edu.unac.event.DeviceChangedEvent;
+import edu.unac.event.LoanChangedEvent;
+import edu.unac.event.TransactionBuffer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+
+// Writes every device and loan change to the ledger as an audit trail that replay can rebuild the tables from.
+// What a transaction publishes is buffered and appended just before the commit, in commit order (see
+// TransactionBuffer). A transaction that then fails to commit is cancelled with an ABORTED record for its batch.
+@Component
+@ConditionalOnProperty(name = "inventory.ledger.enabled", havingValue = "true")
+public class LedgerWriter {
+    private final Ledger ledger;
+    private final Counter appended;
+    private final Timer syncTimer;
+
+    public LedgerWriter(@Value("${inventory.ledger.dir}") Path dir,
+                        @Value("${inventory.ledger.segment-size:64MB}") DataSize segmentSize,
+                        @Value("${inventory.ledger.sync-every:0}") int syncEvery,
+                        MeterRegistry registry) throws IOException {
+        this.ledger = Ledger.open(dir, Math.toIntExact(segmentSize.toBytes()), syncEvery);
+        this.appended = Counter.builder("inventory.ledger.records")
+                .description("Records appended to the loan ledger")
+                .register(registry);
+        this.syncTimer = Timer.builder("inventory.ledger.sync")
+                .description("Time spent forcing the loan ledger to disk")
+                .register(registry);
+    }
+
+    @EventListener
+    public void onDeviceChanged(DeviceChangedEvent event) {
+        long now = System.currentTimeMillis();
+        record(switch (event.kind()) {
+            case REGISTERED -> LedgerRecord.of(LedgerRecord.Kind.DEVICE_REGISTERED, event.device(), now);
+            case STATUS_CHANGED -> LedgerRecord.of(LedgerRecord.Kind.DEVICE_STATUS_CHANGED, event.device(), now);
+            case DELETED -> LedgerRecord.deviceDeleted(event.deviceId(), now);
+        });
+    }
+
+    @EventListener
+    public void onLoanChanged(LoanChangedEvent event) {
+        long now = System.currentTimeMillis();
+        record(LedgerRecord.of(switch (event.kind()) {
+            case CREATED -> LedgerRecord.Kind.LOAN_CREATED;
+            case RETURNED -> LedgerRecord.Kind.LOAN_RETURNED;
+            case OVERDUE -> LedgerRecord.Kind.LOAN_OVERDUE;
+        }, event.loan(), now));
+    }
+
+    @Scheduled(initialDelayString = "${inventory.ledger.sync-interval:PT1S}",
+            fixedDelayString = "${inventory.ledger.sync-interval:PT1S}")
+    public void sync() {
+        syncTimer.record(ledger::sync);
+    }
+
+    @PreDestroy
+    public void close() {
+        ledger.close();
+    }
+
+    private void record(LedgerRecord record) {
+        if (!TransactionBuffer.add(this, PendingRecords::new, record)) {
+            append(List.of(record));
+        }
+    }
+
+    private long append(List<LedgerRecord> records) {
+        try {
+            long batch = ledger.append(records);
+            appended.increment(records.size());
+            return batch;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private final class PendingRecords extends TransactionBuffer<LedgerRecord> {
+        private long batch = -1;
+
+        PendingRecords() {
+            super(LedgerWriter.this);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            batch = append(items());
+        }
+
+        @Override
+        protected void completed(int status) {
+            if (status == STATUS_ROLLED_BACK && batch >= 0) {
+                append(List.of(LedgerRecord.aborted(batch, System.currentTimeMillis())));
+            }
+        }
+    }
+}
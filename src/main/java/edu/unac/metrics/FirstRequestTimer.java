@@ -0,0 +1,38 @@
+package edu.unac.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// JVM start to the end of the first served API request, the number cold-start tuning is judged by;
+// after that first request the cost is a single volatile read
+public class FirstRequestTimer implements HandlerInterceptor {
+    private static final Logger log = LoggerFactory.getLogger(FirstRequestTimer.class);
+
+    private final MeterRegistry registry;
+    private final AtomicBoolean recorded = new AtomicBoolean();
+
+    public FirstRequestTimer(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (recorded.get() || !recorded.compareAndSet(false, true)) {
+            return;
+        }
+        long millis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        TimeGauge.builder("inventory.startup.first.request", () -> millis, TimeUnit.MILLISECONDS)
+                .description("Time from JVM start until the first API request was served")
+                .register(registry);
+        log.info("First request served {} ms after JVM start", millis);
+    }
+}
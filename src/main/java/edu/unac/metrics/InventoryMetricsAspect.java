@@ -0,0 +1,120 @@
+package edu.unac.metrics;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.BaseStream;
+
+// Meters are resolved once per method so the hot path is a map lookup plus two clock reads
+@Aspect
+@Component
+public class InventoryMetricsAspect {
+    private static final String SERVICE_TIMER = "inventory.service";
+    private static final String REPOSITORY_ROWS = "inventory.repository.rows";
+    private static final String NO_EXCEPTION = "none";
+
+    private final MeterRegistry registry;
+    private final Clock clock;
+    private final Map<MeterKey, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<MeterKey, DistributionSummary> rowSummaries = new ConcurrentHashMap<>();
+
+    public InventoryMetricsAspect(MeterRegistry registry) {
+        this.registry = registry;
+        this.clock = registry.config().clock();
+    }
+
+    @Around("execution(public * edu.unac.service.DeviceService.*(..)) || execution(public * edu.unac.service.LoanService.*(..))")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        MeterKey key = new MeterKey(joinPoint.getSignature().getDeclaringType().getSimpleName(), method(joinPoint));
+        long start = clock.monotonicTime();
+        try {
+            Object result = joinPoint.proceed();
+            successTimer(key).record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Throwable ex) {
+            failureTimer(key, ex).record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS);
+            throw ex;
+        }
+    }
+
+    // Query timings already come from Spring Data's spring.data.repository.invocations; this only adds row counts
+    @Around("execution(* org.springframework.data.repository.Repository+.*(..))")
+    public Object countRepositoryRows(ProceedingJoinPoint joinPoint) throws Throwable {
+        Object result = joinPoint.proceed();
+        long rows = rowsOf(result);
+        if (rows >= 0) {
+            rowSummaries.computeIfAbsent(new MeterKey(repositoryName(joinPoint.getThis()), method(joinPoint)), key -> DistributionSummary.builder(REPOSITORY_ROWS)
+                            .description("Rows returned by a repository query")
+                            .tag("repository", key.owner())
+                            .tag("method", key.method().getName())
+                            .register(registry))
+                    .record(rows);
+        }
+        return result;
+    }
+
+    private Timer successTimer(MeterKey key) {
+        return timers.computeIfAbsent(key, k -> Timer.builder(SERVICE_TIMER)
+                .tag("class", k.owner())
+                .tag("method", k.method().getName())
+                .tag("exception", NO_EXCEPTION)
+                .register(registry));
+    }
+
+    // Failures are rare enough that registering (an idempotent lookup) on each one is fine
+    private Timer failureTimer(MeterKey key, Throwable ex) {
+        return Timer.builder(SERVICE_TIMER)
+                .tag("class", key.owner())
+                .tag("method", key.method().getName())
+                .tag("exception", ex.getClass().getSimpleName())
+                .register(registry);
+    }
+
+    private static Method method(ProceedingJoinPoint joinPoint) {
+        return ((MethodSignature) joinPoint.getSignature()).getMethod();
+    }
+
+    // Inherited methods such as findById are declared on Spring Data interfaces, so name the repository by its proxy
+    private static String repositoryName(Object proxy) {
+        for (Class<?> type : proxy.getClass().getInterfaces()) {
+            if (type.getPackageName().equals("edu.unac.repository")) {
+                return type.getSimpleName();
+            }
+        }
+        return proxy.getClass().getSimpleName();
+    }
+
+    // Streams are skipped because counting them would consume the cursor; -1 means "not a row result"
+    private static long rowsOf(Object result) {
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof Slice<?> slice) {
+            return slice.getNumberOfElements();
+        }
+        if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1 : 0;
+        }
+        if (result == null || result instanceof Number || result instanceof Boolean || result instanceof BaseStream<?, ?>) {
+            return -1;
+        }
+        return 1;
+    }
+
+    private record MeterKey(String owner, Method method) {
+    }
+}
@@ -0,0 +1,23 @@
+package edu.unac.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+// Endpoint timers come from Spring MVC's http.server.requests; this adds the per-request SQL count
+// and the cold-start time to the first served request
+@Configuration
+public class MetricsConfig implements WebMvcConfigurer {
+    private final MeterRegistry registry;
+
+    public MetricsConfig(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry interceptors) {
+        interceptors.addInterceptor(new SqlStatementMetricsInterceptor(registry)).addPathPatterns("/api/**");
+        interceptors.addInterceptor(new FirstRequestTimer(registry)).addPathPatterns("/api/**");
+    }
+}
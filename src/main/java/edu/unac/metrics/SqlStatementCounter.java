@@ -0,0 +1,22 @@
+package edu.unac.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+// Registered through hibernate.session_factory.statement_inspector; counts statements prepared on the current thread
+public class SqlStatementCounter implements StatementInspector {
+    private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql;
+    }
+
+    public static void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    public static int current() {
+        return COUNT.get()[0];
+    }
+}
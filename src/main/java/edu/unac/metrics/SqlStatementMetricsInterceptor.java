@@ -0,0 +1,40 @@
+package edu.unac.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SqlStatementMetricsInterceptor implements HandlerInterceptor {
+    private final MeterRegistry registry;
+    private final Map<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    public SqlStatementMetricsInterceptor(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        SqlStatementCounter.reset();
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        String method = request.getMethod();
+
+        summaries.computeIfAbsent(method + " " + uri, key -> DistributionSummary.builder("inventory.http.sql.statements")
+                        .description("SQL statements issued while handling one request")
+                        .tag("method", method)
+                        .tag("uri", uri)
+                        .register(registry))
+                .record(SqlStatementCounter.current());
+    }
+}
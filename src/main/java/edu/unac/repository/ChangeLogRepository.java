@@ -0,0 +1,31 @@
+package edu.unac.repository;
+
+import edu.unac.domain.ChangeLogEntry;
+import edu.unac.domain.ChangedEntity;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface ChangeLogRepository extends JpaRepository<ChangeLogEntry, Long> {
+    List<ChangeLogEntry> findByEntityAndSequenceBetweenOrderBySequence(ChangedEntity entity, long from, long to, Limit limit);
+
+    @Query("SELECT MAX(c.sequence) FROM ChangeLogEntry c")
+    Long findLastSequence();
+
+    // Only the latest entry per entity matters to a syncing client, so older ones can always go
+    @Modifying
+    @Query("DELETE FROM ChangeLogEntry c WHERE EXISTS (SELECT 1 FROM ChangeLogEntry n "
+            + "WHERE n.entity = c.entity AND n.entityId = c.entityId AND n.sequence > c.sequence)")
+    int deleteSuperseded();
+
+    @Query("SELECT MAX(c.sequence) FROM ChangeLogEntry c WHERE c.changedAt < :cutoff")
+    Long findLastSequenceBefore(@Param("cutoff") long cutoff);
+
+    @Modifying
+    @Query("DELETE FROM ChangeLogEntry c WHERE c.sequence <= :sequence")
+    int deleteThrough(@Param("sequence") long sequence);
+}
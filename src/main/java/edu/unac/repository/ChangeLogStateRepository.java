@@ -0,0 +1,16 @@
+package edu.unac.repository;
+
+import edu.unac.domain.ChangeLogState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface ChangeLogStateRepository extends JpaRepository<ChangeLogState, Integer> {
+    @Query("SELECT s.compactedThrough FROM ChangeLogState s WHERE s.id = :id")
+    long findCompactedThrough(@Param("id") int id);
+
+    @Modifying
+    @Query("UPDATE ChangeLogState s SET s.compactedThrough = :sequence WHERE s.id = :id AND s.compactedThrough < :sequence")
+    int advanceCompactedThrough(@Param("id") int id, @Param("sequence") long sequence);
+}
@@ -0,0 +1,16 @@
+package edu.unac.repository;
+
+import edu.unac.domain.Device;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public interface DeviceFieldQueries {
+    // Names findFields accepts
+    Set<String> fieldNames();
+
+    // Sparse fieldsets: the SELECT lists only the id and the named columns, the rest of the row is never read
+    List<Map<String, Object>> findFields(Specification<Device> spec, List<String> fields, int limit);
+}
@@ -0,0 +1,25 @@
+package edu.unac.repository;
+
+import edu.unac.domain.Device;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class DeviceFieldQueriesImpl implements DeviceFieldQueries {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Set<String> fieldNames() {
+        return FieldProjection.fieldNames(entityManager, Device.class);
+    }
+
+    @Override
+    public List<Map<String, Object>> findFields(Specification<Device> spec, List<String> fields, int limit) {
+        return FieldProjection.select(entityManager, Device.class, spec, fields, limit);
+    }
+}
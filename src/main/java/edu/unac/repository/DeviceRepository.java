@@ -1,12 +1,24 @@
 package edu.unac.repository;
 
 import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
-public interface DeviceRepository extends JpaRepository<Device, Long> {
+public interface DeviceRepository extends JpaRepository<Device, Long>, JpaSpecificationExecutor<Device>,
+        DeviceFieldQueries {
 
-    @Query("SELECT COUNT(l) > 0 FROM Loan l WHERE l.deviceId = :deviceId AND l.returned = false")
+    // EXISTS stops at the first matching index entry instead of counting every loan of the device
+    String EXISTS_OPEN_LOAN_SQL = "SELECT EXISTS (SELECT 1 FROM loan l WHERE l.device_id = :deviceId AND l.returned = FALSE)";
+
+    @Query(value = EXISTS_OPEN_LOAN_SQL, nativeQuery = true)
     boolean existsLoanByDeviceId(@Param("deviceId") Long deviceId);
+
+    // Returns 0 when the device is no longer in the expected status, i.e. another transaction got there first
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Device d SET d.status = :to, d.version = d.version + 1 WHERE d.id = :id AND d.status = :from")
+    int compareAndSetStatus(@Param("id") Long id, @Param("from") DeviceStatus from, @Param("to") DeviceStatus to);
 }
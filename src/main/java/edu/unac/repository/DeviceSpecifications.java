@@ -0,0 +1,26 @@
+package edu.unac.repository;
+
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import org.springframework.data.jpa.domain.Specification;
+
+public final class DeviceSpecifications {
+    private DeviceSpecifications() {
+    }
+
+    public static Specification<Device> idAfter(Long cursor) {
+        return cursor == null ? null : (root, query, cb) -> cb.greaterThan(root.get("id"), cursor);
+    }
+
+    public static Specification<Device> hasStatus(DeviceStatus status) {
+        return status == null ? null : (root, query, cb) -> cb.equal(root.get("status"), status);
+    }
+
+    public static Specification<Device> hasType(String type) {
+        return type == null ? null : (root, query, cb) -> cb.equal(root.get("type"), type);
+    }
+
+    public static Specification<Device> hasLocation(String location) {
+        return location == null ? null : (root, query, cb) -> cb.equal(root.get("location"), location);
+    }
+}
@@ -0,0 +1,66 @@
+package edu.unac.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TupleElement;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import jakarta.persistence.metamodel.Attribute;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Reads only the named attributes of the rows matching a specification, in id order, as one map per row keyed in
+// the order the names were given. The id always comes first since cursors are built from it. The entity's
+// singular attributes are the fields that can be named; callers check names against fieldNames() first.
+final class FieldProjection {
+    private static final String ID = "id";
+
+    private FieldProjection() {
+    }
+
+    static Set<String> fieldNames(EntityManager entityManager, Class<?> type) {
+        return entityManager.getMetamodel().entity(type).getSingularAttributes().stream()
+                .map(Attribute::getName)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    static <T> List<Map<String, Object>> select(EntityManager entityManager, Class<T> type, Specification<T> spec,
+                                                List<String> fields, int limit) {
+        Set<String> selected = new LinkedHashSet<>();
+        selected.add(ID);
+        selected.addAll(fields);
+
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<T> root = query.from(type);
+        List<Selection<?>> selections = new ArrayList<>(selected.size());
+        selected.forEach(name -> selections.add(root.get(name).alias(name)));
+        query.multiselect(selections);
+        Predicate predicate = spec.toPredicate(root, query, builder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(builder.asc(root.get(ID)));
+
+        List<Tuple> tuples = entityManager.createQuery(query).setMaxResults(limit).getResultList();
+        List<Map<String, Object>> rows = new ArrayList<>(tuples.size());
+        for (Tuple tuple : tuples) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (TupleElement<?> element : tuple.getElements()) {
+                row.put(element.getAlias(), tuple.get(element));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,28 @@
+package edu.unac.repository;
+
+import edu.unac.domain.LoanArchiveChunk;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface LoanArchiveRepository extends JpaRepository<LoanArchiveChunk, Long> {
+    List<LoanArchiveChunk> findByDeviceIdOrderByFirstLoanId(Long deviceId);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "50"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT c FROM LoanArchiveChunk c ORDER BY c.id")
+    Stream<LoanArchiveChunk> streamAll();
+
+    @Query("SELECT COALESCE(SUM(c.loanCount), 0) FROM LoanArchiveChunk c")
+    long countArchivedLoans();
+
+    @Query(value = "SELECT COALESCE(SUM(OCTET_LENGTH(data)), 0) FROM loan_archive", nativeQuery = true)
+    long sumDataBytes();
+}
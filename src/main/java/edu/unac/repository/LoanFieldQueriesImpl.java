@@ -0,0 +1,25 @@
+package edu.unac.repository;
+
+import edu.unac.domain.Loan;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class LoanFieldQueriesImpl implements LoanFieldQueries {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Set<String> fieldNames() {
+        return FieldProjection.fieldNames(entityManager, Loan.class);
+    }
+
+    @Override
+    public List<Map<String, Object>> findFields(Specification<Loan> spec, List<String> fields, int limit) {
+        return FieldProjection.select(entityManager, Loan.class, spec, fields, limit);
+    }
+}
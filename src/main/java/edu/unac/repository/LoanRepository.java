@@ -1,10 +1,78 @@
 package edu.unac.repository;
 
 import edu.unac.domain.Loan;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+
+public interface LoanRepository extends JpaRepository<Loan, Long>, JpaSpecificationExecutor<Loan>,
+        LoanFieldQueries {
+    // Open, unflagged loans past their due date, in (due_date, id) order after the given position. It is a
+    // range scan of idx_loan_overdue_scan that starts at the first overdue entry, so loans that are not due
+    // yet are never read. Loans without a due date (0) stay out as long as afterDueDate starts at 1
+    String OVERDUE_CANDIDATES_SQL = "SELECT * FROM loan l WHERE l.returned = FALSE AND l.overdue = FALSE"
+            + " AND l.due_date >= :afterDueDate AND l.due_date < :now AND (l.due_date > :afterDueDate OR l.id > :afterId)"
+            + " ORDER BY l.due_date, l.id LIMIT :limit";
+
+    // Returned loans older than the cutoff in (device_id, id) order after the given position, read in the order of
+    // idx_loan_archive_scan so no batch sorts. Walking device by device lets one chunk hold many loans of few devices
+    String ARCHIVE_CANDIDATES_SQL = "SELECT * FROM loan l WHERE l.returned = TRUE AND l.end_date < :cutoff"
+            + " AND l.device_id >= :afterDeviceId AND (l.device_id > :afterDeviceId OR l.id > :afterId)"
+            + " ORDER BY l.returned, l.device_id, l.id LIMIT :limit";
 
-public interface LoanRepository extends JpaRepository<Loan, Long> {
     List<Loan> findByDeviceId(Long deviceId);
+
+    @Query("SELECT l.borrowedBy AS borrowedBy, COUNT(l) AS open FROM Loan l"
+            + " WHERE l.returned = false AND l.borrowedBy IS NOT NULL GROUP BY l.borrowedBy")
+    List<OpenLoanCount> countOpenByBorrower();
+
+    interface OpenLoanCount {
+        String getBorrowedBy();
+
+        long getOpen();
+    }
+
+    @Query(value = ARCHIVE_CANDIDATES_SQL, nativeQuery = true)
+    List<Loan> findArchiveCandidates(@Param("cutoff") long cutoff, @Param("afterDeviceId") long afterDeviceId,
+                                     @Param("afterId") long afterId, @Param("limit") int limit);
+
+    // Returned loans never change again, so a count short of ids.size() means the chunk was read wrongly
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Loan l WHERE l.id IN :ids AND l.returned = true")
+    int deleteReturned(@Param("ids") Collection<Long> ids);
+
+    @Query(value = OVERDUE_CANDIDATES_SQL, nativeQuery = true)
+    List<Loan> findOverdueCandidates(@Param("now") long now, @Param("afterDueDate") long afterDueDate,
+                                     @Param("afterId") long afterId, @Param("limit") int limit);
+
+    // Skips loans returned or flagged since they were read; the count tells the caller whether that happened
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Loan l SET l.overdue = true, l.version = l.version + 1 WHERE l.id IN :ids AND l.returned = false AND l.overdue = false")
+    int flagOverdue(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT COUNT(l) FROM Loan l WHERE l.returned = false AND l.overdue = false AND l.dueDate > 0 AND l.dueDate < :now")
+    long countOverdueUnflagged(@Param("now") long now);
+
+    long countByReturnedFalseAndOverdueTrue();
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT l FROM Loan l ORDER BY l.id")
+    Stream<Loan> streamAll();
+
+    // Returns 0 when the loan was already returned by a concurrent request
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Loan l SET l.returned = true, l.endDate = :endDate, l.version = l.version + 1 WHERE l.id = :id AND l.returned = false")
+    int markReturnedIfOpen(@Param("id") Long id, @Param("endDate") long endDate);
 }
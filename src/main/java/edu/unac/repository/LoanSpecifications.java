@@ -0,0 +1,29 @@
+package edu.unac.repository;
+
+import edu.unac.domain.Loan;
+import org.springframework.data.jpa.domain.Specification;
+
+public final class LoanSpecifications {
+    private LoanSpecifications() {
+    }
+
+    public static Specification<Loan> idAfter(Long cursor) {
+        return cursor == null ? null : (root, query, cb) -> cb.greaterThan(root.get("id"), cursor);
+    }
+
+    public static Specification<Loan> isReturned(Boolean returned) {
+        return returned == null ? null : (root, query, cb) -> cb.equal(root.get("returned"), returned);
+    }
+
+    public static Specification<Loan> isOverdue(Boolean overdue) {
+        return overdue == null ? null : (root, query, cb) -> cb.equal(root.get("overdue"), overdue);
+    }
+
+    public static Specification<Loan> hasDeviceId(Long deviceId) {
+        return deviceId == null ? null : (root, query, cb) -> cb.equal(root.get("deviceId"), deviceId);
+    }
+
+    public static Specification<Loan> hasBorrower(String borrowedBy) {
+        return borrowedBy == null ? null : (root, query, cb) -> cb.equal(root.get("borrowedBy"), borrowedBy);
+    }
+}
@@ -0,0 +1,4 @@
+package edu.unac.service;
+
+public record AnalyticsRebuildReport(long devices, long loans, long elapsedMillis) {
+}
@@ -0,0 +1,270 @@
+package edu.unac.service;
+
+import edu.unac.domain.ChangedEntity;
+import edu.unac.domain.Device;
+import edu.unac.domain.Loan;
+import edu.unac.event.DeviceChangedEvent;
+import edu.unac.event.LoanChangedEvent;
+import edu.unac.repository.DeviceRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static edu.unac.repository.DeviceSpecifications.idAfter;
+
+// Utilization and loan figures per device and per device type, kept current from the committed loan events
+// instead of being recomputed from the loan table. Reads cost the same however long the history is.
+// rebuild() recomputes everything from one streaming pass over the loans, e.g. after loans were written
+// without going through LoanService.
+@Service
+public class AnalyticsService {
+    static final int[] WINDOW_DAYS = {7, UsageAggregate.RING_DAYS};
+    private static final int DEVICE_PAGE = 10_000;
+
+    private final DeviceRepository deviceRepository;
+    private final LoanService loanService;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock rebuilding = new ReentrantLock();
+    private final Map<Long, UsageAggregate> byDevice = new HashMap<>();
+    private final Map<String, UsageAggregate> byType = new HashMap<>();
+    private final Map<Long, String> deviceTypes = new HashMap<>();
+    private final Map<String, Integer> devicesPerType = new HashMap<>();
+    // Loans counted as started and not yet returned, so a repeated or late event is not counted twice
+    private final Map<Long, Loan> openLoans = new HashMap<>();
+    // Loans whose return was applied before their creation event arrived from another thread
+    private final Set<Long> returnedBeforeCreated = new HashSet<>();
+    private final ConcurrentRebuild concurrentRebuild = new ConcurrentRebuild(lock.writeLock());
+
+    public AnalyticsService(DeviceRepository deviceRepository, LoanService loanService) {
+        this.deviceRepository = deviceRepository;
+        this.loanService = loanService;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDeviceChanged(DeviceChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            concurrentRebuild.changed(ChangedEntity.DEVICE, event.deviceId());
+            if (event.kind() == DeviceChangedEvent.Kind.DELETED) {
+                forgetDevice(event.deviceId());
+            } else {
+                rememberDevice(event.deviceId(), event.device().getType());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLoanChanged(LoanChangedEvent event) {
+        // Being flagged overdue changes none of the figures
+        if (event.kind() == LoanChangedEvent.Kind.OVERDUE) {
+            return;
+        }
+        Loan loan = event.loan();
+        String type = typeOf(loan.getDeviceId());
+        lock.writeLock().lock();
+        try {
+            concurrentRebuild.changed(ChangedEntity.LOAN, loan.getId());
+            if (type != null) {
+                rememberDevice(loan.getDeviceId(), type);
+            }
+            if (event.kind() == LoanChangedEvent.Kind.CREATED) {
+                if (!returnedBeforeCreated.remove(loan.getId())) {
+                    started(loan);
+                }
+            } else if (openLoans.containsKey(loan.getId())) {
+                returned(loan);
+            } else {
+                started(loan);
+                returned(loan);
+                returnedBeforeCreated.add(loan.getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuild();
+    }
+
+    public AnalyticsRebuildReport rebuild() {
+        rebuilding.lock();
+        try {
+            return rebuildExclusively();
+        } finally {
+            rebuilding.unlock();
+        }
+    }
+
+    private AnalyticsRebuildReport rebuildExclusively() {
+        long startedAt = System.nanoTime();
+        long devices;
+        long[] loans = new long[1];
+        try {
+            concurrentRebuild.begin(() -> {
+                byDevice.clear();
+                byType.clear();
+                deviceTypes.clear();
+                devicesPerType.clear();
+                openLoans.clear();
+                returnedBeforeCreated.clear();
+            });
+            devices = ConcurrentRebuild.forEachDevicePage(this::devicePageAfter, page -> concurrentRebuild.apply(
+                    ChangedEntity.DEVICE, page, Device::getId, device -> rememberDevice(device.getId(), device.getType())));
+            loanService.exportLoans(loan -> {
+                concurrentRebuild.apply(ChangedEntity.LOAN, List.of(loan), Loan::getId, this::replay);
+                loans[0]++;
+            }, true);
+        } finally {
+            concurrentRebuild.end();
+        }
+        return new AnalyticsRebuildReport(devices, loans[0],
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+    }
+
+    private List<Device> devicePageAfter(Long cursor) {
+        return deviceRepository.findBy(Specification.where(idAfter(cursor)), query -> query
+                .sortBy(Sort.by("id"))
+                .limit(DEVICE_PAGE)
+                .all());
+    }
+
+    public Optional<UsageReport> getDeviceUsage(Long deviceId) {
+        return getDeviceUsage(deviceId, System.currentTimeMillis());
+    }
+
+    Optional<UsageReport> getDeviceUsage(Long deviceId, long now) {
+        lock.readLock().lock();
+        try {
+            if (!deviceTypes.containsKey(deviceId)) {
+                return Optional.empty();
+            }
+            return Optional.of(report(String.valueOf(deviceId), byDevice.get(deviceId), 1, now));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Optional<UsageReport> getTypeUsage(String type) {
+        return getTypeUsage(type, System.currentTimeMillis());
+    }
+
+    Optional<UsageReport> getTypeUsage(String type, long now) {
+        lock.readLock().lock();
+        try {
+            Integer devices = devicesPerType.get(type);
+            if (devices == null) {
+                return Optional.empty();
+            }
+            return Optional.of(report(type, byType.get(type), devices, now));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // One report per known type; the cost grows with the number of types, not with the loan history
+    public List<UsageReport> getAllTypeUsage() {
+        long now = System.currentTimeMillis();
+        lock.readLock().lock();
+        try {
+            List<UsageReport> reports = new ArrayList<>(devicesPerType.size());
+            devicesPerType.forEach((type, devices) -> reports.add(report(type, byType.get(type), devices, now)));
+            return reports;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static UsageReport report(String subject, UsageAggregate usage, int devices, long now) {
+        if (usage == null) {
+            usage = new UsageAggregate();
+        }
+        List<UsageReport.Window> windows = new ArrayList<>(WINDOW_DAYS.length);
+        for (int days : WINDOW_DAYS) {
+            windows.add(usage.window(days, now, devices));
+        }
+        UsageReport.Window longest = windows.get(windows.size() - 1);
+        double loansPerWeek = longest.loans() * 7.0 / longest.days();
+        return new UsageReport(subject, devices, usage.loans(), usage.open(), loansPerWeek,
+                usage.meanLoanDurationMillis(), windows, usage.topBorrowers());
+    }
+
+    private void replay(Loan loan) {
+        started(loan);
+        if (loan.isReturned()) {
+            returned(loan);
+        }
+    }
+
+    private void started(Loan loan) {
+        if (openLoans.putIfAbsent(loan.getId(), loan) != null) {
+            return;
+        }
+        aggregatesOf(loan.getDeviceId()).forEach(usage -> usage.loanStarted(loan.getStartDate(), loan.getBorrowedBy()));
+    }
+
+    private void returned(Loan loan) {
+        Loan open = openLoans.remove(loan.getId());
+        if (open == null) {
+            return;
+        }
+        aggregatesOf(loan.getDeviceId()).forEach(usage -> usage.loanReturned(open.getStartDate(), loan.getEndDate()));
+    }
+
+    private List<UsageAggregate> aggregatesOf(Long deviceId) {
+        UsageAggregate device = byDevice.computeIfAbsent(deviceId, id -> new UsageAggregate());
+        String type = deviceTypes.get(deviceId);
+        return type == null ? List.of(device) : List.of(device, byType.computeIfAbsent(type, t -> new UsageAggregate()));
+    }
+
+    // Devices inserted without a registration event are looked up once, outside the lock
+    private String typeOf(Long deviceId) {
+        lock.readLock().lock();
+        try {
+            if (deviceTypes.containsKey(deviceId)) {
+                return deviceTypes.get(deviceId);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return deviceRepository.findById(deviceId).map(Device::getType).orElse(null);
+    }
+
+    // A device without a type is still tracked on its own, it just counts towards no type
+    private void rememberDevice(Long deviceId, String type) {
+        if (deviceId == null || deviceTypes.containsKey(deviceId)) {
+            return;
+        }
+        deviceTypes.put(deviceId, type);
+        if (type != null) {
+            devicesPerType.merge(type, 1, Integer::sum);
+        }
+    }
+
+    private void forgetDevice(Long deviceId) {
+        String type = deviceTypes.remove(deviceId);
+        byDevice.remove(deviceId);
+        if (type != null && devicesPerType.merge(type, -1, Integer::sum) == 0) {
+            devicesPerType.remove(type);
+            byType.remove(type);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package edu.unac.service;
+
+public enum BatchMode {
+    ALL_OR_NOTHING,
+    BEST_EFFORT
+}
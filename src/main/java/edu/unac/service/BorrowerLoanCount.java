@@ -0,0 +1,5 @@
+package edu.unac.service;
+
+// maxPerBorrower is 0 when no limit is configured
+public record BorrowerLoanCount(String borrower, int openLoans, int maxPerBorrower) {
+}
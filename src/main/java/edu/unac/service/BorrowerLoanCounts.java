@@ -0,0 +1,86 @@
+package edu.unac.service;
+
+import edu.unac.event.LoanChangedEvent;
+import edu.unac.repository.LoanRepository;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// Open loans per borrower, kept in memory so counts and the optional per-borrower limit need no query. A loan is
+// claimed inside the transaction that creates it and handed back if that transaction does not commit; a return
+// is counted once committed, so a borrower is never under-counted. Built from the loan table once every bean
+// exists and before the web server starts, so no request can claim a loan the build would then overwrite.
+@Component
+public class BorrowerLoanCounts implements SmartInitializingSingleton {
+    static final String LIMIT_REACHED = "Borrower has reached the loan limit";
+
+    private final LoanRepository loanRepository;
+    private final int maxPerBorrower;
+    private final ConcurrentHashMap<String, Integer> open = new ConcurrentHashMap<>();
+
+    public BorrowerLoanCounts(LoanRepository loanRepository,
+                              @Value("${inventory.loans.max-per-borrower:0}") int maxPerBorrower) {
+        this.loanRepository = loanRepository;
+        this.maxPerBorrower = maxPerBorrower;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        loanRepository.countOpenByBorrower().forEach(count -> open.put(count.getBorrowedBy(), (int) count.getOpen()));
+    }
+
+    public int openLoans(String borrower) {
+        return borrower == null ? 0 : open.getOrDefault(borrower, 0);
+    }
+
+    // 0 means no limit
+    public int maxPerBorrower() {
+        return maxPerBorrower;
+    }
+
+    public boolean atLimit(String borrower, int pending) {
+        return maxPerBorrower > 0 && borrower != null && openLoans(borrower) + pending >= maxPerBorrower;
+    }
+
+    // Loans without a borrower are not counted or limited
+    public void claim(String borrower) {
+        if (borrower == null) {
+            return;
+        }
+        open.compute(borrower, (name, count) -> {
+            int current = count == null ? 0 : count;
+            if (maxPerBorrower > 0 && current >= maxPerBorrower) {
+                throw new IllegalStateException(LIMIT_REACHED);
+            }
+            return current + 1;
+        });
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        release(borrower);
+                    }
+                }
+            });
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLoanChanged(LoanChangedEvent event) {
+        if (event.kind() == LoanChangedEvent.Kind.RETURNED) {
+            release(event.loan().getBorrowedBy());
+        }
+    }
+
+    private void release(String borrower) {
+        if (borrower != null) {
+            open.computeIfPresent(borrower, (name, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package edu.unac.service;
+
+import edu.unac.domain.ChangeLogEntry;
+import edu.unac.domain.ChangeLogState;
+import edu.unac.domain.ChangedEntity;
+import edu.unac.domain.Device;
+import edu.unac.domain.Loan;
+import edu.unac.repository.ChangeLogRepository;
+import edu.unac.repository.ChangeLogStateRepository;
+import edu.unac.repository.DeviceRepository;
+import edu.unac.repository.LoanRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+public class ChangeLogService {
+    private final ChangeLogRepository changeLogRepository;
+    private final ChangeLogStateRepository stateRepository;
+    private final ChangeLogWriter changeLogWriter;
+    private final DeviceRepository deviceRepository;
+    private final LoanRepository loanRepository;
+    private final Duration retention;
+
+    public ChangeLogService(ChangeLogRepository changeLogRepository, ChangeLogStateRepository stateRepository,
+                            ChangeLogWriter changeLogWriter, DeviceRepository deviceRepository,
+                            LoanRepository loanRepository, @Value("${inventory.changes.retention:P7D}") Duration retention) {
+        this.changeLogRepository = changeLogRepository;
+        this.stateRepository = stateRepository;
+        this.changeLogWriter = changeLogWriter;
+        this.deviceRepository = deviceRepository;
+        this.loanRepository = loanRepository;
+        this.retention = retention;
+    }
+
+    @PostConstruct
+    void initializeState() {
+        if (!stateRepository.existsById(ChangeLogState.ID)) {
+            stateRepository.save(new ChangeLogState(ChangeLogState.ID, 0L));
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public ChangeSet<Device> getDeviceChanges(Long since, int limit) {
+        return changesSince(ChangedEntity.DEVICE, since, limit, deviceRepository::findAllById, Device::getId);
+    }
+
+    @Transactional(readOnly = true)
+    public ChangeSet<Loan> getLoanChanges(Long since, int limit) {
+        return changesSince(ChangedEntity.LOAN, since, limit, loanRepository::findAllById, Loan::getId);
+    }
+
+    // Without since this only returns the current sequence, which a client takes before its initial full load.
+    // Each entity appears once, at its latest sequence in the page, with its current row. Sequences past
+    // visibleThrough are left for a later call, since a transaction holding a smaller one may still commit
+    private <T> ChangeSet<T> changesSince(ChangedEntity entity, Long since, int limit,
+                                          Function<Iterable<Long>, List<T>> loader, Function<T, Long> idOf) {
+        int pageSize = CursorPage.pageSize(limit);
+        long visibleThrough = changeLogWriter.visibleThrough();
+        if (since == null) {
+            return new ChangeSet<>(List.of(), visibleThrough, false);
+        }
+        if (since < 0) {
+            throw new IllegalArgumentException("since must not be negative");
+        }
+        // Never handed out here: visibleThrough only grows, so the sequence has started over since
+        if (since > visibleThrough) {
+            throw ChangesCompactedException.unknownSequence(since, visibleThrough);
+        }
+
+        List<ChangeLogEntry> entries = since == visibleThrough ? List.of()
+                : changeLogRepository.findByEntityAndSequenceBetweenOrderBySequence(
+                        entity, since + 1, visibleThrough, Limit.of(pageSize + 1));
+        // Checked after reading, so a compaction that committed meanwhile cannot have removed part of this page
+        long compactedThrough = stateRepository.findCompactedThrough(ChangeLogState.ID);
+        if (since < compactedThrough) {
+            throw new ChangesCompactedException(compactedThrough);
+        }
+        boolean hasMore = entries.size() > pageSize;
+        if (hasMore) {
+            entries = entries.subList(0, pageSize);
+        }
+
+        Map<Long, ChangeLogEntry> latest = new LinkedHashMap<>();
+        for (ChangeLogEntry entry : entries) {
+            latest.remove(entry.getEntityId());
+            latest.put(entry.getEntityId(), entry);
+        }
+        Map<Long, T> rows = loader.apply(latest.values().stream()
+                        .filter(entry -> !entry.isDeleted())
+                        .map(ChangeLogEntry::getEntityId)
+                        .toList())
+                .stream()
+                .collect(Collectors.toMap(idOf, Function.identity()));
+
+        List<ChangeSet.Change<T>> changes = new ArrayList<>(latest.size());
+        for (ChangeLogEntry entry : latest.values()) {
+            T row = entry.isDeleted() ? null : rows.get(entry.getEntityId());
+            changes.add(new ChangeSet.Change<>(entry.getSequence(), entry.getEntityId(), row == null, row));
+        }
+        long nextSince = entries.isEmpty() ? since : entries.get(entries.size() - 1).getSequence();
+        return new ChangeSet<>(changes, nextSince, hasMore);
+    }
+
+    // Superseded entries are dropped outright; everything older than the retention window, tombstones
+    // included, is dropped too and raises the floor below which clients are told to reload
+    @Scheduled(initialDelayString = "${inventory.changes.compaction-interval:PT10M}",
+            fixedDelayString = "${inventory.changes.compaction-interval:PT10M}")
+    @Transactional
+    public void compact() {
+        changeLogRepository.deleteSuperseded();
+        Long expiredThrough = changeLogRepository.findLastSequenceBefore(System.currentTimeMillis() - retention.toMillis());
+        if (expiredThrough != null) {
+            // Never past what readers can see, so the floor only covers entries that were visible
+            expiredThrough = Math.min(expiredThrough, changeLogWriter.visibleThrough());
+            changeLogRepository.deleteThrough(expiredThrough);
+            stateRepository.advanceCompactedThrough(ChangeLogState.ID, expiredThrough);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package edu.unac.service;
+
+import edu.unac.domain.ChangeLogEntry;
+import edu.unac.domain.ChangeLogState;
+import edu.unac.domain.ChangedEntity;
+import edu.unac.event.DeviceChangedEvent;
+import edu.unac.event.LoanChangedEvent;
+import edu.unac.event.TransactionBuffer;
+import edu.unac.repository.ChangeLogRepository;
+import edu.unac.repository.ChangeLogStateRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Collects the changes a transaction publishes and appends them to the change log just before it commits.
+// Sequences come from change_log_seq, so writers never wait on each other, but they can commit out of
+// sequence order. Readers therefore only see sequences up to visibleThrough(): below the smallest sequence
+// still in flight, so a client that has seen sequence N can never later miss a smaller one. The in-flight
+// sequences are tracked in memory, which assumes a single application instance per database.
+@Component
+public class ChangeLogWriter {
+    private final ChangeLogRepository changeLogRepository;
+    private final ChangeLogStateRepository stateRepository;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Held only while sequences are assigned, so a reader never sees one assigned but not yet in flight
+    private final ReentrantLock assigning = new ReentrantLock();
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    // Guarded by assigning
+    private long lastAssigned;
+
+    public ChangeLogWriter(ChangeLogRepository changeLogRepository, ChangeLogStateRepository stateRepository) {
+        this.changeLogRepository = changeLogRepository;
+        this.stateRepository = stateRepository;
+    }
+
+    // Readers may see everything already written, up to the highest sequence or the compaction floor
+    @PostConstruct
+    void initialize() {
+        Long last = changeLogRepository.findLastSequence();
+        lastAssigned = Math.max(last != null ? last : 0L, stateRepository.findById(ChangeLogState.ID)
+                .map(ChangeLogState::getCompactedThrough)
+                .orElse(0L));
+    }
+
+    // The highest sequence below which every transaction has completed
+    public long visibleThrough() {
+        assigning.lock();
+        try {
+            Long oldest = inFlight.ceiling(Long.MIN_VALUE);
+            return oldest != null ? oldest - 1 : lastAssigned;
+        } finally {
+            assigning.unlock();
+        }
+    }
+
+    @EventListener
+    public void onDeviceChanged(DeviceChangedEvent event) {
+        record(ChangedEntity.DEVICE, event.deviceId(), event.kind() == DeviceChangedEvent.Kind.DELETED);
+    }
+
+    @EventListener
+    public void onLoanChanged(LoanChangedEvent event) {
+        record(ChangedEntity.LOAN, event.loanId(), false);
+    }
+
+    private void record(ChangedEntity entity, Long entityId, boolean deleted) {
+        ChangeLogEntry entry = new ChangeLogEntry(null, entity, entityId, deleted, System.currentTimeMillis());
+        if (!TransactionBuffer.add(this, PendingChanges::new, entry)) {
+            throw new IllegalStateException("Changes can only be recorded inside a transaction");
+        }
+    }
+
+    // persist assigns the sequence; the rows are inserted by the commit's flush
+    private void append(List<ChangeLogEntry> entries) {
+        assigning.lock();
+        try {
+            for (ChangeLogEntry entry : entries) {
+                entityManager.persist(entry);
+                inFlight.add(entry.getSequence());
+                lastAssigned = Math.max(lastAssigned, entry.getSequence());
+            }
+        } finally {
+            assigning.unlock();
+        }
+    }
+
+    private final class PendingChanges extends TransactionBuffer<ChangeLogEntry> {
+        PendingChanges() {
+            super(ChangeLogWriter.this);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            append(items());
+        }
+
+        // Committed or not, the sequences stop holding readers back
+        @Override
+        protected void completed(int status) {
+            items().forEach(entry -> {
+                if (entry.getSequence() != null) {
+                    inFlight.remove(entry.getSequence());
+                }
+            });
+        }
+    }
+}
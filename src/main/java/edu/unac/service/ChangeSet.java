@@ -0,0 +1,12 @@
+package edu.unac.service;
+
+import java.util.List;
+
+// nextSince is what the client passes as since on its next call; hasMore means call again right away
+public record ChangeSet<T>(List<Change<T>> changes, long nextSince, boolean hasMore) {
+    public static final int DEFAULT_LIMIT = 500;
+
+    // data is the current row, or null when deleted is true
+    public record Change<T>(long sequence, Long id, boolean deleted, T data) {
+    }
+}
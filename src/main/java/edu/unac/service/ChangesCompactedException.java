@@ -0,0 +1,18 @@
+package edu.unac.service;
+
+// The requested since falls before what compaction kept, or past any sequence handed out (e.g. one held from
+// before an in-memory database was restarted), so the client has to do a full reload
+public class ChangesCompactedException extends IllegalStateException {
+    public ChangesCompactedException(long compactedThrough) {
+        super("Changes up to sequence " + compactedThrough + " were compacted; reload and sync from a fresh sequence");
+    }
+
+    private ChangesCompactedException(String message) {
+        super(message);
+    }
+
+    public static ChangesCompactedException unknownSequence(long since, long latest) {
+        return new ChangesCompactedException("Sequence " + since + " is past the latest sequence " + latest
+                + "; reload and sync from a fresh sequence");
+    }
+}
@@ -0,0 +1,82 @@
+package edu.unac.service;
+
+import edu.unac.domain.ChangedEntity;
+import edu.unac.domain.Device;
+
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Rebuilds in-memory state from the database while events keep being applied to it. Rows are read without the
+// state's write lock, so a row read before an event changed it would undo that event once applied; rows of
+// anything an event changed since begin() are therefore skipped, the event having already put them in place.
+final class ConcurrentRebuild {
+    private final Lock writeLock;
+    // Non-null between begin() and end()
+    private Map<ChangedEntity, Set<Long>> changed;
+
+    ConcurrentRebuild(Lock writeLock) {
+        this.writeLock = writeLock;
+    }
+
+    // Called with the write lock held by every event applied to the state
+    void changed(ChangedEntity entity, Long id) {
+        if (changed != null) {
+            changed.computeIfAbsent(entity, key -> new HashSet<>()).add(id);
+        }
+    }
+
+    // clear empties the state; both run under the write lock
+    void begin(Runnable clear) {
+        writeLock.lock();
+        try {
+            clear.run();
+            changed = new EnumMap<>(ChangedEntity.class);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Applies the rows that no event has changed since begin(), holding the write lock once for all of them
+    <R> void apply(ChangedEntity entity, List<R> rows, Function<R, Long> id, Consumer<R> action) {
+        writeLock.lock();
+        try {
+            Set<Long> skipped = changed.getOrDefault(entity, Set.of());
+            for (R row : rows) {
+                if (!skipped.contains(id.apply(row))) {
+                    action.accept(row);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    void end() {
+        writeLock.lock();
+        try {
+            changed = null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Hands every device to action a page at a time and returns how many there were. pageAfter is called with the
+    // last id of the previous page (null first) until it returns an empty page
+    static long forEachDevicePage(Function<Long, List<Device>> pageAfter, Consumer<List<Device>> action) {
+        long devices = 0;
+        Long cursor = null;
+        List<Device> page;
+        while (!(page = pageAfter.apply(cursor)).isEmpty()) {
+            action.accept(page);
+            devices += page.size();
+            cursor = page.get(page.size() - 1).getId();
+        }
+        return devices;
+    }
+}
@@ -0,0 +1,26 @@
+package edu.unac.service;
+
+import java.util.List;
+import java.util.function.Function;
+
+public record CursorPage<T>(List<T> items, Long nextCursor) {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+
+    static int pageSize(int requested) {
+        if (requested < 1) {
+            throw new IllegalArgumentException("Page limit must be at least 1");
+        }
+        return Math.min(requested, MAX_LIMIT);
+    }
+
+    // Callers fetch pageSize + 1 rows so the extra row tells us whether a next page exists
+    static <T> CursorPage<T> of(List<T> rows, int pageSize, Function<T, Long> idOf) {
+        if (rows.size() <= pageSize) {
+            return new CursorPage<>(rows, null);
+        }
+        List<T> items = rows.subList(0, pageSize);
+        return new CursorPage<>(List.copyOf(items), idOf.apply(items.get(pageSize - 1)));
+    }
+}
@@ -0,0 +1,210 @@
+package edu.unac.service;
+
+import edu.unac.domain.ChangedEntity;
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.event.DeviceChangedEvent;
+import edu.unac.event.TransactionBuffer;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Device ids per status, per type and per location as bitmaps indexed by id, so "available devices of this type
+// in this room" is an AND of three bitmaps and "is this device available" is one bit. The changes a transaction
+// publishes are applied just before its commit, so in commit order (see TransactionBuffer). If the transaction
+// then fails to commit, its devices go back to their previous status unless a later transaction has changed them
+// since.
+// A device the index holds no status for is unknown and callers have to ask the database.
+@Component
+public class DeviceAvailabilityIndex implements DeviceIndex {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<DeviceStatus, BitSet> byStatus = new EnumMap<>(DeviceStatus.class);
+    // Never cleared for deleted devices: ids are not reused and a deleted device has no status bit to match
+    private final Map<String, BitSet> byType = new HashMap<>();
+    private final Map<String, BitSet> byLocation = new HashMap<>();
+    // Devices changed by a transaction that has not completed yet, and which transaction changed them last
+    private final Map<Long, PendingChanges> inFlight = new HashMap<>();
+    private final ConcurrentRebuild rebuild = new ConcurrentRebuild(lock.writeLock());
+
+    public DeviceAvailabilityIndex() {
+        for (DeviceStatus status : DeviceStatus.values()) {
+            byStatus.put(status, new BitSet());
+        }
+    }
+
+    @EventListener
+    public void onDeviceChanged(DeviceChangedEvent event) {
+        if (!TransactionBuffer.add(this, PendingChanges::new, event)) {
+            apply(event, null);
+        }
+    }
+
+    public Optional<DeviceStatus> statusOf(Long deviceId) {
+        if (!indexable(deviceId)) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            return statusLocked(deviceId.intValue());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Known to be in some other status; an unknown device is not ruled out
+    public boolean isUnavailable(Long deviceId) {
+        return statusOf(deviceId).map(status -> status != DeviceStatus.AVAILABLE).orElse(false);
+    }
+
+    // Ascending ids; a null type or location matches any
+    public List<Long> availableIds(String type, String location) {
+        BitSet matches;
+        lock.readLock().lock();
+        try {
+            matches = (BitSet) byStatus.get(DeviceStatus.AVAILABLE).clone();
+            if (type != null) {
+                matches.and(byType.getOrDefault(type, new BitSet()));
+            }
+            if (location != null) {
+                matches.and(byLocation.getOrDefault(location, new BitSet()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Long> ids = new ArrayList<>(matches.cardinality());
+        matches.stream().forEach(id -> ids.add((long) id));
+        return ids;
+    }
+
+    public void remove(Long deviceId) {
+        lock.writeLock().lock();
+        try {
+            clearStatus(deviceId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void startRebuild() {
+        rebuild.begin(() -> {
+            byStatus.values().forEach(BitSet::clear);
+            byType.clear();
+            byLocation.clear();
+        });
+    }
+
+    @Override
+    public void rebuildPage(List<Device> page) {
+        rebuild.apply(ChangedEntity.DEVICE, page, Device::getId, this::put);
+    }
+
+    @Override
+    public void finishRebuild() {
+        rebuild.end();
+    }
+
+    private void apply(DeviceChangedEvent event, PendingChanges owner) {
+        lock.writeLock().lock();
+        try {
+            rebuild.changed(ChangedEntity.DEVICE, event.deviceId());
+            if (owner == null) {
+                // Applied for good, so no earlier transaction may roll it back any more
+                inFlight.remove(event.deviceId());
+            } else if (indexable(event.deviceId())) {
+                owner.previous.putIfAbsent(event.deviceId(), statusLocked(event.deviceId().intValue()));
+                inFlight.put(event.deviceId(), owner);
+            }
+            if (event.kind() == DeviceChangedEvent.Kind.DELETED) {
+                clearStatus(event.deviceId());
+            } else {
+                put(event.device());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void complete(PendingChanges owner, boolean committed) {
+        lock.writeLock().lock();
+        try {
+            owner.previous.forEach((deviceId, previous) -> {
+                if (inFlight.get(deviceId) != owner) {
+                    return;
+                }
+                inFlight.remove(deviceId);
+                if (!committed) {
+                    clearStatus(deviceId);
+                    previous.ifPresent(status -> byStatus.get(status).set(deviceId.intValue()));
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Optional<DeviceStatus> statusLocked(int bit) {
+        for (Map.Entry<DeviceStatus, BitSet> entry : byStatus.entrySet()) {
+            if (entry.getValue().get(bit)) {
+                return Optional.of(entry.getKey());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void put(Device device) {
+        if (!indexable(device.getId())) {
+            return;
+        }
+        int bit = device.getId().intValue();
+        clearStatus(device.getId());
+        if (device.getStatus() != null) {
+            byStatus.get(device.getStatus()).set(bit);
+        }
+        if (device.getType() != null) {
+            byType.computeIfAbsent(device.getType(), type -> new BitSet()).set(bit);
+        }
+        if (device.getLocation() != null) {
+            byLocation.computeIfAbsent(device.getLocation(), location -> new BitSet()).set(bit);
+        }
+    }
+
+    private void clearStatus(Long deviceId) {
+        if (indexable(deviceId)) {
+            byStatus.values().forEach(bits -> bits.clear(deviceId.intValue()));
+        }
+    }
+
+    // Ids beyond the range of a bitmap stay unknown
+    private static boolean indexable(Long deviceId) {
+        return deviceId != null && deviceId >= 0 && deviceId < Integer.MAX_VALUE;
+    }
+
+    private final class PendingChanges extends TransactionBuffer<DeviceChangedEvent> {
+        // Status each device had before this transaction's first change to it
+        private final Map<Long, Optional<DeviceStatus>> previous = new LinkedHashMap<>();
+
+        PendingChanges() {
+            super(DeviceAvailabilityIndex.this);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            items().forEach(event -> apply(event, this));
+        }
+
+        @Override
+        protected void completed(int status) {
+            complete(this, status == STATUS_COMMITTED);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package edu.unac.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import edu.unac.domain.Device;
+import edu.unac.event.DeviceChangedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+// Entries are copied on the way in and out so callers can never mutate a shared cached instance
+@Component
+public class DeviceCache implements MeterBinder {
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final Cache<Long, Device> devices;
+    private final AtomicLongArray deviceGenerations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public DeviceCache(@Value("${inventory.cache.devices.maximum-size:10000}") long maximumSize,
+                       @Value("${inventory.cache.devices.ttl:PT5M}") Duration ttl) {
+        this.devices = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    // Loads run outside the cache's locks, so a slow query holds none of them. A load is only stored if no
+    // invalidation hit its stripe meanwhile, so a row read before another transaction committed can never be
+    // put back after that commit's invalidation.
+    // Misses are not cached, so a device created behind our back is picked up on the next read
+    public Optional<Device> get(Long id, Function<Long, Optional<Device>> loader) {
+        Device cached = devices.getIfPresent(id);
+        if (cached != null) {
+            return Optional.of(cached.copy());
+        }
+        int stripe = stripe(id);
+        long generation = deviceGenerations.get(stripe);
+        Optional<Device> loaded = loader.apply(id);
+        loaded.ifPresent(device -> putIfCurrent(devices, id, device.copy(), () -> deviceGenerations.get(stripe) == generation));
+        return loaded;
+    }
+
+    // The generation is bumped before the entry is removed; the check runs inside the map's compute, so a
+    // load either lands before the removal or sees the new generation and is dropped
+    public void invalidate(Long id) {
+        deviceGenerations.incrementAndGet(stripe(id));
+        devices.invalidate(id);
+    }
+
+    private static <K, V> void putIfCurrent(Cache<K, V> cache, K key, V value, BooleanSupplier current) {
+        cache.asMap().compute(key, (k, existing) -> current.getAsBoolean() ? value : existing);
+    }
+
+    private static int stripe(Long id) {
+        return id == null ? 0 : (int) Math.floorMod(id, (long) GENERATION_STRIPES);
+    }
+
+    // Runs after commit so a concurrent reader cannot re-cache the pre-commit row
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDeviceChanged(DeviceChangedEvent event) {
+        invalidate(event.deviceId());
+    }
+
+    // Spring Boot binds every MeterBinder bean, which puts the region on /actuator/prometheus as cache_*{cache="devices"}
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, devices, "devices");
+    }
+
+    public Map<String, CacheRegionStats> stats() {
+        Map<String, CacheRegionStats> stats = new LinkedHashMap<>();
+        stats.put("devices", CacheRegionStats.of(devices.stats(), devices.estimatedSize()));
+        return stats;
+    }
+
+    public record CacheRegionStats(long hits, long misses, long evictions, double hitRate, long size) {
+        static CacheRegionStats of(CacheStats stats, long size) {
+            return new CacheRegionStats(stats.hitCount(), stats.missCount(), stats.evictionCount(), stats.hitRate(), size);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package edu.unac.service;
+
+import java.util.List;
+
+public record DeviceImportReport(long imported, long rejected, List<RejectedRow> rejectedRows) {
+    public record RejectedRow(long line, String reason) {
+    }
+}
@@ -0,0 +1,187 @@
+package edu.unac.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.event.DeviceChangedEvent;
+import edu.unac.repository.DeviceRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+@Service
+public class DeviceImportService {
+    public static final int MAX_CHUNK_SIZE = 5000;
+    // Only the first rejections are listed in the report, the rest are just counted
+    private static final int MAX_REPORTED_REJECTIONS = 1000;
+
+    private final DeviceRepository deviceRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int defaultChunkSize;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public DeviceImportService(DeviceRepository deviceRepository, PlatformTransactionManager transactionManager,
+                               ObjectMapper objectMapper, ApplicationEventPublisher eventPublisher,
+                               @Value("${inventory.import.chunk-size:500}") int defaultChunkSize) {
+        this.deviceRepository = deviceRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.defaultChunkSize = defaultChunkSize;
+    }
+
+    public DeviceImportReport importCsv(InputStream input, Integer chunkSize) throws IOException {
+        return importLines(input, chunkSize, true);
+    }
+
+    public DeviceImportReport importNdjson(InputStream input, Integer chunkSize) throws IOException {
+        return importLines(input, chunkSize, false);
+    }
+
+    private DeviceImportReport importLines(InputStream input, Integer requestedChunkSize, boolean csv) throws IOException {
+        int chunkSize = requestedChunkSize == null ? defaultChunkSize : requestedChunkSize;
+        if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size must be between 1 and " + MAX_CHUNK_SIZE);
+        }
+
+        Progress progress = new Progress();
+        List<Device> chunk = new ArrayList<>(chunkSize);
+        List<Long> chunkLines = new ArrayList<>(chunkSize);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || (csv && lineNumber == 1 && isCsvHeader(line))) {
+                continue;
+            }
+            try {
+                Device device = csv ? parseCsv(line) : parseNdjson(line);
+                DeviceService.validate(device);
+                device.setId(null);
+                device.setVersion(null);
+                device.setStatus(DeviceStatus.AVAILABLE);
+                device.setAddedDate(System.currentTimeMillis());
+                chunk.add(device);
+                chunkLines.add(lineNumber);
+            } catch (IllegalArgumentException e) {
+                progress.reject(lineNumber, e.getMessage());
+            }
+            if (chunk.size() == chunkSize) {
+                commit(chunk, chunkLines, progress);
+            }
+        }
+        commit(chunk, chunkLines, progress);
+
+        return new DeviceImportReport(progress.imported, progress.rejected, progress.rejectedRows);
+    }
+
+    private void commit(List<Device> chunk, List<Long> chunkLines, Progress progress) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                deviceRepository.saveAll(chunk);
+                chunk.forEach(device -> eventPublisher.publishEvent(DeviceChangedEvent.registered(device)));
+                // Keep the persistence context from growing with the size of the import
+                entityManager.flush();
+                entityManager.clear();
+            });
+            progress.imported += chunk.size();
+        } catch (DataAccessException e) {
+            for (Long line : chunkLines) {
+                progress.reject(line, "Chunk could not be stored: " + e.getMostSpecificCause().getMessage());
+            }
+        }
+        chunk.clear();
+        chunkLines.clear();
+    }
+
+    private Device parseNdjson(String line) {
+        try {
+            Device device = objectMapper.readValue(line, Device.class);
+            if (device == null) {
+                throw new IllegalArgumentException("Line must be a device object");
+            }
+            return device;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    private static boolean isCsvHeader(String line) {
+        return line.trim().toLowerCase().startsWith("name,");
+    }
+
+    // Columns are name,type,location; fields may be double-quoted with "" as an escaped quote
+    static Device parseCsv(String line) {
+        List<String> fields = new ArrayList<>(3);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString().trim());
+        if (fields.size() != 3) {
+            throw new IllegalArgumentException("Expected 3 columns (name,type,location) but found " + fields.size());
+        }
+
+        Device device = new Device();
+        device.setName(fields.get(0).isEmpty() ? null : fields.get(0));
+        device.setType(fields.get(1));
+        device.setLocation(fields.get(2));
+        return device;
+    }
+
+    private static final class Progress {
+        private long imported;
+        private long rejected;
+        private final List<DeviceImportReport.RejectedRow> rejectedRows = new ArrayList<>();
+
+        private void reject(long line, String reason) {
+            rejected++;
+            if (rejectedRows.size() < MAX_REPORTED_REJECTIONS) {
+                rejectedRows.add(new DeviceImportReport.RejectedRow(line, reason));
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package edu.unac.service;
+
+import edu.unac.domain.Device;
+
+import java.util.List;
+import java.util.function.Function;
+
+// In-memory state derived from every device row, which can be rebuilt from a scan of the device table while
+// events keep changing it
+interface DeviceIndex {
+    // Empties the index; the scanned pages follow in id order, then finishRebuild
+    void startRebuild();
+
+    void rebuildPage(List<Device> page);
+
+    void finishRebuild();
+
+    default void rebuild(Function<Long, List<Device>> pageAfter) {
+        rebuild(pageAfter, List.of(this));
+    }
+
+    // Rebuilds all the indexes from one scan. pageAfter is called with the last id of the previous page (null
+    // first) until it returns an empty page
+    static void rebuild(Function<Long, List<Device>> pageAfter, List<DeviceIndex> indexes) {
+        try {
+            indexes.forEach(DeviceIndex::startRebuild);
+            ConcurrentRebuild.forEachDevicePage(pageAfter, page -> indexes.forEach(index -> index.rebuildPage(page)));
+        } finally {
+            indexes.forEach(DeviceIndex::finishRebuild);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package edu.unac.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.unac.domain.Device;
+import edu.unac.event.DeviceChangedEvent;
+import edu.unac.event.TransactionBuffer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+// The unfiltered device list as an immutable snapshot of already-encoded JSON, one element per device in id
+// order, plus the default first page pre-assembled and gzipped, so serving a page costs no query and no
+// Jackson. Every change is replaced by a new snapshot rather than edited in place. Writers only record which
+// devices changed, from the DeviceChangedEvents the services publish; once their transaction commits, the next
+// reader re-reads just those rows and patches them in. While any transaction that changed a device is still
+// completing, readers get no snapshot and fall back to the database, so a page is never older than the ETag it
+// is sent with. Writes that publish no event are not seen until invalidate() is called.
+@Component
+public class DeviceListSnapshot {
+    private static final byte[] EMPTY_LIST = {'[', ']'};
+
+    private final ObjectMapper objectMapper;
+    private final int maxDevices;
+
+    // Null until the first read and whenever a rebuild is due
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    // Committed changes not patched in yet
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    // Transactions that changed a device and have not completed
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ReentrantLock updating = new ReentrantLock();
+
+    @Autowired
+    public DeviceListSnapshot(ObjectMapper objectMapper,
+                              @Value("${inventory.cache.device-list.max-devices:100000}") int maxDevices) {
+        this.objectMapper = objectMapper;
+        this.maxDevices = maxDevices;
+    }
+
+    @EventListener
+    public void onDeviceChanged(DeviceChangedEvent event) {
+        if (event.deviceId() != null && !TransactionBuffer.add(this, PendingChanges::new, event)) {
+            markDirty(List.of(event.deviceId()), deleted(event));
+        }
+    }
+
+    // The next read rebuilds the snapshot from the database
+    public void invalidate() {
+        current.set(null);
+    }
+
+    // Empty while a change is completing, while another reader is updating the snapshot, or if there are more
+    // devices than max-devices; callers then read the page from the database. pageAfter is called with the last
+    // id of the previous page (null first) until it returns an empty page, byIds returns the rows that still exist
+    public Optional<EncodedDevicePage> page(Long cursor, int limit, Function<Long, List<Device>> pageAfter,
+                                            Function<Collection<Long>, List<Device>> byIds) {
+        int pageSize = CursorPage.pageSize(limit);
+        if (inFlight.get() > 0) {
+            return Optional.empty();
+        }
+        Snapshot snapshot = current.get();
+        if (snapshot == null || !dirty.isEmpty()) {
+            if (!updating.tryLock()) {
+                return Optional.empty();
+            }
+            try {
+                snapshot = update(pageAfter, byIds);
+            } finally {
+                updating.unlock();
+            }
+        }
+        return snapshot.oversized() ? Optional.empty() : Optional.of(snapshot.page(cursor, pageSize));
+    }
+
+    private Snapshot update(Function<Long, List<Device>> pageAfter, Function<Collection<Long>, List<Device>> byIds) {
+        Snapshot snapshot = current.get();
+        // Taken out before the rows are read; a change committed meanwhile is marked again and patched next time
+        List<Long> changedIds = new ArrayList<>(dirty);
+        dirty.removeAll(changedIds);
+        if (snapshot == null) {
+            snapshot = rebuild(pageAfter);
+        } else if (!snapshot.oversized() && !changedIds.isEmpty()) {
+            Map<Long, byte[]> changed = new HashMap<>();
+            changedIds.forEach(id -> changed.put(id, null));
+            byIds.apply(changedIds).forEach(device -> changed.put(device.getId(), encode(device)));
+            snapshot = snapshot.patch(changed);
+            if (snapshot.ids().length > maxDevices) {
+                snapshot = Snapshot.OVERSIZED;
+            }
+        }
+        current.set(snapshot);
+        return snapshot;
+    }
+
+    private Snapshot rebuild(Function<Long, List<Device>> pageAfter) {
+        List<Long> ids = new ArrayList<>();
+        List<byte[]> encoded = new ArrayList<>();
+        Long cursor = null;
+        List<Device> page;
+        while (!(page = pageAfter.apply(cursor)).isEmpty()) {
+            for (Device device : page) {
+                ids.add(device.getId());
+                encoded.add(encode(device));
+            }
+            if (ids.size() > maxDevices) {
+                return Snapshot.OVERSIZED;
+            }
+            cursor = page.get(page.size() - 1).getId();
+        }
+        return new Snapshot(ids.stream().mapToLong(Long::longValue).toArray(), encoded.toArray(new byte[0][]));
+    }
+
+    private void markDirty(Collection<Long> deviceIds, boolean removed) {
+        Snapshot snapshot = current.get();
+        if (snapshot != null && snapshot.oversized()) {
+            // Nothing to patch; a deletion may bring the count back under the limit
+            if (removed) {
+                current.compareAndSet(snapshot, null);
+            }
+            return;
+        }
+        dirty.addAll(deviceIds);
+    }
+
+    private static boolean deleted(DeviceChangedEvent event) {
+        return event.kind() == DeviceChangedEvent.Kind.DELETED;
+    }
+
+    private byte[] encode(Device device) {
+        try {
+            return objectMapper.writeValueAsBytes(device);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Device " + device.getId() + " cannot be encoded", e);
+        }
+    }
+
+    private final class PendingChanges extends TransactionBuffer<DeviceChangedEvent> {
+        PendingChanges() {
+            super(DeviceListSnapshot.this);
+            inFlight.incrementAndGet();
+        }
+
+        @Override
+        protected void completed(int status) {
+            try {
+                if (status == STATUS_COMMITTED) {
+                    markDirty(items().stream().map(DeviceChangedEvent::deviceId).toList(),
+                            items().stream().anyMatch(DeviceListSnapshot::deleted));
+                }
+            } finally {
+                // Only after the ids are marked, so a reader that sees no transaction in flight also sees them
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    // gzip is only kept for the default first page and null otherwise
+    public record EncodedDevicePage(byte[] json, byte[] gzip, Long nextCursor) {
+    }
+
+    private record Snapshot(long[] ids, byte[][] encoded, EncodedDevicePage firstPage) {
+        static final Snapshot OVERSIZED = new Snapshot(null, null, null);
+
+        Snapshot(long[] ids, byte[][] encoded) {
+            this(ids, encoded, assembleFirstPage(ids, encoded));
+        }
+
+        boolean oversized() {
+            return ids == null;
+        }
+
+        EncodedDevicePage page(Long cursor, int pageSize) {
+            if (cursor == null && pageSize == CursorPage.DEFAULT_LIMIT) {
+                return firstPage;
+            }
+            int from = 0;
+            if (cursor != null) {
+                int found = Arrays.binarySearch(ids, cursor);
+                from = found >= 0 ? found + 1 : -found - 1;
+            }
+            return assemble(ids, encoded, from, pageSize);
+        }
+
+        // changed maps each changed id to its new encoding, or to null if the device no longer exists
+        Snapshot patch(Map<Long, byte[]> changed) {
+            long[] changedIds = changed.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+            long[] mergedIds = new long[ids.length + changedIds.length];
+            byte[][] mergedEncoded = new byte[mergedIds.length][];
+            int size = 0;
+            int i = 0;
+            int j = 0;
+            while (i < ids.length || j < changedIds.length) {
+                if (j == changedIds.length || (i < ids.length && ids[i] < changedIds[j])) {
+                    mergedIds[size] = ids[i];
+                    mergedEncoded[size++] = encoded[i++];
+                    continue;
+                }
+                long id = changedIds[j++];
+                if (i < ids.length && ids[i] == id) {
+                    i++;
+                }
+                byte[] replacement = changed.get(id);
+                if (replacement != null) {
+                    mergedIds[size] = id;
+                    mergedEncoded[size++] = replacement;
+                }
+            }
+            mergedIds = Arrays.copyOf(mergedIds, size);
+            mergedEncoded = Arrays.copyOf(mergedEncoded, size);
+            // Changes past a full first page leave its bytes as they were, as long as a row still follows it
+            if (firstPage.nextCursor() != null && changedIds[0] > firstPage.nextCursor()
+                    && mergedIds.length > CursorPage.DEFAULT_LIMIT) {
+                return new Snapshot(mergedIds, mergedEncoded, firstPage);
+            }
+            return new Snapshot(mergedIds, mergedEncoded);
+        }
+
+        private static EncodedDevicePage assembleFirstPage(long[] ids, byte[][] encoded) {
+            EncodedDevicePage page = assemble(ids, encoded, 0, CursorPage.DEFAULT_LIMIT);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(page.json().length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(page.json());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new EncodedDevicePage(page.json(), compressed.toByteArray(), page.nextCursor());
+        }
+
+        // Same bytes as Jackson writing the list: the elements joined by commas inside brackets
+        private static EncodedDevicePage assemble(long[] ids, byte[][] encoded, int from, int pageSize) {
+            int to = Math.min(ids.length, from + pageSize);
+            if (from >= to) {
+                return new EncodedDevicePage(EMPTY_LIST, null, null);
+            }
+            int length = 2 + (to - from - 1);
+            for (int i = from; i < to; i++) {
+                length += encoded[i].length;
+            }
+            byte[] json = new byte[length];
+            int position = 0;
+            json[position++] = '[';
+            for (int i = from; i < to; i++) {
+                if (i > from) {
+                    json[position++] = ',';
+                }
+                System.arraycopy(encoded[i], 0, json, position, encoded[i].length);
+                position += encoded[i].length;
+            }
+            json[position] = ']';
+            return new EncodedDevicePage(json, null, to < ids.length ? ids[to - 1] : null);
+        }
+    }
+}
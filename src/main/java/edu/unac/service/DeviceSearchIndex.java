@@ -0,0 +1,389 @@
+package edu.unac.service;
+
+import edu.unac.domain.ChangedEntity;
+import edu.unac.domain.Device;
+import edu.unac.event.DeviceChangedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-memory trigram index over device name, type and location. Every word is indexed with two leading
+// blanks and a trailing one, so "laptop" yields "  l", " la", "lap", ..., "op ": a term of three or more characters is looked
+// up by its own trigrams (substring match) and a shorter one by its padded prefix gram (word-prefix match).
+// Devices get dense document numbers and each trigram keeps a sorted int array of them, so a query is an
+// intersection of its rarest posting lists followed by a check of the surviving candidates, which also
+// drops trigram false positives. Removed documents are only tombstoned and the index is renumbered once
+// they make up half of it.
+@Component
+public class DeviceSearchIndex implements DeviceIndex {
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 100;
+
+    private static final int NAME_WEIGHT = 3;
+    private static final int TYPE_WEIGHT = 2;
+    private static final int LOCATION_WEIGHT = 1;
+    private static final int EXACT_WORD = 3;
+    private static final int WORD_PREFIX = 2;
+    private static final int SUBSTRING = 1;
+    private static final int MIN_TOMBSTONES_TO_COMPACT = 1024;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private final Map<Long, Integer> documentByDevice = new HashMap<>();
+    private long[] deviceIds = new long[1024];
+    // Lower-cased fields per document; a null name marks a tombstone
+    private String[] names = new String[1024];
+    private String[] types = new String[1024];
+    private String[] locations = new String[1024];
+    private int documents;
+    private int tombstones;
+    private final ConcurrentRebuild rebuild = new ConcurrentRebuild(lock.writeLock());
+
+    // Runs after commit, so a rolled back registration is never searchable
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDeviceChanged(DeviceChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            rebuild.changed(ChangedEntity.DEVICE, event.deviceId());
+            if (event.kind() == DeviceChangedEvent.Kind.DELETED) {
+                removeLocked(event.deviceId());
+            } else {
+                indexLocked(event.device());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void index(Device device) {
+        lock.writeLock().lock();
+        try {
+            indexLocked(device);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long deviceId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(deviceId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Searches are served from the partial index while a rebuild runs
+    @Override
+    public void startRebuild() {
+        rebuild.begin(this::clearLocked);
+    }
+
+    @Override
+    public void rebuildPage(List<Device> page) {
+        rebuild.apply(ChangedEntity.DEVICE, page, Device::getId, this::indexLocked);
+    }
+
+    @Override
+    public void finishRebuild() {
+        rebuild.end();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents - tombstones;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Ids of the best matches first: every term has to match some field, and each term scores its best field
+    // weight times how well it matched there (whole word, word prefix, substring). Ties go to the device that
+    // was indexed first, which is id order after a rebuild; since candidates are visited in that same order,
+    // the scan stops as soon as the top hits all have the best possible score
+    public List<Long> search(String query, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Search limit must be at least 1");
+        }
+        String[] terms = terms(query);
+        if (terms.length == 0) {
+            throw new IllegalArgumentException("Search query must contain a letter or digit");
+        }
+        int size = Math.min(limit, MAX_LIMIT);
+
+        lock.readLock().lock();
+        try {
+            List<Postings> grams = new ArrayList<>();
+            for (String term : terms) {
+                for (long gram : queryGrams(term)) {
+                    Postings list = postings.get(gram);
+                    if (list == null) {
+                        return List.of();
+                    }
+                    grams.add(list);
+                }
+            }
+            Postings[] lists = grams.toArray(Postings[]::new);
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+            // Min-heap on (score, -document) holding the current top hits
+            PriorityQueue<long[]> top = new PriorityQueue<>(size + 1,
+                    (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[1], a[1]));
+            long bestPossible = 0;
+            for (String term : terms) {
+                bestPossible += NAME_WEIGHT * bestKind(term);
+            }
+            Postings smallest = lists[0];
+            int[] cursors = new int[lists.length];
+            candidates:
+            for (int i = 0; i < smallest.size; i++) {
+                int document = smallest.documents[i];
+                for (int l = 1; l < lists.length; l++) {
+                    int position = lists[l].seek(document, cursors[l]);
+                    cursors[l] = position;
+                    if (position == lists[l].size) {
+                        break candidates;
+                    }
+                    if (lists[l].documents[position] != document) {
+                        continue candidates;
+                    }
+                }
+                long score = score(document, terms);
+                if (score > 0) {
+                    top.add(new long[]{score, document});
+                    if (top.size() > size) {
+                        top.poll();
+                    }
+                    if (top.size() == size && top.peek()[0] == bestPossible) {
+                        break;
+                    }
+                }
+            }
+
+            Long[] ranked = new Long[top.size()];
+            for (int i = ranked.length - 1; i >= 0; i--) {
+                ranked[i] = deviceIds[(int) top.poll()[1]];
+            }
+            return List.of(ranked);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Upper bound on how well a term can match anywhere: whole words need some word to end like the term
+    // does, word prefixes need some word to start like it
+    private int bestKind(String term) {
+        int length = term.length();
+        char last = term.charAt(length - 1);
+        char beforeLast = length > 1 ? term.charAt(length - 2) : ' ';
+        if (postings.containsKey(gram(beforeLast, last, ' '))) {
+            return EXACT_WORD;
+        }
+        char first = term.charAt(0);
+        char second = length > 1 ? term.charAt(1) : ' ';
+        return length == 1 || postings.containsKey(gram(' ', first, second)) ? WORD_PREFIX : SUBSTRING;
+    }
+
+    private long score(int document, String[] terms) {
+        String name = names[document];
+        if (name == null) {
+            return 0;
+        }
+        long total = 0;
+        for (String term : terms) {
+            int best = Math.max(NAME_WEIGHT * match(name, term),
+                    Math.max(TYPE_WEIGHT * match(types[document], term), LOCATION_WEIGHT * match(locations[document], term)));
+            if (best == 0) {
+                return 0;
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    private static int match(String field, String term) {
+        int best = 0;
+        int from = 0;
+        int at;
+        while ((at = field.indexOf(term, from)) >= 0) {
+            boolean wordStart = at == 0 || !Character.isLetterOrDigit(field.charAt(at - 1));
+            int end = at + term.length();
+            boolean wordEnd = end == field.length() || !Character.isLetterOrDigit(field.charAt(end));
+            int kind = wordStart ? (wordEnd ? EXACT_WORD : WORD_PREFIX) : term.length() >= 3 ? SUBSTRING : 0;
+            if (kind == EXACT_WORD) {
+                return kind;
+            }
+            best = Math.max(best, kind);
+            from = at + 1;
+        }
+        return best;
+    }
+
+    private void indexLocked(Device device) {
+        String name = normalize(device.getName());
+        String type = normalize(device.getType());
+        String location = normalize(device.getLocation());
+        Integer existing = documentByDevice.get(device.getId());
+        if (existing != null) {
+            // Status changes do not touch indexed text, so the common update costs three string compares
+            if (name.equals(names[existing]) && type.equals(types[existing]) && location.equals(locations[existing])) {
+                return;
+            }
+            tombstone(existing);
+        }
+
+        int document = documents++;
+        if (document == deviceIds.length) {
+            int capacity = document * 2;
+            deviceIds = Arrays.copyOf(deviceIds, capacity);
+            names = Arrays.copyOf(names, capacity);
+            types = Arrays.copyOf(types, capacity);
+            locations = Arrays.copyOf(locations, capacity);
+        }
+        deviceIds[document] = device.getId();
+        names[document] = name;
+        types[document] = type;
+        locations[document] = location;
+        documentByDevice.put(device.getId(), document);
+        addGrams(document, name);
+        addGrams(document, type);
+        addGrams(document, location);
+    }
+
+    private void removeLocked(Long deviceId) {
+        Integer document = documentByDevice.remove(deviceId);
+        if (document != null) {
+            tombstone(document);
+        }
+    }
+
+    private void tombstone(int document) {
+        names[document] = null;
+        types[document] = null;
+        locations[document] = null;
+        tombstones++;
+        if (tombstones >= MIN_TOMBSTONES_TO_COMPACT && tombstones * 2 >= documents) {
+            compact();
+        }
+    }
+
+    // Renumbers the live documents; their order is kept, so every posting list stays sorted
+    private void compact() {
+        long[] liveIds = new long[documents - tombstones];
+        String[][] liveFields = new String[liveIds.length][];
+        int live = 0;
+        for (int document = 0; document < documents; document++) {
+            if (names[document] != null) {
+                liveIds[live] = deviceIds[document];
+                liveFields[live++] = new String[]{names[document], types[document], locations[document]};
+            }
+        }
+        clearLocked();
+        for (int i = 0; i < live; i++) {
+            Device device = new Device(liveIds[i], liveFields[i][0], liveFields[i][1], liveFields[i][2], null, 0L);
+            indexLocked(device);
+        }
+    }
+
+    private void clearLocked() {
+        postings.clear();
+        documentByDevice.clear();
+        Arrays.fill(names, 0, documents, null);
+        Arrays.fill(types, 0, documents, null);
+        Arrays.fill(locations, 0, documents, null);
+        documents = 0;
+        tombstones = 0;
+    }
+
+    private void addGrams(int document, String field) {
+        int start = -1;
+        for (int i = 0; i <= field.length(); i++) {
+            boolean wordChar = i < field.length() && Character.isLetterOrDigit(field.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                char previous = ' ';
+                char current = ' ';
+                for (int j = start; j < i; j++) {
+                    char next = field.charAt(j);
+                    postings.computeIfAbsent(gram(previous, current, next), key -> new Postings()).add(document);
+                    previous = current;
+                    current = next;
+                }
+                postings.computeIfAbsent(gram(previous, current, ' '), key -> new Postings()).add(document);
+                start = -1;
+            }
+        }
+    }
+
+    private static long[] queryGrams(String term) {
+        if (term.length() == 1) {
+            return new long[]{gram(' ', ' ', term.charAt(0))};
+        }
+        if (term.length() == 2) {
+            return new long[]{gram(' ', term.charAt(0), term.charAt(1))};
+        }
+        long[] grams = new long[term.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = gram(term.charAt(i), term.charAt(i + 1), term.charAt(i + 2));
+        }
+        return grams;
+    }
+
+    private static long gram(char first, char second, char third) {
+        return ((long) first << 32) | ((long) second << 16) | third;
+    }
+
+    private static String[] terms(String query) {
+        if (query == null) {
+            return new String[0];
+        }
+        return Arrays.stream(normalize(query).split("[^\\p{L}\\p{N}]+"))
+                .filter(term -> !term.isEmpty())
+                .distinct()
+                .toArray(String[]::new);
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    // Sorted document numbers sharing one trigram; documents are numbered in insertion order, so adding is
+    // an append and a document only needs comparing with the last entry to skip a repeated trigram
+    private static final class Postings {
+        private int[] documents = new int[4];
+        private int size;
+
+        void add(int document) {
+            if (size > 0 && documents[size - 1] == document) {
+                return;
+            }
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+            }
+            documents[size++] = document;
+        }
+
+        // First position at or after from holding a document >= target, by galloping then binary search
+        int seek(int target, int from) {
+            int step = 1;
+            int high = from;
+            while (high < size && documents[high] < target) {
+                from = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            int position = Arrays.binarySearch(documents, from, Math.min(high + 1, size), target);
+            return position >= 0 ? position : -position - 1;
+        }
+    }
+}
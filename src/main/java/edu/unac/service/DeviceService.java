@@ -2,53 +2,197 @@ package edu.unac.service;
 
 import edu.unac.domain.Device;
 import edu.unac.domain.DeviceStatus;
+import edu.unac.event.DeviceChangedEvent;
 import edu.unac.repository.DeviceRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static edu.unac.repository.DeviceSpecifications.*;
 
 @Service
 public class DeviceService {
-    @Autowired
-    private DeviceRepository deviceRepository;
+    private static final int INDEX_PAGE = 10_000;
+    private static final int ROWS_BY_ID_PAGE = 1_000;
+
+    private final DeviceRepository deviceRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DeviceCache deviceCache;
+    private final DeviceSearchIndex searchIndex;
+    private final DeviceAvailabilityIndex availabilityIndex;
+    private final DeviceListSnapshot listSnapshot;
 
-    public DeviceService(DeviceRepository deviceRepository) {
+    @Autowired
+    public DeviceService(DeviceRepository deviceRepository, ApplicationEventPublisher eventPublisher, DeviceCache deviceCache,
+                         DeviceSearchIndex searchIndex, DeviceAvailabilityIndex availabilityIndex,
+                         DeviceListSnapshot listSnapshot) {
         this.deviceRepository = deviceRepository;
+        this.eventPublisher = eventPublisher;
+        this.deviceCache = deviceCache;
+        this.searchIndex = searchIndex;
+        this.availabilityIndex = availabilityIndex;
+        this.listSnapshot = listSnapshot;
     }
 
+    @Transactional
     public Device registerDevice(Device device) {
-        if (device.getName() == null || device.getName().length() < 3) {
-            throw new IllegalArgumentException("Device name must be at least 3 characters long");
-        }
+        validate(device);
 
         device.setStatus(DeviceStatus.AVAILABLE);
         device.setAddedDate(System.currentTimeMillis());
 
-        return deviceRepository.save(device);
+        Device saved = deviceRepository.save(device);
+        eventPublisher.publishEvent(DeviceChangedEvent.registered(saved));
+        return saved;
+    }
+
+    static void validate(Device device) {
+        if (device.getName() == null || device.getName().length() < 3) {
+            throw new IllegalArgumentException("Device name must be at least 3 characters long");
+        }
     }
 
     public List<Device> getAllDevices() {
         return deviceRepository.findAll();
     }
 
+    public CursorPage<Device> getDevicesPage(Long cursor, int limit, DeviceStatus status, String type, String location) {
+        int pageSize = CursorPage.pageSize(limit);
+        List<Device> rows = deviceRepository.findBy(devicesPageFilter(cursor, status, type, location), query -> query
+                .sortBy(Sort.by("id"))
+                .limit(pageSize + 1)
+                .all());
+        return CursorPage.of(rows, pageSize, Device::getId);
+    }
+
+    // The unfiltered page as ready-made JSON from the device list snapshot; empty when it has to come from
+    // getDevicesPage instead
+    public Optional<DeviceListSnapshot.EncodedDevicePage> getEncodedDevicesPage(Long cursor, int limit) {
+        return listSnapshot.page(cursor, limit, this::devicePageAfter, this::findAllByIdPaged);
+    }
+
+    // The same page with only the named fields, plus the id; unknown field names are rejected
+    public CursorPage<Map<String, Object>> getDeviceFieldsPage(Long cursor, int limit, DeviceStatus status, String type,
+                                                               String location, List<String> fields) {
+        int pageSize = CursorPage.pageSize(limit);
+        List<String> names = SparseFields.require(deviceRepository.fieldNames(), fields);
+        List<Map<String, Object>> rows = deviceRepository.findFields(devicesPageFilter(cursor, status, type, location), names, pageSize + 1);
+        return CursorPage.of(rows, pageSize, row -> (Long) row.get("id"));
+    }
+
+    private static Specification<Device> devicesPageFilter(Long cursor, DeviceStatus status, String type, String location) {
+        return Specification.where(idAfter(cursor))
+                .and(hasStatus(status))
+                .and(hasType(type))
+                .and(hasLocation(location));
+    }
+
+    public List<Device> getAvailableDevices() {
+        return getAvailableDevices(null, null);
+    }
+
+    // Ids come from the availability index and rows from the database, so status is never stale; ids of rows
+    // removed behind the services' back are dropped from the index
+    public List<Device> getAvailableDevices(String type, String location) {
+        List<Long> ids = availabilityIndex.availableIds(type, location);
+        List<Device> devices = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += ROWS_BY_ID_PAGE) {
+            List<Long> page = ids.subList(from, Math.min(ids.size(), from + ROWS_BY_ID_PAGE));
+            Map<Long, Device> found = deviceRepository.findAllById(page).stream()
+                    .collect(Collectors.toMap(Device::getId, Function.identity()));
+            for (Long id : page) {
+                Device device = found.get(id);
+                if (device == null) {
+                    availabilityIndex.remove(id);
+                } else if (device.getStatus() == DeviceStatus.AVAILABLE) {
+                    devices.add(device);
+                }
+            }
+        }
+        return devices;
+    }
+
     public Optional<Device> getDeviceById(Long id) {
-        return deviceRepository.findById(id);
+        return deviceCache.get(id, deviceRepository::findById);
+    }
+
+    // The index only supplies ranked ids; rows come from the database so status and version are never stale.
+    // Ids it still holds for rows removed behind the services' back are dropped from it and the search is
+    // repeated, so they cannot crowd live matches out of the results
+    public List<Device> searchDevices(String query, int limit) {
+        while (true) {
+            List<Long> ids = searchIndex.search(query, limit);
+            if (ids.isEmpty()) {
+                return List.of();
+            }
+            Map<Long, Device> found = deviceRepository.findAllById(ids).stream()
+                    .collect(Collectors.toMap(Device::getId, Function.identity()));
+            if (found.size() == ids.size()) {
+                return ids.stream().map(found::get).toList();
+            }
+            ids.stream().filter(id -> !found.containsKey(id)).forEach(searchIndex::remove);
+        }
+    }
+
+    // Both indexes are filled from one pass over the device table
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildIndexes() {
+        DeviceIndex.rebuild(this::devicePageAfter, List.of(searchIndex, availabilityIndex));
+    }
+
+    private List<Device> devicePageAfter(Long cursor) {
+        return deviceRepository.findBy(Specification.where(idAfter(cursor)), query -> query
+                .sortBy(Sort.by("id"))
+                .limit(INDEX_PAGE)
+                .all());
+    }
+
+    private List<Device> findAllByIdPaged(Collection<Long> ids) {
+        List<Long> remaining = List.copyOf(ids);
+        List<Device> devices = new ArrayList<>(remaining.size());
+        for (int from = 0; from < remaining.size(); from += ROWS_BY_ID_PAGE) {
+            devices.addAll(deviceRepository.findAllById(remaining.subList(from, Math.min(remaining.size(), from + ROWS_BY_ID_PAGE))));
+        }
+        return devices;
+    }
+
+    public Map<String, DeviceCache.CacheRegionStats> getCacheStats() {
+        return deviceCache.stats();
     }
 
+    // Writes always read from the repository so they never start from a cached copy
+    @Transactional
     public Device updateDeviceStatus(Long id, DeviceStatus newStatus) {
         Device device = deviceRepository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Device not found"));
 
         device.setStatus(newStatus);
-        return deviceRepository.save(device);
+        Device saved = deviceRepository.save(device);
+        // The version only moves when the update is flushed, and the event has to carry the new one
+        deviceRepository.flush();
+        eventPublisher.publishEvent(DeviceChangedEvent.statusChanged(saved));
+        return saved;
     }
 
+    @Transactional
     public void deleteDevice(Long id) {
         if (deviceRepository.existsLoanByDeviceId(id)) {
             throw new IllegalStateException("Cannot delete device with loan history");
         }
         deviceRepository.deleteById(id);
+        eventPublisher.publishEvent(DeviceChangedEvent.deleted(id));
     }
 }
@@ -0,0 +1,171 @@
+package edu.unac.service;
+
+import edu.unac.domain.Loan;
+import edu.unac.domain.LoanArchiveChunk;
+import edu.unac.repository.LoanArchiveRepository;
+import edu.unac.repository.LoanRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Cold tier for returned loans. The archive job moves loans returned longer than min-age ago out of the loan
+// table into loan_archive, one compressed chunk per device per batch, so the hot table only holds open and
+// recently returned loans. Batches walk the loans by (device, id) and each is moved in its own transaction.
+// Archived loans are read back only on request: by device, or streamed in full for exports and rebuilds.
+@Service
+public class LoanArchive {
+    private final LoanRepository loanRepository;
+    private final LoanArchiveRepository archiveRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ResourceVersions resourceVersions;
+    private final Duration minAge;
+    private final int chunkSize;
+    private final ReentrantLock running = new ReentrantLock();
+    private final Counter archivedCounter;
+    private final Timer runTimer;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public LoanArchive(LoanRepository loanRepository, LoanArchiveRepository archiveRepository,
+                       PlatformTransactionManager transactionManager, ResourceVersions resourceVersions,
+                       MeterRegistry registry,
+                       @Value("${inventory.archive.min-age:P90D}") Duration minAge,
+                       @Value("${inventory.archive.chunk-size:1000}") int chunkSize) {
+        this.loanRepository = loanRepository;
+        this.archiveRepository = archiveRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.resourceVersions = resourceVersions;
+        this.minAge = minAge;
+        this.chunkSize = chunkSize;
+        this.archivedCounter = Counter.builder("inventory.archive.loans")
+                .description("Returned loans moved to the archive")
+                .register(registry);
+        this.runTimer = Timer.builder("inventory.archive.run")
+                .description("Duration of one archive run")
+                .register(registry);
+    }
+
+    @Scheduled(initialDelayString = "${inventory.archive.interval:PT1H}",
+            fixedDelayString = "${inventory.archive.interval:PT1H}")
+    public void scheduledArchive() {
+        archive();
+    }
+
+    public LoanArchiveReport archive() {
+        return archiveOlderThan(minAge);
+    }
+
+    public LoanArchiveReport archiveOlderThan(Duration age) {
+        if (age.isNegative()) {
+            throw new IllegalArgumentException("Archive age must not be negative");
+        }
+        return archiveReturnedBefore(System.currentTimeMillis() - age.toMillis());
+    }
+
+    public LoanArchiveReport archiveReturnedBefore(long cutoff) {
+        running.lock();
+        try {
+            long startedAt = System.nanoTime();
+            long hotBefore = loanRepository.count();
+            long archived = 0;
+            int chunks = 0;
+            long afterDeviceId = 0;
+            long afterId = 0;
+            while (true) {
+                Batch batch = archiveBatch(cutoff, afterDeviceId, afterId);
+                if (batch.loans() == 0) {
+                    break;
+                }
+                archived += batch.loans();
+                chunks += batch.chunks();
+                afterDeviceId = batch.lastDeviceId();
+                afterId = batch.lastId();
+                if (batch.loans() < chunkSize) {
+                    break;
+                }
+            }
+
+            archivedCounter.increment(archived);
+            long elapsed = System.nanoTime() - startedAt;
+            runTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            return new LoanArchiveReport(archived, chunks, hotBefore, loanRepository.count(),
+                    archiveRepository.countArchivedLoans(), archiveRepository.sumDataBytes(),
+                    TimeUnit.NANOSECONDS.toMillis(elapsed));
+        } finally {
+            running.unlock();
+        }
+    }
+
+    // Sorted by id, like the loan table
+    @Transactional(readOnly = true)
+    public List<Loan> getLoansByDeviceId(Long deviceId) {
+        List<Loan> loans = new ArrayList<>();
+        for (LoanArchiveChunk chunk : archiveRepository.findByDeviceIdOrderByFirstLoanId(deviceId)) {
+            loans.addAll(LoanArchiveCodec.decode(chunk.getDeviceId(), chunk.getData()));
+        }
+        loans.sort(Comparator.comparing(Loan::getId));
+        return loans;
+    }
+
+    // Chunks are detached as soon as they are decoded so the persistence context stays empty
+    @Transactional(readOnly = true)
+    public void exportLoans(Consumer<Loan> sink) {
+        try (Stream<LoanArchiveChunk> chunks = archiveRepository.streamAll()) {
+            chunks.forEach(chunk -> {
+                entityManager.detach(chunk);
+                LoanArchiveCodec.decode(chunk.getDeviceId(), chunk.getData()).forEach(sink);
+            });
+        }
+    }
+
+    private Batch archiveBatch(long cutoff, long afterDeviceId, long afterId) {
+        List<Loan> loans = loanRepository.findArchiveCandidates(cutoff, afterDeviceId, afterId, chunkSize);
+        if (loans.isEmpty()) {
+            return new Batch(0, 0, afterDeviceId, afterId);
+        }
+        Map<Long, List<Loan>> byDevice = new LinkedHashMap<>();
+        loans.forEach(loan -> byDevice.computeIfAbsent(loan.getDeviceId(), id -> new ArrayList<>()).add(loan));
+
+        // Device loan lists without archived loans change, so their tags move before and after the commit
+        byDevice.keySet().forEach(resourceVersions::deviceLoansChanged);
+        transactionTemplate.executeWithoutResult(status -> {
+            long now = System.currentTimeMillis();
+            List<LoanArchiveChunk> chunks = new ArrayList<>(byDevice.size());
+            byDevice.forEach((deviceId, deviceLoans) -> chunks.add(new LoanArchiveChunk(null, deviceId,
+                    deviceLoans.get(0).getId(), deviceLoans.get(deviceLoans.size() - 1).getId(), deviceLoans.size(),
+                    now, LoanArchiveCodec.encode(deviceLoans))));
+            archiveRepository.saveAll(chunks);
+            List<Long> ids = loans.stream().map(Loan::getId).toList();
+            if (loanRepository.deleteReturned(ids) != ids.size()) {
+                throw new OptimisticLockingFailureException("Loans changed while being archived");
+            }
+        });
+        byDevice.keySet().forEach(resourceVersions::deviceLoansChanged);
+
+        Loan last = loans.get(loans.size() - 1);
+        return new Batch(loans.size(), byDevice.size(), last.getDeviceId(), last.getId());
+    }
+
+    private record Batch(int loans, int chunks, long lastDeviceId, long lastId) {
+    }
+}
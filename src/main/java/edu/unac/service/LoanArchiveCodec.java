@@ -0,0 +1,131 @@
+package edu.unac.service;
+
+import edu.unac.domain.Loan;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// Packs the returned loans of one device column by column, each column delta-coded against the previous row
+// (ids and start dates) or its own row (end and due dates against the start), borrowers as indexes into a
+// dictionary, then deflates the lot. Sorted ids and similar loan lengths leave long runs of near-zero bytes,
+// so a loan shrinks from a full row to a few bytes.
+final class LoanArchiveCodec {
+    private static final int FORMAT = 1;
+    // Loans from before due dates existed
+    private static final long NO_DUE_DATE = Long.MIN_VALUE;
+
+    private LoanArchiveCodec() {
+    }
+
+    // loans must all belong to the same device, sorted by id
+    static byte[] encode(List<Loan> loans) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_COMPRESSION)))) {
+            out.writeByte(FORMAT);
+            out.writeInt(loans.size());
+            long previousId = 0;
+            for (Loan loan : loans) {
+                out.writeLong(loan.getId() - previousId);
+                previousId = loan.getId();
+            }
+            long previousStart = 0;
+            for (Loan loan : loans) {
+                out.writeLong(loan.getStartDate() - previousStart);
+                previousStart = loan.getStartDate();
+            }
+            for (Loan loan : loans) {
+                out.writeLong(loan.getEndDate() - loan.getStartDate());
+            }
+            for (Loan loan : loans) {
+                out.writeLong(loan.getDueDate() == 0 ? NO_DUE_DATE : loan.getDueDate() - loan.getStartDate());
+            }
+
+            Map<String, Integer> dictionary = new HashMap<>();
+            List<String> borrowers = new ArrayList<>();
+            int[] borrowerIndexes = new int[loans.size()];
+            for (int i = 0; i < loans.size(); i++) {
+                String borrower = loans.get(i).getBorrowedBy();
+                borrowerIndexes[i] = borrower == null ? -1 : dictionary.computeIfAbsent(borrower, b -> {
+                    borrowers.add(b);
+                    return borrowers.size() - 1;
+                });
+            }
+            out.writeInt(borrowers.size());
+            for (String borrower : borrowers) {
+                out.writeUTF(borrower);
+            }
+            for (int index : borrowerIndexes) {
+                out.writeInt(index);
+            }
+
+            for (Loan loan : loans) {
+                out.writeBoolean(loan.isOverdue());
+            }
+            for (Loan loan : loans) {
+                out.writeLong(loan.getVersion() == null ? 0 : loan.getVersion());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static List<Loan> decode(Long deviceId, byte[] data) {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)))) {
+            int format = in.readByte();
+            if (format != FORMAT) {
+                throw new IllegalStateException("Unknown loan archive format " + format);
+            }
+            int count = in.readInt();
+            List<Loan> loans = new ArrayList<>(count);
+            long id = 0;
+            for (int i = 0; i < count; i++) {
+                id += in.readLong();
+                Loan loan = new Loan(id, deviceId, null, 0L, 0L, true);
+                loans.add(loan);
+            }
+            long start = 0;
+            for (Loan loan : loans) {
+                start += in.readLong();
+                loan.setStartDate(start);
+            }
+            for (Loan loan : loans) {
+                loan.setEndDate(loan.getStartDate() + in.readLong());
+            }
+            for (Loan loan : loans) {
+                long due = in.readLong();
+                loan.setDueDate(due == NO_DUE_DATE ? 0 : loan.getStartDate() + due);
+            }
+
+            String[] borrowers = new String[in.readInt()];
+            for (int i = 0; i < borrowers.length; i++) {
+                borrowers[i] = in.readUTF();
+            }
+            for (Loan loan : loans) {
+                int index = in.readInt();
+                loan.setBorrowedBy(index < 0 ? null : borrowers[index]);
+            }
+
+            for (Loan loan : loans) {
+                loan.setOverdue(in.readBoolean());
+            }
+            for (Loan loan : loans) {
+                loan.setVersion(in.readLong());
+            }
+            return loans;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package edu.unac.service;
+
+public record LoanArchiveReport(long archivedLoans, int chunks, long hotLoansBefore, long hotLoansAfter,
+                                long archivedLoansTotal, long archiveBytes, long elapsedMillis) {
+}
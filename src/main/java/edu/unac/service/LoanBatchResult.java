@@ -0,0 +1,24 @@
+package edu.unac.service;
+
+import edu.unac.domain.Loan;
+
+public record LoanBatchResult(int index, boolean applied, Loan loan, ErrorKind errorKind, String error) {
+    // Why an item was not applied, so callers can act on it without parsing the message
+    public enum ErrorKind {
+        NOT_FOUND,
+        DUE_DATE_IN_PAST,
+        UNAVAILABLE,
+        ALREADY_RETURNED,
+        LIMIT_REACHED,
+        // Valid on its own, but another item failed an all-or-nothing batch
+        BATCH_REJECTED
+    }
+
+    static LoanBatchResult applied(int index, Loan loan) {
+        return new LoanBatchResult(index, true, loan, null, null);
+    }
+
+    static LoanBatchResult rejected(int index, ErrorKind errorKind, String error) {
+        return new LoanBatchResult(index, false, null, errorKind, error);
+    }
+}
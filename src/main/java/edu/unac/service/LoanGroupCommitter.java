@@ -0,0 +1,192 @@
+package edu.unac.service;
+
+import edu.unac.domain.Loan;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Group commit for single loans and returns: when enabled, concurrent calls are queued and one committer thread
+// applies whatever arrived within max-wait (up to max-batch calls) through the batch methods of LoanService, in a
+// single transaction. Returns go first, so a device returned and loaned again in the same window is available.
+// Every caller still gets its own loan or the exception the single-item method would have thrown. If the window
+// fails as a whole, e.g. on a conflict with a request outside the group, each call is retried on its own.
+// When disabled the calls go straight to LoanService.
+@Service
+public class LoanGroupCommitter {
+    private final LoanService loanService;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+    private final DistributionSummary windowSize;
+    private final Timer windowTimer;
+    private volatile boolean running;
+
+    public LoanGroupCommitter(LoanService loanService, PlatformTransactionManager transactionManager, MeterRegistry registry,
+                              @Value("${inventory.loans.group-commit.enabled:false}") boolean enabled,
+                              @Value("${inventory.loans.group-commit.max-batch:64}") int maxBatch,
+                              @Value("${inventory.loans.group-commit.max-wait:PT0.002S}") Duration maxWait) {
+        if (maxBatch < 1 || maxBatch > LoanService.MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Group commit batch must hold 1 to " + LoanService.MAX_BATCH_SIZE + " calls");
+        }
+        this.loanService = loanService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.windowSize = DistributionSummary.builder("inventory.loans.group.commit.size")
+                .description("Loan and return calls applied per group commit")
+                .register(registry);
+        this.windowTimer = Timer.builder("inventory.loans.group.commit")
+                .description("Duration of one group commit")
+                .register(registry);
+        this.committer = new Thread(this::run, "loan-group-commit");
+        committer.setDaemon(true);
+        if (enabled) {
+            running = true;
+            committer.start();
+        }
+    }
+
+    public Loan registerLoan(Loan loan) {
+        // A device already known to be out fails here, before it takes a queue slot or a transaction
+        loanService.requireNotKnownUnavailable(loan.getDeviceId());
+        if (!running) {
+            return loanService.registerLoan(loan);
+        }
+        return await(new Pending(loan, null));
+    }
+
+    public Loan markAsReturned(Long loanId) {
+        if (!running) {
+            return loanService.markAsReturned(loanId);
+        }
+        return await(new Pending(null, loanId));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Calls already queued are still committed before the thread exits
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        committer.interrupt();
+        committer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private Loan await(Pending pending) {
+        queue.add(pending);
+        if (!running && queue.remove(pending)) {
+            // Shut down between the check and the add; nobody would take it from the queue any more
+            applyAlone(pending);
+        }
+        try {
+            return pending.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void run() {
+        List<Pending> window = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                window.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (window.size() < maxBatch) {
+                    Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    window.add(next);
+                }
+            } catch (InterruptedException e) {
+                queue.drainTo(window, maxBatch - window.size());
+            }
+            if (!window.isEmpty()) {
+                commit(window);
+                window.clear();
+            }
+        }
+    }
+
+    private void commit(List<Pending> window) {
+        List<Pending> returns = window.stream().filter(pending -> pending.loan == null).toList();
+        List<Pending> registrations = window.stream().filter(pending -> pending.loan != null).toList();
+        // The batch method fills in the loans it saves; copies keep the callers' objects usable for a retry
+        List<Loan> loans = registrations.stream().map(pending -> pending.loan.copy()).toList();
+
+        long startedAt = System.nanoTime();
+        List<List<LoanBatchResult>> results;
+        try {
+            results = transactionTemplate.execute(status -> List.of(
+                    returns.isEmpty() ? List.of() : loanService.markAllAsReturned(
+                            returns.stream().map(pending -> pending.loanId).toList(), BatchMode.BEST_EFFORT),
+                    registrations.isEmpty() ? List.of() : loanService.registerLoans(loans, BatchMode.BEST_EFFORT)));
+        } catch (RuntimeException e) {
+            window.forEach(this::applyAlone);
+            return;
+        }
+        windowTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        windowSize.record(window.size());
+        complete(returns, results.get(0));
+        complete(registrations, results.get(1));
+    }
+
+    private static void complete(List<Pending> calls, List<LoanBatchResult> results) {
+        for (LoanBatchResult result : results) {
+            Pending pending = calls.get(result.index());
+            if (result.applied()) {
+                pending.result.complete(result.loan());
+            } else {
+                pending.result.completeExceptionally(failure(result));
+            }
+        }
+    }
+
+    // The exception the single-item method throws for the same problem: missing rows and invalid input are
+    // IllegalArgumentExceptions there, a device or loan in the wrong state an IllegalStateException
+    private static RuntimeException failure(LoanBatchResult result) {
+        return switch (result.errorKind()) {
+            case NOT_FOUND, DUE_DATE_IN_PAST -> new IllegalArgumentException(result.error());
+            case UNAVAILABLE, ALREADY_RETURNED, LIMIT_REACHED, BATCH_REJECTED -> new IllegalStateException(result.error());
+        };
+    }
+
+    private void applyAlone(Pending pending) {
+        try {
+            pending.result.complete(pending.loan != null
+                    ? loanService.registerLoan(pending.loan)
+                    : loanService.markAsReturned(pending.loanId));
+        } catch (RuntimeException e) {
+            pending.result.completeExceptionally(e);
+        }
+    }
+
+    private record Pending(Loan loan, Long loanId, CompletableFuture<Loan> result) {
+        Pending(Loan loan, Long loanId) {
+            this(loan, loanId, new CompletableFuture<>());
+        }
+    }
+}
@@ -3,51 +3,384 @@ package edu.unac.service;
 import edu.unac.domain.Device;
 import edu.unac.domain.DeviceStatus;
 import edu.unac.domain.Loan;
+import edu.unac.event.DeviceChangedEvent;
+import edu.unac.event.LoanChangedEvent;
 import edu.unac.repository.DeviceRepository;
 import edu.unac.repository.LoanRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static edu.unac.repository.LoanSpecifications.*;
 
 @Service
 public class LoanService {
-    @Autowired
-    private LoanRepository loanRepository;
-    @Autowired
-    private DeviceRepository deviceRepository;
+    public static final int MAX_BATCH_SIZE = 500;
+    static final String DUE_DATE_IN_PAST = "Due date must be in the future";
 
-    public LoanService(LoanRepository loanRepository, DeviceRepository deviceRepository) {
+    private final LoanRepository loanRepository;
+    private final DeviceRepository deviceRepository;
+    @PersistenceContext
+    private EntityManager entityManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DeviceCache deviceCache;
+    private final Duration defaultLoanDuration;
+    private final BorrowerLoanCounts borrowerLoanCounts;
+    private final DeviceAvailabilityIndex availabilityIndex;
+    private final LoanArchive loanArchive;
+
+    @Autowired
+    public LoanService(LoanRepository loanRepository, DeviceRepository deviceRepository,
+                       ApplicationEventPublisher eventPublisher, DeviceCache deviceCache,
+                       @Value("${inventory.loans.default-duration:P14D}") Duration defaultLoanDuration,
+                       BorrowerLoanCounts borrowerLoanCounts, DeviceAvailabilityIndex availabilityIndex,
+                       LoanArchive loanArchive) {
         this.loanRepository = loanRepository;
         this.deviceRepository = deviceRepository;
+        this.eventPublisher = eventPublisher;
+        this.deviceCache = deviceCache;
+        this.defaultLoanDuration = defaultLoanDuration;
+        this.borrowerLoanCounts = borrowerLoanCounts;
+        this.availabilityIndex = availabilityIndex;
+        this.loanArchive = loanArchive;
     }
 
+    @Transactional
     public Loan registerLoan(Loan loan) {
-        Device device = deviceRepository.findById(loan.getDeviceId()).orElseThrow(() ->
-                new IllegalArgumentException("Device not found"));
+        long now = System.currentTimeMillis();
+        requireDueDateAfter(loan, now);
+        requireNotKnownUnavailable(loan.getDeviceId());
+        Device device = findDevice(loan.getDeviceId());
 
         if (device.getStatus() != DeviceStatus.AVAILABLE) {
             throw new IllegalStateException("Device is not available for loan");
         }
 
-        loan.setStartDate(System.currentTimeMillis());
+        // Counted before the device is claimed; a rollback hands the borrower's slot back
+        borrowerLoanCounts.claim(loan.getBorrowedBy());
+        if (deviceRepository.compareAndSetStatus(device.getId(), DeviceStatus.AVAILABLE, DeviceStatus.LOANED) == 0) {
+            throw new OptimisticLockingFailureException("Device was loaned by a concurrent request");
+        }
+
+        startLoan(loan, now);
+
+        Loan saved = loanRepository.save(loan);
+        // The conditional update bypassed the persistence context, so mirror it on the cached copy
+        markUpdated(device, DeviceStatus.LOANED);
+        eventPublisher.publishEvent(DeviceChangedEvent.statusChanged(device));
+        eventPublisher.publishEvent(LoanChangedEvent.created(saved));
+        return saved;
+    }
+
+    // Fails fast on the availability index, before any device read; devices it does not know go on to the lookup
+    void requireNotKnownUnavailable(Long deviceId) {
+        if (availabilityIndex.isUnavailable(deviceId)) {
+            throw new IllegalStateException("Device is not available for loan");
+        }
+    }
+
+    private static void requireDueDateAfter(Loan loan, long now) {
+        if (isDueBy(loan, now)) {
+            throw new IllegalArgumentException(DUE_DATE_IN_PAST);
+        }
+    }
+
+    // A due date of 0 means the client left it to the default duration
+    private static boolean isDueBy(Loan loan, long now) {
+        return loan.getDueDate() != 0 && loan.getDueDate() <= now;
+    }
+
+    private void startLoan(Loan loan, long now) {
+        loan.setStartDate(now);
         loan.setReturned(false);
+        loan.setOverdue(false);
+        if (loan.getDueDate() == 0) {
+            loan.setDueDate(now + defaultLoanDuration.toMillis());
+        }
+    }
 
-        device.setStatus(DeviceStatus.LOANED);
-        deviceRepository.save(device);
+    // compareAndSetStatus also bumps the version
+    private static void markUpdated(Device device, DeviceStatus status) {
+        device.setStatus(status);
+        if (device.getVersion() != null) {
+            device.setVersion(device.getVersion() + 1);
+        }
+    }
+
+    // The cached copy is only a pre-check; the compare-and-set update that follows is authoritative
+    private Device findDevice(Long deviceId) {
+        if (deviceId == null) {
+            throw new IllegalArgumentException("Device not found");
+        }
+        return deviceCache.get(deviceId, deviceRepository::findById).orElseThrow(() ->
+                new IllegalArgumentException("Device not found"));
+    }
+
+    // Devices are loaded with one findAllById and changed as managed entities, so their versioned
+    // updates and the loan inserts are flushed together as JDBC batches when the transaction commits
+    @Transactional
+    public List<LoanBatchResult> registerLoans(List<Loan> loans, BatchMode mode) {
+        requireBatch(loans);
+
+        Map<Long, Device> devices = deviceRepository.findAllById(loans.stream()
+                        .map(Loan::getDeviceId)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toSet()))
+                .stream()
+                .collect(Collectors.toMap(Device::getId, Function.identity()));
+
+        long now = System.currentTimeMillis();
+        Rejection[] errors = new Rejection[loans.size()];
+        Set<Long> claimed = new HashSet<>();
+        Map<String, Integer> pendingByBorrower = new HashMap<>();
+        for (int i = 0; i < loans.size(); i++) {
+            Device device = devices.get(loans.get(i).getDeviceId());
+            String borrower = loans.get(i).getBorrowedBy();
+            if (isDueBy(loans.get(i), now)) {
+                errors[i] = Rejection.DUE_DATE_IN_PAST;
+            } else if (device == null) {
+                errors[i] = Rejection.DEVICE_NOT_FOUND;
+            } else if (device.getStatus() != DeviceStatus.AVAILABLE || !claimed.add(device.getId())) {
+                errors[i] = Rejection.DEVICE_UNAVAILABLE;
+            } else if (borrowerLoanCounts.atLimit(borrower, pendingByBorrower.getOrDefault(borrower, 0))) {
+                claimed.remove(device.getId());
+                errors[i] = Rejection.LIMIT_REACHED;
+            } else if (borrower != null) {
+                pendingByBorrower.merge(borrower, 1, Integer::sum);
+            }
+        }
+        if (mode == BatchMode.ALL_OR_NOTHING && hasErrors(errors)) {
+            return rejectedBatch(errors);
+        }
 
-        return loanRepository.save(loan);
+        List<Loan> accepted = new ArrayList<>();
+        List<Device> loaned = new ArrayList<>();
+        for (int i = 0; i < loans.size(); i++) {
+            if (errors[i] == null) {
+                Loan loan = loans.get(i);
+                // The pre-check above can lose a race with a concurrent request for the same borrower
+                try {
+                    borrowerLoanCounts.claim(loan.getBorrowedBy());
+                } catch (IllegalStateException e) {
+                    if (mode == BatchMode.ALL_OR_NOTHING) {
+                        throw new OptimisticLockingFailureException("Borrower's loans were changed by a concurrent request");
+                    }
+                    errors[i] = Rejection.LIMIT_REACHED;
+                    continue;
+                }
+                Device device = devices.get(loan.getDeviceId());
+                device.setStatus(DeviceStatus.LOANED);
+                loaned.add(device);
+                startLoan(loan, now);
+                accepted.add(loan);
+            }
+        }
+        loanRepository.saveAll(accepted);
+        // One flush writes the batch and gives the managed rows the versions the events must carry
+        deviceRepository.flush();
+        loaned.forEach(device -> eventPublisher.publishEvent(DeviceChangedEvent.statusChanged(device)));
+        accepted.forEach(loan -> eventPublisher.publishEvent(LoanChangedEvent.created(loan)));
+
+        return batchResults(errors, loans);
+    }
+
+    @Transactional
+    public List<LoanBatchResult> markAllAsReturned(List<Long> loanIds, BatchMode mode) {
+        requireBatch(loanIds);
+
+        Map<Long, Loan> loans = loanRepository.findAllById(loanIds.stream()
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toSet()))
+                .stream()
+                .collect(Collectors.toMap(Loan::getId, Function.identity()));
+        Map<Long, Device> devices = deviceRepository.findAllById(loans.values().stream()
+                        .map(Loan::getDeviceId)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toSet()))
+                .stream()
+                .collect(Collectors.toMap(Device::getId, Function.identity()));
+
+        Rejection[] errors = new Rejection[loanIds.size()];
+        List<Loan> requested = new ArrayList<>(loanIds.size());
+        Set<Long> claimed = new HashSet<>();
+        for (int i = 0; i < loanIds.size(); i++) {
+            Loan loan = loans.get(loanIds.get(i));
+            requested.add(loan);
+            if (loan == null) {
+                errors[i] = Rejection.LOAN_NOT_FOUND;
+            } else if (loan.isReturned() || !claimed.add(loan.getId())) {
+                errors[i] = Rejection.ALREADY_RETURNED;
+            } else if (!devices.containsKey(loan.getDeviceId())) {
+                errors[i] = Rejection.DEVICE_NOT_FOUND;
+            }
+        }
+        if (mode == BatchMode.ALL_OR_NOTHING && hasErrors(errors)) {
+            return rejectedBatch(errors);
+        }
+
+        long now = System.currentTimeMillis();
+        List<Loan> returned = new ArrayList<>();
+        for (int i = 0; i < requested.size(); i++) {
+            if (errors[i] == null) {
+                Loan loan = requested.get(i);
+                loan.setReturned(true);
+                loan.setEndDate(now);
+                devices.get(loan.getDeviceId()).setStatus(DeviceStatus.AVAILABLE);
+                returned.add(loan);
+            }
+        }
+        // Flushed before publishing so the events carry the versions the rows were written with
+        loanRepository.flush();
+        for (Loan loan : returned) {
+            eventPublisher.publishEvent(DeviceChangedEvent.statusChanged(devices.get(loan.getDeviceId())));
+            eventPublisher.publishEvent(LoanChangedEvent.returned(loan));
+        }
+
+        return batchResults(errors, requested);
+    }
+
+    private static void requireBatch(List<?> items) {
+        if (items.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch must not contain more than " + MAX_BATCH_SIZE + " items");
+        }
+        // List.contains(null) throws on immutable lists, so the elements are checked one by one
+        for (Object item : items) {
+            if (item == null) {
+                throw new IllegalArgumentException("Batch must not contain null items");
+            }
+        }
+    }
+
+    private static boolean hasErrors(Rejection[] errors) {
+        for (Rejection error : errors) {
+            if (error != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<LoanBatchResult> rejectedBatch(Rejection[] errors) {
+        List<LoanBatchResult> results = new ArrayList<>(errors.length);
+        for (int i = 0; i < errors.length; i++) {
+            results.add((errors[i] != null ? errors[i] : Rejection.BATCH_REJECTED).result(i));
+        }
+        return results;
+    }
+
+    private static List<LoanBatchResult> batchResults(Rejection[] errors, List<Loan> loans) {
+        List<LoanBatchResult> results = new ArrayList<>(errors.length);
+        for (int i = 0; i < errors.length; i++) {
+            results.add(errors[i] == null ? LoanBatchResult.applied(i, loans.get(i)) : errors[i].result(i));
+        }
+        return results;
+    }
+
+    // The messages are the ones the single-item methods throw for the same problem
+    private record Rejection(LoanBatchResult.ErrorKind kind, String message) {
+        static final Rejection DEVICE_NOT_FOUND = new Rejection(LoanBatchResult.ErrorKind.NOT_FOUND, "Device not found");
+        static final Rejection LOAN_NOT_FOUND = new Rejection(LoanBatchResult.ErrorKind.NOT_FOUND, "Loan not found");
+        static final Rejection DUE_DATE_IN_PAST = new Rejection(LoanBatchResult.ErrorKind.DUE_DATE_IN_PAST, LoanService.DUE_DATE_IN_PAST);
+        static final Rejection DEVICE_UNAVAILABLE = new Rejection(LoanBatchResult.ErrorKind.UNAVAILABLE, "Device is not available for loan");
+        static final Rejection ALREADY_RETURNED = new Rejection(LoanBatchResult.ErrorKind.ALREADY_RETURNED, "Loan is already marked as returned");
+        static final Rejection LIMIT_REACHED = new Rejection(LoanBatchResult.ErrorKind.LIMIT_REACHED, BorrowerLoanCounts.LIMIT_REACHED);
+        static final Rejection BATCH_REJECTED = new Rejection(LoanBatchResult.ErrorKind.BATCH_REJECTED, "Batch rejected");
+
+        LoanBatchResult result(int index) {
+            return LoanBatchResult.rejected(index, kind, message);
+        }
     }
 
     public List<Loan> getAllLoans() {
         return loanRepository.findAll();
     }
 
+    public CursorPage<Loan> getLoansPage(Long cursor, int limit, Boolean returned, Long deviceId, Boolean overdue) {
+        int pageSize = CursorPage.pageSize(limit);
+        List<Loan> rows = loanRepository.findBy(loansPageFilter(cursor, returned, deviceId, overdue), query -> query
+                .sortBy(Sort.by("id"))
+                .limit(pageSize + 1)
+                .all());
+        return CursorPage.of(rows, pageSize, Loan::getId);
+    }
+
+    // The same page with only the named fields, plus the id; unknown field names are rejected
+    public CursorPage<Map<String, Object>> getLoanFieldsPage(Long cursor, int limit, Boolean returned, Long deviceId,
+                                                             Boolean overdue, List<String> fields) {
+        int pageSize = CursorPage.pageSize(limit);
+        List<String> names = SparseFields.require(loanRepository.fieldNames(), fields);
+        List<Map<String, Object>> rows = loanRepository.findFields(loansPageFilter(cursor, returned, deviceId, overdue), names, pageSize + 1);
+        return CursorPage.of(rows, pageSize, row -> (Long) row.get("id"));
+    }
+
+    private static Specification<Loan> loansPageFilter(Long cursor, Boolean returned, Long deviceId, Boolean overdue) {
+        return Specification.where(idAfter(cursor))
+                .and(isReturned(returned))
+                .and(hasDeviceId(deviceId))
+                .and(isOverdue(overdue));
+    }
+
+    // The loan table only; archived loans are stored by device and would take a scan of the whole archive
+    public CursorPage<Loan> getLoansByBorrower(String borrowedBy, boolean activeOnly, Long cursor, int limit) {
+        int pageSize = CursorPage.pageSize(limit);
+        Specification<Loan> filter = Specification.where(hasBorrower(borrowedBy))
+                .and(idAfter(cursor))
+                .and(isReturned(activeOnly ? false : null));
+
+        List<Loan> rows = loanRepository.findBy(filter, query -> query
+                .sortBy(Sort.by("id"))
+                .limit(pageSize + 1)
+                .all());
+        return CursorPage.of(rows, pageSize, Loan::getId);
+    }
+
+    public BorrowerLoanCount getBorrowerLoanCount(String borrowedBy) {
+        return new BorrowerLoanCount(borrowedBy, borrowerLoanCounts.openLoans(borrowedBy),
+                borrowerLoanCounts.maxPerBorrower());
+    }
+
+    // Rows are detached as soon as they are handed to the sink so the persistence context stays empty.
+    // Archived loans follow the loan table, in archive order
+    @Transactional(readOnly = true)
+    public void exportLoans(Consumer<Loan> sink, boolean includeArchived) {
+        try (Stream<Loan> loans = loanRepository.streamAll()) {
+            loans.forEach(loan -> {
+                entityManager.detach(loan);
+                sink.accept(loan);
+            });
+        }
+        if (includeArchived) {
+            loanArchive.exportLoans(sink);
+        }
+    }
+
     public Optional<Loan> getLoanById(Long id) {
         return loanRepository.findById(id);
     }
 
+    @Transactional
     public Loan markAsReturned(Long loanId) {
         Loan loan = loanRepository.findById(loanId).orElseThrow(() ->
                 new IllegalArgumentException("Loan not found"));
@@ -56,18 +389,45 @@ public class LoanService {
             throw new IllegalStateException("Loan is already marked as returned");
         }
 
-        loan.setReturned(true);
-        loan.setEndDate(System.currentTimeMillis());
-
-        Device device = deviceRepository.findById(loan.getDeviceId()).orElseThrow(() ->
+        // Read inside the transaction rather than from the cache: its status is the expected value of the
+        // compare-and-set below, and a stale cached copy would turn every return into a conflict
+        Device device = Optional.ofNullable(loan.getDeviceId()).flatMap(deviceRepository::findById).orElseThrow(() ->
                 new IllegalArgumentException("Device not found"));
-        device.setStatus(DeviceStatus.AVAILABLE);
-        deviceRepository.save(device);
 
-        return loanRepository.save(loan);
+        long endDate = System.currentTimeMillis();
+        if (loanRepository.markReturnedIfOpen(loanId, endDate) == 0) {
+            throw new OptimisticLockingFailureException("Loan was returned by a concurrent request");
+        }
+        if (deviceRepository.compareAndSetStatus(device.getId(), device.getStatus(), DeviceStatus.AVAILABLE) == 0) {
+            throw new OptimisticLockingFailureException("Device status was changed by a concurrent request");
+        }
+
+        // The conditional update bypassed the persistence context, so mirror it on the detached copy we return
+        loan.setReturned(true);
+        loan.setEndDate(endDate);
+        if (loan.getVersion() != null) {
+            loan.setVersion(loan.getVersion() + 1);
+        }
+        markUpdated(device, DeviceStatus.AVAILABLE);
+        eventPublisher.publishEvent(DeviceChangedEvent.statusChanged(device));
+        eventPublisher.publishEvent(LoanChangedEvent.returned(loan));
+        return loan;
     }
 
     public List<Loan> getLoansByDeviceId(Long deviceId) {
         return loanRepository.findByDeviceId(deviceId);
     }
+
+    // Archived loans are only decoded when asked for; the merged list is sorted by id
+    @Transactional(readOnly = true)
+    public List<Loan> getLoansByDeviceId(Long deviceId, boolean includeArchived) {
+        List<Loan> loans = getLoansByDeviceId(deviceId);
+        if (!includeArchived) {
+            return loans;
+        }
+        List<Loan> all = new ArrayList<>(loanArchive.getLoansByDeviceId(deviceId));
+        all.addAll(loans);
+        all.sort(Comparator.comparing(Loan::getId));
+        return all;
+    }
 }
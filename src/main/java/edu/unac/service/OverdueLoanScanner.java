@@ -0,0 +1,134 @@
+package edu.unac.service;
+
+import edu.unac.domain.Loan;
+import edu.unac.event.LoanChangedEvent;
+import edu.unac.repository.LoanRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Flags open loans once they are past their due date. A run walks only the overdue loans, in (dueDate, id)
+// keyset chunks read off idx_loan_overdue_scan, and flags each chunk with one UPDATE in its own transaction,
+// so its cost follows the number of newly overdue loans rather than the number of open ones, and it never
+// holds more than one chunk. Runs stop after max-chunks-per-run chunks; the rest is reported as backlog.
+@Service
+public class OverdueLoanScanner {
+    private final LoanRepository loanRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int chunkSize;
+    private final int maxChunksPerRun;
+    private final ReentrantLock running = new ReentrantLock();
+    private final AtomicLong backlog = new AtomicLong();
+    private final AtomicLong overdueLoans = new AtomicLong();
+    private final Timer runTimer;
+    private final Counter flaggedCounter;
+
+    public OverdueLoanScanner(LoanRepository loanRepository, PlatformTransactionManager transactionManager,
+                              ApplicationEventPublisher eventPublisher, MeterRegistry registry,
+                              @Value("${inventory.overdue.chunk-size:500}") int chunkSize,
+                              @Value("${inventory.overdue.max-chunks-per-run:200}") int maxChunksPerRun) {
+        this.loanRepository = loanRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.chunkSize = chunkSize;
+        this.maxChunksPerRun = maxChunksPerRun;
+        this.runTimer = Timer.builder("inventory.overdue.scan")
+                .description("Duration of one overdue loan scan")
+                .register(registry);
+        this.flaggedCounter = Counter.builder("inventory.overdue.flagged")
+                .description("Loans flagged as overdue")
+                .register(registry);
+        Gauge.builder("inventory.overdue.backlog", backlog, AtomicLong::get)
+                .description("Overdue loans left unflagged by the last scan")
+                .register(registry);
+        Gauge.builder("inventory.loans.overdue", overdueLoans, AtomicLong::get)
+                .description("Open loans flagged as overdue, as of the last scan")
+                .register(registry);
+    }
+
+    @Scheduled(initialDelayString = "${inventory.overdue.scan-interval:PT1M}",
+            fixedDelayString = "${inventory.overdue.scan-interval:PT1M}")
+    public void scheduledScan() {
+        scan(System.currentTimeMillis());
+    }
+
+    public OverdueScanReport scan(long now) {
+        running.lock();
+        try {
+            long startedAt = System.nanoTime();
+            long flagged = 0;
+            int chunks = 0;
+            // Due dates start at 1 so loans without one (0) are never picked up
+            long afterDueDate = 1;
+            long afterId = 0;
+            while (chunks < maxChunksPerRun) {
+                Chunk chunk = flagChunk(now, afterDueDate, afterId);
+                if (chunk.read() == 0) {
+                    break;
+                }
+                chunks++;
+                flagged += chunk.flagged();
+                afterDueDate = chunk.lastDueDate();
+                afterId = chunk.lastId();
+                if (chunk.read() < chunkSize) {
+                    break;
+                }
+            }
+
+            backlog.set(loanRepository.countOverdueUnflagged(now));
+            overdueLoans.set(loanRepository.countByReturnedFalseAndOverdueTrue());
+            flaggedCounter.increment(flagged);
+            long elapsed = System.nanoTime() - startedAt;
+            runTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            return new OverdueScanReport(flagged, chunks, backlog.get(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+        } finally {
+            running.unlock();
+        }
+    }
+
+    private Chunk flagChunk(long now, long afterDueDate, long afterId) {
+        return transactionTemplate.execute(status -> {
+            List<Loan> due = loanRepository.findOverdueCandidates(now, afterDueDate, afterId, chunkSize);
+            if (due.isEmpty()) {
+                return new Chunk(0, 0, afterDueDate, afterId);
+            }
+            List<Long> ids = due.stream().map(Loan::getId).toList();
+            int flagged = loanRepository.flagOverdue(ids);
+
+            List<Loan> changed;
+            if (flagged == due.size()) {
+                // The UPDATE cleared the persistence context, so this only brings the detached rows in line with it
+                due.forEach(loan -> {
+                    loan.setOverdue(true);
+                    loan.setVersion(loan.getVersion() + 1);
+                });
+                changed = due;
+            } else {
+                // Some were returned after being read; reread so every event carries the stored row
+                changed = loanRepository.findAllById(ids).stream()
+                        .filter(loan -> loan.isOverdue() && !loan.isReturned())
+                        .toList();
+            }
+            changed.forEach(loan -> eventPublisher.publishEvent(LoanChangedEvent.overdue(loan)));
+
+            Loan last = due.get(due.size() - 1);
+            return new Chunk(due.size(), changed.size(), last.getDueDate(), last.getId());
+        });
+    }
+
+    private record Chunk(int read, int flagged, long lastDueDate, long lastId) {
+    }
+}
@@ -0,0 +1,5 @@
+package edu.unac.service;
+
+// backlog is how many overdue loans were still unflagged when the run ended, i.e. left for the next run
+public record OverdueScanReport(long flagged, int chunks, long backlog, long elapsedMillis) {
+}
@@ -0,0 +1,77 @@
+package edu.unac.service;
+
+import edu.unac.event.DeviceChangedEvent;
+import edu.unac.event.LoanChangedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// In-memory modification counters behind the ETags of device and loan reads, so a matching If-None-Match
+// is answered without a query. Each change published by the services bumps its counters once right away
+// and again after commit, so a tag handed out while the transaction was in flight never matches the
+// committed data. Per-device counters are striped to keep memory fixed; a collision only costs a 200.
+// The boot epoch keeps tags from a previous process from matching restarted counters.
+@Component
+public class ResourceVersions {
+    private static final int STRIPES = 1024;
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong devices = new AtomicLong();
+    private final AtomicLongArray deviceStripes = new AtomicLongArray(STRIPES);
+    private final AtomicLongArray deviceLoanStripes = new AtomicLongArray(STRIPES);
+
+    @EventListener
+    public void onDeviceChanging(DeviceChangedEvent event) {
+        bumpDevice(event.deviceId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDeviceChanged(DeviceChangedEvent event) {
+        bumpDevice(event.deviceId());
+    }
+
+    @EventListener
+    public void onLoanChanging(LoanChangedEvent event) {
+        deviceLoanStripes.incrementAndGet(stripe(event.loan().getDeviceId()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLoanChanged(LoanChangedEvent event) {
+        deviceLoanStripes.incrementAndGet(stripe(event.loan().getDeviceId()));
+    }
+
+    // For changes that publish no events, e.g. loans moved to the archive; call before and after the commit
+    public void deviceLoansChanged(Long deviceId) {
+        deviceLoanStripes.incrementAndGet(stripe(deviceId));
+    }
+
+    // Callers take the tag before reading, so it is never newer than the data it is sent with
+    public String devicesTag() {
+        return tag("devices", devices.get());
+    }
+
+    public String deviceTag(Long deviceId) {
+        return tag("device-" + deviceId, deviceStripes.get(stripe(deviceId)));
+    }
+
+    public String deviceLoansTag(Long deviceId, boolean includeArchived) {
+        String resource = (includeArchived ? "device-loans-all-" : "device-loans-") + deviceId;
+        return tag(resource, deviceLoanStripes.get(stripe(deviceId)));
+    }
+
+    private void bumpDevice(Long deviceId) {
+        devices.incrementAndGet();
+        deviceStripes.incrementAndGet(stripe(deviceId));
+    }
+
+    private static int stripe(Long id) {
+        return id == null ? 0 : (int) Math.floorMod(id, (long) STRIPES);
+    }
+
+    private String tag(String resource, long version) {
+        return "\"" + resource + "-" + epoch + "-" + version + "\"";
+    }
+}
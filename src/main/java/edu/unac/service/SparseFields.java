@@ -0,0 +1,27 @@
+package edu.unac.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// Checks ?fields= names against the repository's field names before any query, since repositories translate an
+// IllegalArgumentException into a data access exception; unknown names are rejected, not ignored
+final class SparseFields {
+    private SparseFields() {
+    }
+
+    static List<String> require(Set<String> fieldNames, List<String> fields) {
+        List<String> names = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!fieldNames.contains(name)) {
+                throw new IllegalArgumentException("Unknown field: " + name);
+            }
+            names.add(name);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,155 @@
+package edu.unac.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Loan counters for one device or one device type. Day buckets cover the last RING_DAYS days (UTC), so any
+// window up to that length is a sum over at most RING_DAYS buckets; older history only feeds the totals.
+// Returned loans add their time to the days they spanned. Open loans are kept as a count and a sum of start
+// times per start day while that day is in the ring, which is enough to work out their time inside a window
+// when it is read. Callers serialize access.
+final class UsageAggregate {
+    static final int RING_DAYS = 30;
+    static final long DAY_MILLIS = 86_400_000L;
+    private static final int TOP_BORROWERS = 5;
+
+    private final long[] loanedMillis = new long[RING_DAYS];
+    private final int[] started = new int[RING_DAYS];
+    private final int[] openByStartDay = new int[RING_DAYS];
+    private final long[] openStartSum = new long[RING_DAYS];
+    // Newest day the ring holds; it spans lastDay - RING_DAYS + 1 .. lastDay, starting out at the epoch
+    private long lastDay;
+    private int open;
+    private long loans;
+    private long completed;
+    private long completedMillis;
+    private final Map<String, Long> loansByBorrower = new HashMap<>();
+    // Counts only ever grow, so replacing the smallest entry whenever someone overtakes it keeps this exact
+    private final List<String> topBorrowers = new ArrayList<>(TOP_BORROWERS + 1);
+
+    void loanStarted(long startDate, String borrowedBy) {
+        loans++;
+        open++;
+        countBorrower(borrowedBy);
+        long day = day(startDate);
+        advanceTo(day);
+        if (inRing(day)) {
+            int slot = slot(day);
+            started[slot]++;
+            openByStartDay[slot]++;
+            openStartSum[slot] += startDate;
+        }
+    }
+
+    void loanReturned(long startDate, long endDate) {
+        open--;
+        long startDay = day(startDate);
+        if (inRing(startDay)) {
+            int slot = slot(startDay);
+            openByStartDay[slot]--;
+            openStartSum[slot] -= startDate;
+        }
+
+        completed++;
+        completedMillis += endDate - startDate;
+        long endDay = day(endDate);
+        advanceTo(endDay);
+        for (long day = Math.max(startDay, lastDay - RING_DAYS + 1); day <= endDay; day++) {
+            long from = Math.max(startDate, day * DAY_MILLIS);
+            long to = Math.min(endDate, (day + 1) * DAY_MILLIS);
+            loanedMillis[slot(day)] += Math.max(0, to - from);
+        }
+    }
+
+    // The window is the last days calendar days including today, so it starts at a midnight
+    UsageReport.Window window(int days, long now, int capacity) {
+        long today = day(now);
+        long firstDay = today - days + 1;
+        long windowStart = firstDay * DAY_MILLIS;
+
+        long loaned = 0;
+        long startedInWindow = 0;
+        long openInWindow = 0;
+        long openInWindowStartSum = 0;
+        for (long day = Math.max(firstDay, lastDay - RING_DAYS + 1); day <= Math.min(today, lastDay); day++) {
+            int slot = slot(day);
+            loaned += loanedMillis[slot];
+            startedInWindow += started[slot];
+            openInWindow += openByStartDay[slot];
+            openInWindowStartSum += openStartSum[slot];
+        }
+        // Open loans count from their start, or from the window start if they began before it
+        loaned += openInWindow * now - openInWindowStartSum + (open - openInWindow) * (now - windowStart);
+
+        long available = (now - windowStart) * capacity;
+        double utilization = available <= 0 ? 0 : Math.min(1.0, (double) loaned / available);
+        return new UsageReport.Window(days, startedInWindow, loaned, utilization);
+    }
+
+    long loans() {
+        return loans;
+    }
+
+    int open() {
+        return open;
+    }
+
+    long meanLoanDurationMillis() {
+        return completed == 0 ? 0 : completedMillis / completed;
+    }
+
+    List<UsageReport.BorrowerCount> topBorrowers() {
+        return topBorrowers.stream()
+                .map(borrower -> new UsageReport.BorrowerCount(borrower, loansByBorrower.get(borrower)))
+                .toList();
+    }
+
+    private void countBorrower(String borrowedBy) {
+        if (borrowedBy == null) {
+            return;
+        }
+        long count = loansByBorrower.merge(borrowedBy, 1L, Long::sum);
+        if (!topBorrowers.contains(borrowedBy)) {
+            if (topBorrowers.size() == TOP_BORROWERS) {
+                String smallest = topBorrowers.get(TOP_BORROWERS - 1);
+                if (loansByBorrower.get(smallest) >= count) {
+                    return;
+                }
+                topBorrowers.remove(TOP_BORROWERS - 1);
+            }
+            topBorrowers.add(borrowedBy);
+        }
+        topBorrowers.sort(Comparator.comparing((String borrower) -> loansByBorrower.get(borrower)).reversed());
+    }
+
+    // Moving the ring forward recycles the oldest buckets; loans still open from those days then only show up in
+    // open, which is all a window needs to know about loans that started before it
+    private void advanceTo(long day) {
+        if (day <= lastDay) {
+            return;
+        }
+        for (long recycled = Math.max(lastDay + 1, day - RING_DAYS + 1); recycled <= day; recycled++) {
+            int slot = slot(recycled);
+            loanedMillis[slot] = 0;
+            started[slot] = 0;
+            openByStartDay[slot] = 0;
+            openStartSum[slot] = 0;
+        }
+        lastDay = day;
+    }
+
+    private boolean inRing(long day) {
+        return day <= lastDay && day > lastDay - RING_DAYS;
+    }
+
+    private static long day(long millis) {
+        return Math.floorDiv(millis, DAY_MILLIS);
+    }
+
+    private static int slot(long day) {
+        return (int) Math.floorMod(day, (long) RING_DAYS);
+    }
+}
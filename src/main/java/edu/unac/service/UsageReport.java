@@ -0,0 +1,14 @@
+package edu.unac.service;
+
+import java.util.List;
+
+// Loan usage of one device or of every device of one type; devices is how many devices the figures cover
+public record UsageReport(String subject, int devices, long totalLoans, int activeLoans, double loansPerWeek,
+                          long meanLoanDurationMillis, List<Window> windows, List<BorrowerCount> topBorrowers) {
+    // utilization is the share of the window the devices spent on loan, from 0 to 1
+    public record Window(int days, long loans, long loanedMillis, double utilization) {
+    }
+
+    public record BorrowerCount(String borrowedBy, long loans) {
+    }
+}
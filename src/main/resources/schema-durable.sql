@@ -0,0 +1,70 @@
+-- Schema for the durable profile; Hibernate only validates it (ddl-auto=validate), so mapping changes need a matching change here
+CREATE SEQUENCE IF NOT EXISTS device_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS loan_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS loan_archive_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS change_log_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS device (
+    id BIGINT NOT NULL,
+    name VARCHAR(255),
+    type VARCHAR(255),
+    location VARCHAR(255),
+    status TINYINT CHECK (status BETWEEN 0 AND 3),
+    added_date BIGINT NOT NULL,
+    version BIGINT,
+    PRIMARY KEY (id)
+);
+CREATE INDEX IF NOT EXISTS idx_device_status_type_location ON device (status, type, location);
+
+CREATE TABLE IF NOT EXISTS loan (
+    id BIGINT NOT NULL,
+    device_id BIGINT,
+    borrowed_by VARCHAR(255),
+    start_date BIGINT NOT NULL,
+    end_date BIGINT NOT NULL,
+    returned BOOLEAN NOT NULL,
+    due_date BIGINT NOT NULL,
+    overdue BOOLEAN NOT NULL,
+    version BIGINT,
+    PRIMARY KEY (id)
+);
+-- Data directories created before loans had due dates
+ALTER TABLE loan ADD COLUMN IF NOT EXISTS due_date BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE loan ADD COLUMN IF NOT EXISTS overdue BOOLEAN DEFAULT FALSE NOT NULL;
+CREATE INDEX IF NOT EXISTS idx_loan_device_returned ON loan (device_id, returned);
+-- Replaced by idx_loan_borrower_returned, which also serves the active-loans-per-borrower lookup
+DROP INDEX IF EXISTS idx_loan_borrowed_by;
+CREATE INDEX IF NOT EXISTS idx_loan_borrower_returned ON loan (borrowed_by, returned, id);
+CREATE INDEX IF NOT EXISTS idx_loan_overdue_scan ON loan (returned, overdue, due_date, id);
+CREATE INDEX IF NOT EXISTS idx_loan_archive_scan ON loan (returned, device_id, id);
+
+CREATE TABLE IF NOT EXISTS loan_archive (
+    id BIGINT NOT NULL,
+    device_id BIGINT,
+    first_loan_id BIGINT NOT NULL,
+    last_loan_id BIGINT NOT NULL,
+    loan_count INTEGER NOT NULL,
+    archived_at BIGINT NOT NULL,
+    data VARBINARY(1000000),
+    PRIMARY KEY (id)
+);
+CREATE INDEX IF NOT EXISTS idx_loan_archive_device ON loan_archive (device_id, first_loan_id);
+
+CREATE TABLE IF NOT EXISTS change_log (
+    sequence BIGINT NOT NULL,
+    entity ENUM ('DEVICE', 'LOAN'),
+    entity_id BIGINT,
+    deleted BOOLEAN NOT NULL,
+    changed_at BIGINT NOT NULL,
+    PRIMARY KEY (sequence)
+);
+CREATE INDEX IF NOT EXISTS idx_change_log_entity_sequence ON change_log (entity, sequence);
+CREATE INDEX IF NOT EXISTS idx_change_log_entity_id ON change_log (entity, entity_id, sequence);
+
+CREATE TABLE IF NOT EXISTS change_log_state (
+    id INTEGER NOT NULL,
+    compacted_through BIGINT NOT NULL,
+    PRIMARY KEY (id)
+);
+INSERT INTO change_log_state (id, compacted_through)
+    SELECT 1, 0 WHERE NOT EXISTS (SELECT 1 FROM change_log_state WHERE id = 1);
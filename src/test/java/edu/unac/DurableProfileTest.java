@@ -0,0 +1,70 @@
+package edu.unac;
+
+import edu.unac.ledger.Ledger;
+import edu.unac.ledger.LedgerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Booting at all proves schema-durable.sql still matches the entity mappings, since the profile only validates
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+@ActiveProfiles("durable")
+class DurableProfileTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    private static Path dataDir;
+
+    @DynamicPropertySource
+    static void dataDir(DynamicPropertyRegistry registry) throws IOException {
+        dataDir = Files.createTempDirectory("inventory-durable");
+        registry.add("inventory.data-dir", dataDir::toString);
+    }
+
+    @Test
+    void durableProfileServesRequestsAndRecordsFirstRequestTimeTest() throws Exception {
+        mockMvc.perform(
+            post("/api/devices")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"Laptop\",\"type\":\"Electronics\",\"location\":\"Office\"}")
+        ).andExpect(status().isCreated());
+
+        List<LedgerRecord> ledger = new ArrayList<>();
+        Ledger.read(dataDir.resolve("ledger"), ledger::add);
+        assertEquals(LedgerRecord.Kind.DEVICE_REGISTERED, ledger.get(ledger.size() - 1).kind());
+        assertEquals("Laptop", ledger.get(ledger.size() - 1).device().getName());
+
+        mockMvc.perform(
+            get("/api/devices/changes").param("since", "0")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$.changes[0].sequence").value(1));
+
+        mockMvc.perform(
+            get("/actuator/prometheus")
+        ).andExpect(status().isOk())
+        .andExpect(content().string(containsString("inventory_startup_first_request_seconds{application=\"inventory\"}")));
+    }
+}
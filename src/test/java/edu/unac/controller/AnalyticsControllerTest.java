@@ -0,0 +1,119 @@
+package edu.unac.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.domain.Loan;
+import edu.unac.repository.DeviceRepository;
+import edu.unac.repository.LoanArchiveRepository;
+import edu.unac.repository.LoanRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class AnalyticsControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private LoanArchiveRepository loanArchiveRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setup() {
+        loanRepository.deleteAll();
+        loanArchiveRepository.deleteAll();
+        deviceRepository.deleteAll();
+    }
+
+    @Test
+    void getUsageFollowsLoansTest() throws Exception {
+        // Other tests in this context remove their devices behind the services' back, so use a fresh type
+        String type = "Multimedia" + System.nanoTime();
+        Device device = registerDevice("Projector", type);
+        Loan loan = new Loan(null, device.getId(), "Juan Perez", 0L, 0L, false);
+        String body = mockMvc.perform(
+            post("/api/loans")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(loan))
+        ).andExpect(status().isCreated())
+        .andReturn().getResponse().getContentAsString();
+        Loan created = objectMapper.readValue(body, Loan.class);
+
+        mockMvc.perform(
+            get("/api/analytics/devices/" + device.getId())
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$.totalLoans", is(1)))
+        .andExpect(jsonPath("$.activeLoans", is(1)))
+        .andExpect(jsonPath("$.windows[0].days", is(7)))
+        .andExpect(jsonPath("$.windows[0].loans", is(1)))
+        .andExpect(jsonPath("$.topBorrowers[0].borrowedBy", is("Juan Perez")));
+
+        mockMvc.perform(
+            put("/api/loans/" + created.getId() + "/return")
+        ).andExpect(status().isOk());
+
+        mockMvc.perform(
+            get("/api/analytics/types/" + type)
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$.devices", is(1)))
+        .andExpect(jsonPath("$.totalLoans", is(1)))
+        .andExpect(jsonPath("$.activeLoans", is(0)));
+    }
+
+    @Test
+    void rebuildPicksUpLoansWrittenDirectlyTest() throws Exception {
+        Device device = deviceRepository.save(new Device(null, "Camera", "Photo", "Lab", DeviceStatus.AVAILABLE, 0L));
+        long now = System.currentTimeMillis();
+        loanRepository.save(new Loan(null, device.getId(), "Ana", now - 7_200_000L, now - 3_600_000L, true));
+
+        mockMvc.perform(
+            post("/api/analytics/rebuild")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$.devices", is(1)))
+        .andExpect(jsonPath("$.loans", is(1)));
+
+        mockMvc.perform(
+            get("/api/analytics/devices/" + device.getId())
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$.totalLoans", is(1)))
+        .andExpect(jsonPath("$.activeLoans", is(0)))
+        .andExpect(jsonPath("$.meanLoanDurationMillis", is(3_600_000)));
+    }
+
+    @Test
+    void getUsageUnknownDeviceTest() throws Exception {
+        mockMvc.perform(
+            get("/api/analytics/devices/999999")
+        ).andExpect(status().isNotFound());
+    }
+
+    private Device registerDevice(String name, String type) throws Exception {
+        Device device = new Device(null, name, type, "Office", null, 0L);
+        String body = mockMvc.perform(
+            post("/api/devices")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(device))
+        ).andExpect(status().isCreated())
+        .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(body, Device.class);
+    }
+}
@@ -0,0 +1,114 @@
+package edu.unac.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.domain.Loan;
+import edu.unac.event.ChangeFeed;
+import edu.unac.repository.DeviceRepository;
+import edu.unac.repository.LoanRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class ChangeFeedControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ChangeFeed changeFeed;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @BeforeEach
+    void setup() {
+        loanRepository.deleteAll();
+        deviceRepository.deleteAll();
+    }
+
+    @Test
+    void resumeFromLastEventIdTest() throws Exception {
+        String lastEventId = changeFeed.lastEventId();
+        Device device = new Device(null, "Laptop", "Electronics", "Office", null, 0L);
+        String created = mockMvc.perform(
+            post("/api/devices")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(device))
+        ).andExpect(status().isCreated())
+        .andReturn().getResponse().getContentAsString();
+        Long deviceId = objectMapper.readValue(created, Device.class).getId();
+
+        mockMvc.perform(
+            post("/api/loans")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new Loan(null, deviceId, "Juan Perez", 0L, 0L, false)))
+        ).andExpect(status().isCreated());
+
+        MvcResult stream = mockMvc.perform(
+            get("/api/changes").header("Last-Event-ID", lastEventId)
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+
+        String body = awaitContent(stream, "event:loan");
+        assertTrue(body.indexOf("\"kind\":\"REGISTERED\"") < body.indexOf("\"kind\":\"STATUS_CHANGED\""));
+        assertTrue(body.contains("\"name\":\"Laptop\""));
+        assertTrue(body.contains("\"kind\":\"CREATED\""));
+        assertTrue(body.contains("\"borrowedBy\":\"Juan Perez\""));
+    }
+
+    @Test
+    void liveEventsAfterSubscribeTest() throws Exception {
+        MvcResult stream = mockMvc.perform(
+            get("/api/changes")
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+
+        Device device = deviceRepository.save(new Device(null, "Camera", "Multimedia", "Office", DeviceStatus.AVAILABLE, 0L));
+        mockMvc.perform(
+            delete("/api/devices/" + device.getId())
+        ).andExpect(status().isNoContent());
+
+        String body = awaitContent(stream, "\"kind\":\"DELETED\"");
+        assertTrue(body.contains("\"id\":" + device.getId()));
+    }
+
+    @Test
+    void unknownLastEventIdResetsTest() throws Exception {
+        MvcResult stream = mockMvc.perform(
+            get("/api/changes").header("Last-Event-ID", "previous-process-42")
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+
+        awaitContent(stream, "event:" + ChangeFeed.RESET_EVENT);
+    }
+
+    // Events are sent from the feed's dispatcher thread, so poll until the expected one arrives
+    private static String awaitContent(MvcResult stream, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5_000;
+        String body = stream.getResponse().getContentAsString();
+        while (!body.contains(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            body = stream.getResponse().getContentAsString();
+        }
+        assertTrue(body.contains(expected), body);
+        return body;
+    }
+}
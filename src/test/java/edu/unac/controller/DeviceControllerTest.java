@@ -1,23 +1,38 @@
 package edu.unac.controller;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 import edu.unac.domain.Device;
 import edu.unac.domain.DeviceStatus;
 import edu.unac.domain.Loan;
 import edu.unac.repository.DeviceRepository;
 import edu.unac.repository.LoanRepository;
+import edu.unac.service.DeviceListSnapshot;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -34,9 +49,14 @@ class DeviceControllerTest {
     @Autowired
     private LoanRepository loanRepository;
 
+    @Autowired
+    private DeviceListSnapshot listSnapshot;
+
+    // The repository writes of these tests publish no events, so the list snapshot is read again
     @BeforeEach
     void setup() {
         deviceRepository.deleteAll();
+        listSnapshot.invalidate();
     }
 
     @Test
@@ -62,6 +82,53 @@ class DeviceControllerTest {
         ).andExpect(status().isBadRequest());
     }
 
+    @Test
+    void importDevicesCsvTest() throws Exception {
+        String csv = """
+                name,type,location
+                Projector,Multimedia,Room101
+                AB,Electronics,Office
+                "Laptop, 15\"\"",Electronics,Office
+                Broken row
+                """;
+
+        mockMvc.perform(
+            post("/api/devices/import")
+                .param("chunkSize", "1")
+                .contentType("text/csv")
+                .content(csv)
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$.imported", is(2)))
+        .andExpect(jsonPath("$.rejected", is(2)))
+        .andExpect(jsonPath("$.rejectedRows[0].line", is(3)))
+        .andExpect(jsonPath("$.rejectedRows[0].reason", is("Device name must be at least 3 characters long")))
+        .andExpect(jsonPath("$.rejectedRows[1].line", is(5)));
+
+        mockMvc.perform(
+            get("/api/devices").param("status", "AVAILABLE")
+        ).andExpect(jsonPath("$", hasSize(2)))
+        .andExpect(jsonPath("$[1].name", is("Laptop, 15\"")));
+    }
+
+    @Test
+    void importDevicesNdjsonTest() throws Exception {
+        String ndjson = """
+                {"name":"Projector","type":"Multimedia","location":"Room101"}
+                {"name":null,"type":"Multimedia","location":"Room101"}
+                {"name":"Camera","type":"Multimedia","location":"Room102"}
+                null
+                """;
+
+        mockMvc.perform(
+            post("/api/devices/import")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content(ndjson)
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$.imported", is(2)))
+        .andExpect(jsonPath("$.rejectedRows[0].line", is(2)))
+        .andExpect(jsonPath("$.rejectedRows[1].line", is(4)));
+    }
+
     @Test
     void getAllDevicesTest() throws Exception {
         deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
@@ -73,6 +140,352 @@ class DeviceControllerTest {
         .andExpect(jsonPath("$", hasSize(2)));
     }
 
+    @Test
+    void getAllDevicesFromSnapshotTest() throws Exception {
+        Device laptop = registerThroughApi("Laptop 7");
+        mockMvc.perform(
+            get("/api/devices")
+        ).andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].status", is("AVAILABLE")));
+
+        // A status change through the service, a write straight to the repository that the snapshot is told
+        // about, and a deletion
+        mockMvc.perform(
+            put("/api/devices/" + laptop.getId() + "/status").param("status", "MAINTENANCE")
+        ).andExpect(status().isOk());
+        Device tv = deviceRepository.save(new Device(null, "TVs", "Electronics", "Movie Room", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        listSnapshot.invalidate();
+        Device camera = registerThroughApi("Camera 2");
+        mockMvc.perform(
+            delete("/api/devices/" + camera.getId())
+        ).andExpect(status().isNoContent());
+
+        String json = mockMvc.perform(
+            get("/api/devices")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(2)))
+        .andExpect(jsonPath("$[0].status", is("MAINTENANCE")))
+        .andExpect(jsonPath("$[1].id", is(tv.getId().intValue())))
+        .andReturn().getResponse().getContentAsString();
+
+        MvcResult gzipped = mockMvc.perform(
+            get("/api/devices").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")
+        ).andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+        .andReturn();
+        assertEquals(json, new String(new GZIPInputStream(new ByteArrayInputStream(gzipped.getResponse().getContentAsByteArray())).readAllBytes(), StandardCharsets.UTF_8));
+
+        // The gzip body has its own tag, so a cached identity body is not confirmed for it nor the other way round
+        String gzipTag = gzipped.getResponse().getHeader(HttpHeaders.ETAG);
+        assertTrue(gzipTag.endsWith("-gzip\""));
+        mockMvc.perform(
+            get("/api/devices").header(HttpHeaders.IF_NONE_MATCH, gzipTag)
+        ).andExpect(status().isOk())
+        .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING));
+        mockMvc.perform(
+            get("/api/devices").header(HttpHeaders.ACCEPT_ENCODING, "gzip").header(HttpHeaders.IF_NONE_MATCH, gzipTag)
+        ).andExpect(status().isNotModified());
+
+        mockMvc.perform(
+            get("/api/devices").header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, deflate")
+        ).andExpect(status().isOk())
+        .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+        .andExpect(content().string(json));
+
+        mockMvc.perform(
+            get("/api/devices").param("limit", "1")
+        ).andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(header().string("X-Next-Cursor", laptop.getId().toString()));
+    }
+
+    @Test
+    void getAllDevicesSparseFieldsTest() throws Exception {
+        deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+
+        mockMvc.perform(
+            get("/api/devices").param("fields", "name,status")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].name", is("Laptop")))
+        .andExpect(jsonPath("$[0].status", is("AVAILABLE")))
+        .andExpect(jsonPath("$[0].id").exists())
+        .andExpect(jsonPath("$[0].type").doesNotExist())
+        .andExpect(jsonPath("$[0].version").doesNotExist());
+
+        mockMvc.perform(
+            get("/api/devices").param("fields", "name,password")
+        ).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getAllDevicesCborTest() throws Exception {
+        deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+
+        MvcResult result = mockMvc.perform(
+            get("/api/devices").accept(MediaType.APPLICATION_CBOR)
+        ).andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+        .andExpect(header().stringValues(HttpHeaders.VARY, hasItem(containsString(HttpHeaders.ACCEPT))))
+        .andReturn();
+
+        List<Device> devices = new CBORMapper().readValue(result.getResponse().getContentAsByteArray(),
+                new TypeReference<List<Device>>() { });
+        assertEquals(1, devices.size());
+        assertEquals("Laptop", devices.get(0).getName());
+
+        // A tag handed out with the CBOR body must not confirm the JSON one
+        mockMvc.perform(
+            get("/api/devices").header(HttpHeaders.IF_NONE_MATCH, result.getResponse().getHeader(HttpHeaders.ETAG))
+        ).andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+
+        mockMvc.perform(
+            get("/api/devices").header(HttpHeaders.ACCEPT, "application/json, application/cbor")
+        ).andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    void searchDevicesTest() throws Exception {
+        registerThroughApi("Projector Epson");
+        Device laptop = registerThroughApi("Laptop 3");
+        registerThroughApi("Laptop 12");
+
+        mockMvc.perform(
+            get("/api/devices/search").param("q", "lap 3")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].id", is(laptop.getId().intValue())));
+
+        mockMvc.perform(
+            delete("/api/devices/" + laptop.getId())
+        ).andExpect(status().isNoContent());
+
+        mockMvc.perform(
+            get("/api/devices/search").param("q", "laptop")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].name", is("Laptop 12")));
+    }
+
+    @Test
+    void searchDevicesBlankQueryTest() throws Exception {
+        mockMvc.perform(
+            get("/api/devices/search").param("q", " - ")
+        ).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getAllDevicesNotModifiedTest() throws Exception {
+        registerThroughApi("Laptop");
+
+        String etag = mockMvc.perform(
+            get("/api/devices")
+        ).andExpect(status().isOk())
+        .andExpect(header().exists("ETag"))
+        .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(
+            get("/api/devices").header("If-None-Match", etag)
+        ).andExpect(status().isNotModified())
+        .andExpect(content().string(""));
+
+        registerThroughApi("Camera");
+
+        mockMvc.perform(
+            get("/api/devices").header("If-None-Match", etag)
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(2)));
+    }
+
+    @Test
+    void getDeviceByIdNotModifiedTest() throws Exception {
+        Device laptop = registerThroughApi("Laptop");
+        Device camera = registerThroughApi("Camera");
+
+        String etag = mockMvc.perform(
+            get("/api/devices/" + laptop.getId())
+        ).andExpect(status().isOk())
+        .andReturn().getResponse().getHeader("ETag");
+
+        // A change to another device leaves this one's tag alone
+        mockMvc.perform(
+            put("/api/devices/" + camera.getId() + "/status").param("status", DeviceStatus.MAINTENANCE.name())
+        ).andExpect(status().isOk());
+        mockMvc.perform(
+            get("/api/devices/" + laptop.getId()).header("If-None-Match", etag)
+        ).andExpect(status().isNotModified());
+
+        mockMvc.perform(
+            put("/api/devices/" + laptop.getId() + "/status").param("status", DeviceStatus.MAINTENANCE.name())
+        ).andExpect(status().isOk());
+        mockMvc.perform(
+            get("/api/devices/" + laptop.getId()).header("If-None-Match", etag)
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$.status", is("MAINTENANCE")));
+    }
+
+    @Test
+    void getAllDevicesPaginatedTest() throws Exception {
+        deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        Device second = deviceRepository.save(new Device(null, "TVs", "Electronics", "Movie Room", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        deviceRepository.save(new Device(null, "Camera", "Multimedia", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+
+        mockMvc.perform(
+            get("/api/devices").param("limit", "2")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(2)))
+        .andExpect(header().string("X-Next-Cursor", second.getId().toString()));
+
+        mockMvc.perform(
+            get("/api/devices").param("limit", "2").param("cursor", second.getId().toString())
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].name", is("Camera")))
+        .andExpect(header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    void getAllDevicesFilteredTest() throws Exception {
+        deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        deviceRepository.save(new Device(null, "TVs", "Electronics", "Movie Room", DeviceStatus.MAINTENANCE, System.currentTimeMillis()));
+        deviceRepository.save(new Device(null, "Camera", "Multimedia", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+
+        mockMvc.perform(
+            get("/api/devices").param("status", "AVAILABLE").param("location", "Office").param("type", "Multimedia")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].name", is("Camera")));
+    }
+
+    @Test
+    void getAllDevicesInvalidLimitTest() throws Exception {
+        mockMvc.perform(
+            get("/api/devices").param("limit", "0")
+        ).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getAvailableDevicesTest() throws Exception {
+        // Registered through the API so the availability index hears about them
+        register(new Device(null, "Laptop", "Electronics", "Office", null, 0L));
+        Device tv = register(new Device(null, "TVs", "Electronics", "Movie Room", null, 0L));
+
+        mockMvc.perform(
+            put("/api/devices/" + tv.getId() + "/status").param("status", DeviceStatus.MAINTENANCE.name())
+        ).andExpect(status().isOk());
+
+        mockMvc.perform(
+            get("/api/devices/available")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].name", is("Laptop")));
+    }
+
+    @Test
+    void getAvailableDevicesFilteredTest() throws Exception {
+        // Registered through the API so the availability index hears about them; use a fresh location
+        String room = "Room " + System.nanoTime();
+        Device laptop = register(new Device(null, "Laptop", "Electronics", room, null, 0L));
+        Device tv = register(new Device(null, "TVs", "Electronics", room, null, 0L));
+        register(new Device(null, "Projector", "Multimedia", room, null, 0L));
+
+        mockMvc.perform(
+            put("/api/devices/" + tv.getId() + "/status").param("status", DeviceStatus.MAINTENANCE.name())
+        ).andExpect(status().isOk());
+
+        mockMvc.perform(
+            get("/api/devices/available").param("type", "Electronics").param("location", room)
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].id", is(laptop.getId().intValue())));
+
+        mockMvc.perform(
+            get("/api/devices/available").param("location", room)
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(2)));
+    }
+
+    private Device register(Device device) throws Exception {
+        String body = mockMvc.perform(
+            post("/api/devices")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(device))
+        ).andExpect(status().isCreated())
+        .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(body, Device.class);
+    }
+
+    @Test
+    void getDeviceChangesTest() throws Exception {
+        String start = mockMvc.perform(
+            get("/api/devices/changes")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$.changes", hasSize(0)))
+        .andReturn().getResponse().getContentAsString();
+        long since = objectMapper.readTree(start).get("nextSince").asLong();
+
+        Device laptop = registerThroughApi("Laptop");
+        Device camera = registerThroughApi("Camera");
+        mockMvc.perform(
+            put("/api/devices/" + laptop.getId() + "/status").param("status", DeviceStatus.MAINTENANCE.name())
+        ).andExpect(status().isOk());
+        mockMvc.perform(
+            delete("/api/devices/" + camera.getId())
+        ).andExpect(status().isNoContent());
+
+        mockMvc.perform(
+            get("/api/devices/changes").param("since", Long.toString(since))
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$.changes", hasSize(2)))
+        .andExpect(jsonPath("$.changes[0].id", is(laptop.getId().intValue())))
+        .andExpect(jsonPath("$.changes[0].deleted", is(false)))
+        .andExpect(jsonPath("$.changes[0].data.status", is("MAINTENANCE")))
+        .andExpect(jsonPath("$.changes[1].id", is(camera.getId().intValue())))
+        .andExpect(jsonPath("$.changes[1].deleted", is(true)))
+        .andExpect(jsonPath("$.hasMore", is(false)));
+
+        mockMvc.perform(
+            get("/api/devices/changes").param("since", Long.toString(since)).param("limit", "1")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$.changes", hasSize(1)))
+        .andExpect(jsonPath("$.changes[0].id", is(laptop.getId().intValue())))
+        .andExpect(jsonPath("$.nextSince", is((int) since + 1)))
+        .andExpect(jsonPath("$.hasMore", is(true)));
+    }
+
+    @Test
+    void getDeviceChangesInvalidSinceTest() throws Exception {
+        mockMvc.perform(
+            get("/api/devices/changes").param("since", "-1")
+        ).andExpect(status().isBadRequest());
+    }
+
+    private Device registerThroughApi(String name) throws Exception {
+        Device device = new Device(null, name, "Electronics", "Office", null, 0L);
+        String body = mockMvc.perform(
+            post("/api/devices")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(device))
+        ).andExpect(status().isCreated())
+        .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(body, Device.class);
+    }
+
+    @Test
+    void getCacheStatsTest() throws Exception {
+        Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+
+        mockMvc.perform(get("/api/devices/" + deviceSaved.getId())).andExpect(status().isOk());
+        mockMvc.perform(get("/api/devices/" + deviceSaved.getId())).andExpect(status().isOk());
+
+        mockMvc.perform(
+            get("/api/devices/cache/stats")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$.devices.hits", greaterThanOrEqualTo(1)))
+        .andExpect(jsonPath("$.devices.size", greaterThanOrEqualTo(1)))
+        .andExpect(jsonPath("$.availableDevices").doesNotExist());
+    }
+
     @Test
     void getDeviceByIdTest() throws Exception {
         Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
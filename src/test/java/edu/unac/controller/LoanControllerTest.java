@@ -8,22 +8,39 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 import edu.unac.domain.DeviceStatus;
+import edu.unac.event.DeviceChangedEvent;
+import edu.unac.event.LoanChangedEvent;
 import edu.unac.repository.DeviceRepository;
+import edu.unac.repository.LoanArchiveRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 @AutoConfigureMockMvc
+@RecordApplicationEvents
 class LoanControllerTest {
     @Autowired
     private MockMvc mockMvc;
@@ -34,12 +51,19 @@ class LoanControllerTest {
     @Autowired
     private DeviceRepository deviceRepository;
 
+    @Autowired
+    private LoanArchiveRepository loanArchiveRepository;
+
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private ApplicationEvents applicationEvents;
+
     @BeforeEach
     void setup() {
         loanRepository.deleteAll();
+        loanArchiveRepository.deleteAll();
         deviceRepository.deleteAll();
     }
 
@@ -82,6 +106,164 @@ class LoanControllerTest {
         .andExpect(jsonPath("$", hasSize(2)));
     }
 
+    @Test
+    void getAllLoansFilteredTest() throws Exception {
+        Device deviceSaved1 = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        loanRepository.save(new Loan(null, deviceSaved1.getId(), "Juan Perez", System.currentTimeMillis(), System.currentTimeMillis() + 604800000L, true));
+        loanRepository.save(new Loan(null, deviceSaved1.getId(), "Maria Lopez", System.currentTimeMillis(), System.currentTimeMillis() + 604800000L, false));
+
+        Device deviceSaved2 = deviceRepository.save(new Device(null, "TVs", "Electronics", "Movie Room", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        loanRepository.save(new Loan(null, deviceSaved2.getId(), "Juan Perez", System.currentTimeMillis(), System.currentTimeMillis() + 604800000L, false));
+
+        mockMvc.perform(
+            get("/api/loans")
+                .param("returned", "false")
+                .param("deviceId", deviceSaved1.getId().toString())
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].borrowedBy", is("Maria Lopez")));
+    }
+
+    @Test
+    void getAllLoansOverdueFilterTest() throws Exception {
+        Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        long now = System.currentTimeMillis();
+        loanRepository.save(new Loan(null, deviceSaved.getId(), "Juan Perez", now, 0L, false, now - 1_000L, true, null));
+        loanRepository.save(new Loan(null, deviceSaved.getId(), "Maria Lopez", now, 0L, false, now + 604800000L, false, null));
+
+        mockMvc.perform(
+            get("/api/loans")
+                .param("overdue", "true")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].borrowedBy", is("Juan Perez")))
+        .andExpect(jsonPath("$[0].overdue", is(true)));
+    }
+
+    @Test
+    void getAllLoansPaginatedTest() throws Exception {
+        Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        Loan first = loanRepository.save(new Loan(null, deviceSaved.getId(), "Juan Perez", System.currentTimeMillis(), System.currentTimeMillis() + 604800000L, true));
+        loanRepository.save(new Loan(null, deviceSaved.getId(), "Maria Lopez", System.currentTimeMillis(), System.currentTimeMillis() + 604800000L, false));
+
+        mockMvc.perform(
+            get("/api/loans").param("limit", "1")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(header().string("X-Next-Cursor", first.getId().toString()));
+    }
+
+    @Test
+    void exportLoansTest() throws Exception {
+        Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        loanRepository.save(new Loan(null, deviceSaved.getId(), "Juan Perez", System.currentTimeMillis(), System.currentTimeMillis() + 604800000L, true));
+        loanRepository.save(new Loan(null, deviceSaved.getId(), "Maria Lopez", System.currentTimeMillis(), System.currentTimeMillis() + 604800000L, false));
+
+        MvcResult result = mockMvc.perform(
+            get("/api/loans/export")
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        List<String> lines = body.lines().toList();
+        assertEquals(2, lines.size());
+        assertEquals("Juan Perez", objectMapper.readValue(lines.get(0), Loan.class).getBorrowedBy());
+        assertEquals("Maria Lopez", objectMapper.readValue(lines.get(1), Loan.class).getBorrowedBy());
+    }
+
+    @Test
+    void exportLoansGzipTest() throws Exception {
+        Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        loanRepository.save(new Loan(null, deviceSaved.getId(), "Juan Perez", System.currentTimeMillis(), System.currentTimeMillis() + 604800000L, false));
+
+        MvcResult result = mockMvc.perform(
+            get("/api/loans/export").header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+
+        byte[] body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        String lines = new String(new GZIPInputStream(new ByteArrayInputStream(body)).readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals("Juan Perez", objectMapper.readValue(lines.trim(), Loan.class).getBorrowedBy());
+    }
+
+    @Test
+    void exportLoansGzipCompressesAcrossRowsTest() throws Exception {
+        Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        List<Loan> loans = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            loans.add(new Loan(null, deviceSaved.getId(), "Borrower " + i, 1_000L + i, 2_000L + i, true));
+        }
+        loanRepository.saveAll(loans);
+
+        MvcResult result = mockMvc.perform(
+            get("/api/loans/export").header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+        byte[] body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+
+        byte[] ndjson = new GZIPInputStream(new ByteArrayInputStream(body)).readAllBytes();
+        assertEquals(600, new String(ndjson, StandardCharsets.UTF_8).lines().count());
+        ByteArrayOutputStream reference = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(reference)) {
+            gzip.write(ndjson);
+        }
+        // Rows are flushed in batches, not one sync-flushed deflate block per row
+        assertTrue(body.length < reference.size() * 1.2,
+                "gzip export is " + body.length + " bytes, one-shot gzip is " + reference.size());
+    }
+
+    @Test
+    void exportLoansCborTest() throws Exception {
+        Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        loanRepository.save(new Loan(null, deviceSaved.getId(), "Juan Perez", System.currentTimeMillis(), System.currentTimeMillis() + 604800000L, true));
+        loanRepository.save(new Loan(null, deviceSaved.getId(), "Maria Lopez", System.currentTimeMillis(), System.currentTimeMillis() + 604800000L, false));
+
+        MvcResult result = mockMvc.perform(
+            get("/api/loans/export").header(HttpHeaders.ACCEPT, "application/cbor-seq")
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+
+        byte[] body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/cbor-seq"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        List<Loan> loans = new CBORMapper().readerFor(Loan.class).<Loan>readValues(body).readAll();
+        assertEquals(2, loans.size());
+        assertEquals("Juan Perez", loans.get(0).getBorrowedBy());
+        assertEquals("Maria Lopez", loans.get(1).getBorrowedBy());
+    }
+
+    @Test
+    void getAllLoansSparseFieldsTest() throws Exception {
+        Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        loanRepository.save(new Loan(null, deviceSaved.getId(), "Juan Perez", System.currentTimeMillis(), System.currentTimeMillis() + 604800000L, true));
+        Loan open = loanRepository.save(new Loan(null, deviceSaved.getId(), "Maria Lopez", System.currentTimeMillis(), System.currentTimeMillis() + 604800000L, false));
+
+        mockMvc.perform(
+            get("/api/loans").param("returned", "false").param("fields", "borrowedBy").param("limit", "1")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].id", is(open.getId().intValue())))
+        .andExpect(jsonPath("$[0].borrowedBy", is("Maria Lopez")))
+        .andExpect(jsonPath("$[0].deviceId").doesNotExist())
+        .andExpect(header().doesNotExist("X-Next-Cursor"));
+
+        mockMvc.perform(
+            get("/api/loans").param("fields", "borrower")
+        ).andExpect(status().isBadRequest());
+    }
+
     @Test
     void getLoanByIdTest() throws Exception {
         Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
@@ -106,6 +288,34 @@ class LoanControllerTest {
         .andExpect(jsonPath("$.deviceId", is(deviceSaved.getId().intValue())));
     }
 
+    @Test
+    void getLoanChangesTest() throws Exception {
+        Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        String start = mockMvc.perform(
+            get("/api/loans/changes")
+        ).andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+        long since = objectMapper.readTree(start).get("nextSince").asLong();
+
+        String created = mockMvc.perform(
+            post("/api/loans")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new Loan(null, deviceSaved.getId(), "Juan Perez", 0L, 0L, false)))
+        ).andExpect(status().isCreated())
+        .andReturn().getResponse().getContentAsString();
+        Long loanId = objectMapper.readValue(created, Loan.class).getId();
+        mockMvc.perform(
+            put("/api/loans/" + loanId + "/return")
+        ).andExpect(status().isOk());
+
+        mockMvc.perform(
+            get("/api/loans/changes").param("since", Long.toString(since))
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$.changes", hasSize(1)))
+        .andExpect(jsonPath("$.changes[0].id", is(loanId.intValue())))
+        .andExpect(jsonPath("$.changes[0].data.returned", is(true)));
+    }
+
     @Test
     void markAsReturnedLoanNotFoundTest() throws Exception {
         mockMvc.perform(
@@ -122,6 +332,175 @@ class LoanControllerTest {
         ).andExpect(status().isConflict());
     }
 
+    @Test
+    void registerLoansBatchTest() throws Exception {
+        Device deviceSaved1 = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        Device deviceSaved2 = deviceRepository.save(new Device(null, "TVs", "Electronics", "Movie Room", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        List<Loan> loans = List.of(
+                new Loan(null, deviceSaved1.getId(), "Juan Perez", 0L, 0L, false),
+                new Loan(null, deviceSaved2.getId(), "Maria Lopez", 0L, 0L, false));
+
+        mockMvc.perform(
+            post("/api/loans/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(loans))
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(2)))
+        .andExpect(jsonPath("$[0].applied", is(true)))
+        .andExpect(jsonPath("$[1].loan.borrowedBy", is("Maria Lopez")));
+
+        assertEquals(DeviceStatus.LOANED, deviceRepository.findById(deviceSaved1.getId()).orElseThrow().getStatus());
+        assertEquals(DeviceStatus.LOANED, deviceRepository.findById(deviceSaved2.getId()).orElseThrow().getStatus());
+        assertEquals(2, loanRepository.count());
+    }
+
+    @Test
+    void registerLoansBatchAllOrNothingTest() throws Exception {
+        Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        List<Loan> loans = List.of(
+                new Loan(null, deviceSaved.getId(), "Juan Perez", 0L, 0L, false),
+                new Loan(null, deviceSaved.getId() + 1000, "Maria Lopez", 0L, 0L, false));
+
+        mockMvc.perform(
+            post("/api/loans/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(loans))
+        ).andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$[0].applied", is(false)))
+        .andExpect(jsonPath("$[1].error", is("Device not found")));
+
+        assertEquals(DeviceStatus.AVAILABLE, deviceRepository.findById(deviceSaved.getId()).orElseThrow().getStatus());
+        assertEquals(0, loanRepository.count());
+    }
+
+    @Test
+    void registerLoansBatchBestEffortTest() throws Exception {
+        Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        List<Loan> loans = List.of(
+                new Loan(null, deviceSaved.getId(), "Juan Perez", 0L, 0L, false),
+                new Loan(null, deviceSaved.getId(), "Maria Lopez", 0L, 0L, false));
+
+        mockMvc.perform(
+            post("/api/loans/batch")
+                .param("mode", "BEST_EFFORT")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(loans))
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].applied", is(true)))
+        .andExpect(jsonPath("$[1].applied", is(false)))
+        .andExpect(jsonPath("$[1].error", is("Device is not available for loan")));
+
+        assertEquals(1, loanRepository.count());
+    }
+
+    @Test
+    void markAllAsReturnedBatchTest() throws Exception {
+        Device deviceSaved1 = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.LOANED, System.currentTimeMillis()));
+        Device deviceSaved2 = deviceRepository.save(new Device(null, "TVs", "Electronics", "Movie Room", DeviceStatus.LOANED, System.currentTimeMillis()));
+        Loan loanSaved1 = loanRepository.save(new Loan(null, deviceSaved1.getId(), "Juan Perez", System.currentTimeMillis(), 0L, false));
+        Loan loanSaved2 = loanRepository.save(new Loan(null, deviceSaved2.getId(), "Maria Lopez", System.currentTimeMillis(), 0L, false));
+
+        mockMvc.perform(
+            put("/api/loans/return/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(loanSaved1.getId(), loanSaved2.getId())))
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].loan.returned", is(true)))
+        .andExpect(jsonPath("$[1].loan.returned", is(true)));
+
+        assertEquals(DeviceStatus.AVAILABLE, deviceRepository.findById(deviceSaved1.getId()).orElseThrow().getStatus());
+        assertTrue(loanRepository.findById(loanSaved2.getId()).orElseThrow().isReturned());
+    }
+
+    @Test
+    void batchWithNullItemTest() throws Exception {
+        Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+
+        mockMvc.perform(
+            post("/api/loans/batch")
+                .param("mode", "BEST_EFFORT")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"deviceId\":" + deviceSaved.getId() + ",\"borrowedBy\":\"Juan Perez\"},null]")
+        ).andExpect(status().isBadRequest());
+
+        mockMvc.perform(
+            put("/api/loans/return/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[null]")
+        ).andExpect(status().isBadRequest());
+
+        assertEquals(DeviceStatus.AVAILABLE, deviceRepository.findById(deviceSaved.getId()).orElseThrow().getStatus());
+        assertEquals(0, loanRepository.count());
+    }
+
+    @Test
+    void loanAndReturnPublishStoredVersionsTest() throws Exception {
+        Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        String loan = "{\"deviceId\":" + deviceSaved.getId() + ",\"borrowedBy\":\"Juan Perez\"}";
+
+        String created = mockMvc.perform(
+            post("/api/loans").contentType(MediaType.APPLICATION_JSON).content(loan)
+        ).andExpect(status().isCreated())
+        .andReturn().getResponse().getContentAsString();
+        assertPublishedVersions(deviceSaved.getId(), objectMapper.readValue(created, Loan.class).getId());
+
+        mockMvc.perform(
+            put("/api/loans/" + objectMapper.readValue(created, Loan.class).getId() + "/return")
+        ).andExpect(status().isOk());
+        assertPublishedVersions(deviceSaved.getId(), objectMapper.readValue(created, Loan.class).getId());
+
+        String batch = mockMvc.perform(
+            post("/api/loans/batch").contentType(MediaType.APPLICATION_JSON).content("[" + loan + "]")
+        ).andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+        long batchLoanId = objectMapper.readTree(batch).get(0).get("loan").get("id").asLong();
+        assertPublishedVersions(deviceSaved.getId(), batchLoanId);
+
+        mockMvc.perform(
+            put("/api/loans/return/batch").contentType(MediaType.APPLICATION_JSON).content("[" + batchLoanId + "]")
+        ).andExpect(status().isOk());
+        assertPublishedVersions(deviceSaved.getId(), batchLoanId);
+    }
+
+    // Clients keep the copy with the highest version, so an event must carry the version stored with the change
+    private void assertPublishedVersions(Long deviceId, Long loanId) {
+        DeviceChangedEvent deviceEvent = applicationEvents.stream(DeviceChangedEvent.class)
+                .filter(event -> deviceId.equals(event.deviceId()))
+                .reduce((first, second) -> second).orElseThrow();
+        LoanChangedEvent loanEvent = applicationEvents.stream(LoanChangedEvent.class)
+                .filter(event -> loanId.equals(event.loanId()))
+                .reduce((first, second) -> second).orElseThrow();
+
+        assertEquals(deviceRepository.findById(deviceId).orElseThrow().getVersion(), deviceEvent.device().getVersion());
+        assertEquals(loanRepository.findById(loanId).orElseThrow().getVersion(), loanEvent.loan().getVersion());
+    }
+
+    @Test
+    void getLoansByDeviceIdNotModifiedTest() throws Exception {
+        Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+
+        String etag = mockMvc.perform(
+            get("/api/loans/device/" + deviceSaved.getId())
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(0)))
+        .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(
+            get("/api/loans/device/" + deviceSaved.getId()).header("If-None-Match", etag)
+        ).andExpect(status().isNotModified());
+
+        mockMvc.perform(
+            post("/api/loans")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new Loan(null, deviceSaved.getId(), "Juan Perez", 0L, 0L, false)))
+        ).andExpect(status().isCreated());
+
+        mockMvc.perform(
+            get("/api/loans/device/" + deviceSaved.getId()).header("If-None-Match", etag)
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)));
+    }
+
     @Test
     void getLoansByDeviceIdTest() throws Exception {
         Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
@@ -132,4 +511,78 @@ class LoanControllerTest {
         ).andExpect(status().isOk())
         .andExpect(jsonPath("$", hasSize(1)));
     }
-}
\ No newline at end of file
+
+    @Test
+    void getLoansByDeviceIdIncludeArchivedTest() throws Exception {
+        Device deviceSaved = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        long longAgo = System.currentTimeMillis() - 200 * 86_400_000L;
+        loanRepository.save(new Loan(null, deviceSaved.getId(), "Juan Perez", longAgo, longAgo + 86_400_000L, true));
+        loanRepository.save(new Loan(null, deviceSaved.getId(), "Ana Gomez", System.currentTimeMillis(), 0L, false));
+
+        mockMvc.perform(
+            post("/api/loans/archive").param("olderThan", "P90D")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$.archivedLoans", is(1)));
+
+        mockMvc.perform(
+            get("/api/loans/device/" + deviceSaved.getId())
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].borrowedBy", is("Ana Gomez")));
+
+        mockMvc.perform(
+            get("/api/loans/device/" + deviceSaved.getId()).param("includeArchived", "true")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(2)))
+        .andExpect(jsonPath("$[0].borrowedBy", is("Juan Perez")))
+        .andExpect(jsonPath("$[0].returned", is(true)));
+    }
+
+    @Test
+    void archiveLoansInvalidAgeTest() throws Exception {
+        mockMvc.perform(
+            post("/api/loans/archive").param("olderThan", "-P1D")
+        ).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getLoansByBorrowerTest() throws Exception {
+        // Borrower counts outlive the deleteAll of other tests in this context, so use a fresh name
+        String borrower = "Ana Gomez " + System.nanoTime();
+        Device deviceSaved1 = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        Device deviceSaved2 = deviceRepository.save(new Device(null, "Tablet", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+        loanRepository.save(new Loan(null, deviceSaved1.getId(), "Juan Perez", System.currentTimeMillis(), 0L, false));
+
+        String first = mockMvc.perform(
+            post("/api/loans")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new Loan(null, deviceSaved1.getId(), borrower, 0L, 0L, false)))
+        ).andExpect(status().isCreated())
+        .andReturn().getResponse().getContentAsString();
+        mockMvc.perform(
+            post("/api/loans")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new Loan(null, deviceSaved2.getId(), borrower, 0L, 0L, false)))
+        ).andExpect(status().isCreated());
+        mockMvc.perform(
+            put("/api/loans/" + objectMapper.readValue(first, Loan.class).getId() + "/return")
+        ).andExpect(status().isOk());
+
+        mockMvc.perform(
+            get("/api/loans/borrower/" + borrower)
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(2)));
+
+        mockMvc.perform(
+            get("/api/loans/borrower/" + borrower).param("active", "true")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].deviceId", is(deviceSaved2.getId().intValue())));
+
+        mockMvc.perform(
+            get("/api/loans/borrower/" + borrower + "/count")
+        ).andExpect(status().isOk())
+        .andExpect(jsonPath("$.openLoans", is(1)))
+        .andExpect(jsonPath("$.maxPerBorrower", is(0)));
+    }
+}
@@ -0,0 +1,99 @@
+package edu.unac.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeFeedTest {
+    private ChangeFeed feed;
+
+    @AfterEach
+    void tearDown() {
+        feed.shutdown();
+    }
+
+    @Test
+    void slowSubscriber_shouldNotHoldUpOthersAndIsDroppedAfterSendTimeout() throws Exception {
+        feed = new ChangeFeed(new ObjectMapper(), 10, Duration.ofMillis(50), Duration.ofMinutes(30), Duration.ofMillis(200));
+        StubEmitter slow = new StubEmitter(new CountDownLatch(1));
+        StubEmitter fast = new StubEmitter(new CountDownLatch(0));
+        feed.subscribe(slow, null);
+        feed.subscribe(fast, null);
+
+        feed.onDeviceChanged(DeviceChangedEvent.deleted(1L));
+        feed.onDeviceChanged(DeviceChangedEvent.deleted(2L));
+
+        assertTrue(fast.awaitEvents(2), "fast subscriber should get both changes while the slow one is stuck");
+        assertTrue(slow.completed.await(5, TimeUnit.SECONDS), "stuck subscriber should be dropped");
+        assertFalse(fast.completed.await(0, TimeUnit.SECONDS));
+        slow.release.countDown();
+    }
+
+    @Test
+    void subscriberFurtherBehindThanBuffer_shouldBeDropped() throws Exception {
+        feed = new ChangeFeed(new ObjectMapper(), 2, Duration.ofMinutes(1), Duration.ofMinutes(30), Duration.ofMinutes(1));
+        StubEmitter slow = new StubEmitter(new CountDownLatch(1));
+        feed.subscribe(slow, null);
+
+        feed.onDeviceChanged(DeviceChangedEvent.deleted(1L));
+        assertTrue(slow.sending.await(5, TimeUnit.SECONDS));
+
+        // The first change is held by the blocked send and two fill the queue, so the next one cannot be queued
+        for (long id = 2; id <= 4; id++) {
+            feed.onDeviceChanged(DeviceChangedEvent.deleted(id));
+        }
+
+        assertTrue(slow.completed.await(5, TimeUnit.SECONDS), "overflowing subscriber should be dropped");
+        slow.release.countDown();
+    }
+
+    // Records sent events instead of writing them; sends block until release is counted down
+    private static class StubEmitter extends SseEmitter {
+        private final CountDownLatch release;
+        private final CountDownLatch sending = new CountDownLatch(1);
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private final List<String> events = new CopyOnWriteArrayList<>();
+
+        private StubEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            sending.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String text = builder.build().stream()
+                    .map(part -> String.valueOf(part.getData()))
+                    .reduce("", String::concat);
+            if (text.contains("event:device")) {
+                events.add(text);
+            }
+        }
+
+        @Override
+        public void complete() {
+            completed.countDown();
+        }
+
+        private boolean awaitEvents(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (events.size() < count && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            return events.size() >= count;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package edu.unac.ledger;
+
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.domain.Loan;
+import edu.unac.repository.DeviceRepository;
+import edu.unac.repository.LoanRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class LedgerReplayerTest {
+    // Far above anything the other tests allocate, so replayed rows cannot collide with theirs
+    private static final long BASE_ID = 5_000_000L;
+
+    @Autowired
+    private LedgerReplayer ledgerReplayer;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replayRebuildsLatestStateTest() throws Exception {
+        Device laptop = new Device(BASE_ID + 1, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, 1_000L);
+        Device projector = new Device(BASE_ID + 2, "Projector", "Multimedia", "Room101", DeviceStatus.AVAILABLE, 1_000L);
+        Loan loan = new Loan(BASE_ID + 10, laptop.getId(), "Juan Perez", 2_000L, 0L, false, 9_000L, false, 0L);
+        try (Ledger ledger = Ledger.open(dir, 1 << 20, 0)) {
+            ledger.append(List.of(
+                    LedgerRecord.of(LedgerRecord.Kind.DEVICE_REGISTERED, laptop, 1_000L),
+                    LedgerRecord.of(LedgerRecord.Kind.DEVICE_REGISTERED, projector, 1_000L)));
+            laptop.setStatus(DeviceStatus.LOANED);
+            ledger.append(List.of(
+                    LedgerRecord.of(LedgerRecord.Kind.DEVICE_STATUS_CHANGED, laptop, 2_000L),
+                    LedgerRecord.of(LedgerRecord.Kind.LOAN_CREATED, loan, 2_000L)));
+
+            // A return whose transaction rolled back must not be applied
+            Loan returned = loan.copy();
+            returned.setReturned(true);
+            returned.setEndDate(3_000L);
+            Device available = laptop.copy();
+            available.setStatus(DeviceStatus.AVAILABLE);
+            long batch = ledger.append(List.of(
+                    LedgerRecord.of(LedgerRecord.Kind.DEVICE_STATUS_CHANGED, available, 3_000L),
+                    LedgerRecord.of(LedgerRecord.Kind.LOAN_RETURNED, returned, 3_000L)));
+            ledger.append(List.of(LedgerRecord.aborted(batch, 3_000L)));
+
+            ledger.append(List.of(LedgerRecord.deviceDeleted(projector.getId(), 4_000L)));
+        }
+
+        LedgerReplayReport report = ledgerReplayer.replay(dir);
+
+        assertEquals(8, report.records());
+        assertEquals(1, report.devices());
+        assertEquals(1, report.loans());
+        assertEquals(1, report.deletedDevices());
+        assertEquals(1, report.abortedBatches());
+        assertEquals(DeviceStatus.LOANED, deviceRepository.findById(laptop.getId()).orElseThrow().getStatus());
+        assertFalse(deviceRepository.existsById(projector.getId()));
+        Loan replayed = loanRepository.findById(loan.getId()).orElseThrow();
+        assertFalse(replayed.isReturned());
+        assertEquals(9_000L, replayed.getDueDate());
+
+        ledgerReplayer.replay(dir);
+        assertEquals(DeviceStatus.LOANED, deviceRepository.findById(laptop.getId()).orElseThrow().getStatus());
+
+        // New rows are numbered past the replayed ones
+        Device registered = deviceRepository.save(new Device(null, "Tablet", "Electronics", "Office", DeviceStatus.AVAILABLE, 5_000L));
+        assertTrue(registered.getId() > projector.getId());
+
+        loanRepository.deleteById(loan.getId());
+        deviceRepository.deleteById(laptop.getId());
+        deviceRepository.deleteById(registered.getId());
+    }
+}
@@ -0,0 +1,141 @@
+package edu.unac.ledger;
+
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.domain.Loan;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LedgerTest {
+    private static final int SMALL_SEGMENT = LedgerCodec.HEADER_BYTES + Ledger.MAX_RECORD_BYTES;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void appendAndReadRoundTripTest() throws IOException {
+        Device device = new Device(7L, "Laptop", "Electronics", "Office", DeviceStatus.LOANED, 1_000L);
+        device.setVersion(2L);
+        Loan loan = new Loan(9L, 7L, "Juan Pérez", 2_000L, 0L, false, 3_000L, true, 1L);
+
+        try (Ledger ledger = Ledger.open(dir, SMALL_SEGMENT, 1)) {
+            assertEquals(1, ledger.append(List.of(
+                    LedgerRecord.of(LedgerRecord.Kind.DEVICE_STATUS_CHANGED, device, 10L),
+                    LedgerRecord.of(LedgerRecord.Kind.LOAN_OVERDUE, loan, 11L))));
+            assertEquals(3, ledger.append(List.of(LedgerRecord.deviceDeleted(8L, 12L))));
+        }
+
+        List<LedgerRecord> records = readAll();
+        assertEquals(3, records.size());
+        LedgerRecord first = records.get(0);
+        assertEquals(1, first.sequence());
+        assertEquals(1, first.batch());
+        assertEquals(10L, first.timestamp());
+        assertEquals(device, first.device());
+        LedgerRecord second = records.get(1);
+        assertEquals(2, second.sequence());
+        assertEquals(1, second.batch());
+        assertEquals(loan, second.loan());
+        LedgerRecord third = records.get(2);
+        assertEquals(LedgerRecord.Kind.DEVICE_DELETED, third.kind());
+        assertEquals(8L, third.entityId());
+        assertEquals(3, third.batch());
+        assertNull(third.device());
+    }
+
+    @Test
+    void appendRollsOverIntoNewSegmentsTest() throws IOException {
+        try (Ledger ledger = Ledger.open(dir, SMALL_SEGMENT, 0)) {
+            for (long id = 1; id <= 2_000; id++) {
+                ledger.append(List.of(loanCreated(id)));
+            }
+        }
+
+        List<LedgerRecord> records = readAll();
+        assertEquals(2_000, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(i + 1, records.get(i).sequence());
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            assertTrue(files.count() > 1);
+        }
+    }
+
+    @Test
+    void reopenContinuesTheSequenceTest() throws IOException {
+        try (Ledger ledger = Ledger.open(dir, SMALL_SEGMENT, 0)) {
+            ledger.append(List.of(loanCreated(1), loanCreated(2), loanCreated(3)));
+        }
+
+        try (Ledger ledger = Ledger.open(dir, SMALL_SEGMENT, 0)) {
+            assertEquals(4, ledger.nextSequence());
+            assertEquals(4, ledger.append(List.of(loanCreated(4))));
+        }
+        assertEquals(4, readAll().size());
+    }
+
+    @Test
+    void openDropsATornRecordAtTheEndTest() throws IOException {
+        try (Ledger ledger = Ledger.open(dir, SMALL_SEGMENT, 0)) {
+            ledger.append(List.of(loanCreated(1), loanCreated(2), loanCreated(3)));
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(dir)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        List<LedgerRecord> intact = readAll();
+        long thirdRecordEnd;
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            int length = file.readInt();
+            long secondRecordStart = LedgerCodec.HEADER_BYTES + length;
+            file.seek(secondRecordStart);
+            long thirdRecordStart = secondRecordStart + LedgerCodec.HEADER_BYTES + file.readInt();
+            file.seek(thirdRecordStart);
+            thirdRecordEnd = thirdRecordStart + LedgerCodec.HEADER_BYTES + file.readInt();
+            file.seek(thirdRecordEnd - 1);
+            file.write(0x5A);
+        }
+
+        try (Ledger ledger = Ledger.open(dir, SMALL_SEGMENT, 0)) {
+            assertEquals(3, ledger.nextSequence());
+            ledger.append(List.of(loanCreated(30)));
+        }
+
+        List<LedgerRecord> records = readAll();
+        assertEquals(3, records.size());
+        assertEquals(intact.subList(0, 2), records.subList(0, 2));
+        assertEquals(30L, records.get(2).entityId());
+    }
+
+    @Test
+    void appendRejectsOversizedRecordTest() throws IOException {
+        Loan loan = new Loan(1L, 1L, "x".repeat(Ledger.MAX_RECORD_BYTES), 0L, 0L, false);
+
+        try (Ledger ledger = Ledger.open(dir, SMALL_SEGMENT, 0)) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> ledger.append(List.of(LedgerRecord.of(LedgerRecord.Kind.LOAN_CREATED, loan, 0L))));
+            assertEquals(1, ledger.nextSequence());
+        }
+    }
+
+    private List<LedgerRecord> readAll() throws IOException {
+        List<LedgerRecord> records = new ArrayList<>();
+        Ledger.read(dir, records::add);
+        return records;
+    }
+
+    private static LedgerRecord loanCreated(long id) {
+        return LedgerRecord.of(LedgerRecord.Kind.LOAN_CREATED,
+                new Loan(id, 1L, "Borrower " + id, 1_000L, 0L, false, 2_000L, false, 0L), 1_000L);
+    }
+}
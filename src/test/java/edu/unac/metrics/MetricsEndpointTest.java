@@ -0,0 +1,53 @@
+package edu.unac.metrics;
+
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.repository.DeviceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+class MetricsEndpointTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @BeforeEach
+    void setup() {
+        deviceRepository.deleteAll();
+    }
+
+    @Test
+    void prometheusEndpointExposesLayeredMetricsTest() throws Exception {
+        Device device = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis()));
+
+        mockMvc.perform(get("/api/devices")).andExpect(status().isOk());
+        // The unfiltered list is served from the device list snapshot; a filtered one still queries per request
+        mockMvc.perform(get("/api/devices").param("status", "AVAILABLE")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/devices/" + device.getId())).andExpect(status().isOk());
+
+        mockMvc.perform(
+            get("/actuator/prometheus")
+        ).andExpect(status().isOk())
+        .andExpect(content().string(containsString("http_server_requests_seconds_count{")))
+        .andExpect(content().string(containsString("inventory_service_seconds_count{application=\"inventory\",class=\"DeviceService\",exception=\"none\",method=\"getDevicesPage\"}")))
+        .andExpect(content().string(containsString("spring_data_repository_invocations_seconds_count{application=\"inventory\",exception=\"None\",method=\"findById\",repository=\"DeviceRepository\",state=\"SUCCESS\"}")))
+        .andExpect(content().string(containsString("inventory_repository_rows_sum{application=\"inventory\",method=\"findBy\",repository=\"DeviceRepository\"}")))
+        .andExpect(content().string(containsString("inventory_http_sql_statements_count{application=\"inventory\",method=\"GET\",uri=\"/api/devices\"}")))
+        .andExpect(content().string(containsString("cache_gets_total{application=\"inventory\",cache=\"devices\"")));
+    }
+}
@@ -0,0 +1,19 @@
+package edu.unac.repository;
+
+import edu.unac.metrics.SqlStatementCounter;
+
+// Still counts like the production inspector, and keeps the last statement prepared on the current thread so
+// QueryPlanTest can check the plan of the SQL Hibernate actually generates
+public class CapturingStatementInspector extends SqlStatementCounter {
+    private static final ThreadLocal<String> LAST = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        LAST.set(sql);
+        return super.inspect(sql);
+    }
+
+    static String last() {
+        return LAST.get();
+    }
+}
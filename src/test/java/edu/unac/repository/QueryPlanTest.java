@@ -0,0 +1,109 @@
+package edu.unac.repository;
+
+import edu.unac.domain.DeviceStatus;
+import edu.unac.service.DeviceService;
+import edu.unac.service.LoanService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=edu.unac.repository.CapturingStatementInspector")
+class QueryPlanTest {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Test
+    void existsLoanByDeviceIdUsesDeviceReturnedIndexTest() {
+        String plan = explain(DeviceRepository.EXISTS_OPEN_LOAN_SQL.replace(":deviceId", "1"));
+
+        assertTrue(plan.contains("IDX_LOAN_DEVICE_RETURNED"), plan);
+        assertFalse(deviceRepository.existsLoanByDeviceId(-1L));
+    }
+
+    @Test
+    void findByDeviceIdUsesDeviceReturnedIndexTest() {
+        loanRepository.findByDeviceId(1L);
+        String plan = explainLast(1L);
+
+        assertTrue(plan.contains("IDX_LOAN_DEVICE_RETURNED"), plan);
+    }
+
+    @Test
+    void findByBorrowerUsesBorrowerReturnedIndexTest() {
+        loanService.getLoansByBorrower("Alice", false, null, 10);
+        String plan = explainLast("Alice", 11);
+
+        assertTrue(plan.contains("IDX_LOAN_BORROWER_RETURNED"), plan);
+    }
+
+    @Test
+    void findActiveByBorrowerUsesBorrowerReturnedIndexTest() {
+        loanService.getLoansByBorrower("Alice", true, 10L, 10);
+        String plan = explainLast("Alice", 10L, false, 11);
+
+        // All three conditions narrow the index range, so only the borrower's open loans are read
+        String range = indexCondition(plan);
+        assertTrue(range.startsWith("IDX_LOAN_BORROWER_RETURNED"), plan);
+        assertTrue(range.contains("BORROWED_BY = "), plan);
+        assertTrue(range.contains("RETURNED = "), plan);
+        assertTrue(range.contains("ID > "), plan);
+    }
+
+    @Test
+    void filterDevicesUsesStatusTypeLocationIndexTest() {
+        deviceService.getDevicesPage(null, 10, DeviceStatus.AVAILABLE, "Multimedia", "Room101");
+        String plan = explainLast(DeviceStatus.AVAILABLE.ordinal(), "Multimedia", "Room101", 11);
+
+        assertTrue(plan.contains("IDX_DEVICE_STATUS_TYPE_LOCATION"), plan);
+    }
+
+    @Test
+    void findOverdueCandidatesUsesOverdueScanIndexTest() {
+        String plan = explain(LoanRepository.OVERDUE_CANDIDATES_SQL
+                .replace(":afterDueDate", "1").replace(":afterId", "0")
+                .replace(":now", "1000").replace(":limit", "500"));
+
+        assertTrue(plan.contains("IDX_LOAN_OVERDUE_SCAN"), plan);
+    }
+
+    @Test
+    void findArchiveCandidatesUsesArchiveScanIndexTest() {
+        String plan = explain(LoanRepository.ARCHIVE_CANDIDATES_SQL
+                .replace(":cutoff", "1000").replace(":afterDeviceId", "0")
+                .replace(":afterId", "0").replace(":limit", "1000"));
+
+        // Walking the index in (device, id) order means no chunk has to sort the returned loans
+        assertTrue(plan.contains("IDX_LOAN_ARCHIVE_SCAN"), plan);
+        assertTrue(plan.contains("INDEX SORTED"), plan);
+    }
+
+    private String explain(String sql) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class).toUpperCase();
+    }
+
+    // Explains the last statement Hibernate prepared on this thread, with its parameters bound in order
+    private String explainLast(Object... parameters) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + CapturingStatementInspector.last(), String.class, parameters).toUpperCase();
+    }
+
+    // The index comment of the plan, e.g. "IDX_NAME: COLUMN = ?1 AND ..."
+    private static String indexCondition(String plan) {
+        int start = plan.indexOf("/* PUBLIC.") + "/* PUBLIC.".length();
+        return plan.substring(start, plan.indexOf("*/", start)).replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,151 @@
+package edu.unac.service;
+
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.domain.Loan;
+import edu.unac.event.DeviceChangedEvent;
+import edu.unac.event.LoanChangedEvent;
+import edu.unac.repository.DeviceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AnalyticsServiceTest {
+    private static final long HOUR = 3_600_000L;
+    private static final long DAY = 24 * HOUR;
+    // Noon of day 20_000 after the epoch, so the 7 day window starts 6.5 days earlier
+    private static final long NOW = 20_000 * DAY + 12 * HOUR;
+
+    private DeviceRepository deviceRepository;
+    private AnalyticsService analyticsService;
+
+    @BeforeEach
+    void setUp() {
+        deviceRepository = mock(DeviceRepository.class);
+        analyticsService = new AnalyticsService(deviceRepository, mock(LoanService.class));
+        analyticsService.onDeviceChanged(DeviceChangedEvent.registered(device(1L, "Electronics")));
+        analyticsService.onDeviceChanged(DeviceChangedEvent.registered(device(2L, "Electronics")));
+    }
+
+    @Test
+    void getDeviceUsage_shouldCombineReturnedAndOpenLoans() {
+        Loan returned = loan(10L, 1L, "Ana", NOW - 2 * DAY, NOW - DAY);
+        analyticsService.onLoanChanged(LoanChangedEvent.created(returned));
+        analyticsService.onLoanChanged(LoanChangedEvent.returned(returned));
+        analyticsService.onLoanChanged(LoanChangedEvent.created(loan(11L, 1L, "Ben", NOW - 6 * HOUR, 0)));
+
+        UsageReport report = analyticsService.getDeviceUsage(1L, NOW).orElseThrow();
+
+        assertEquals(2, report.totalLoans());
+        assertEquals(1, report.activeLoans());
+        assertEquals(DAY, report.meanLoanDurationMillis());
+        UsageReport.Window week = report.windows().get(0);
+        assertEquals(7, week.days());
+        assertEquals(2, week.loans());
+        assertEquals(30 * HOUR, week.loanedMillis());
+        assertEquals(30.0 / 156, week.utilization(), 1e-9);
+        assertEquals(2 * 7.0 / 30, report.loansPerWeek(), 1e-9);
+        assertEquals(List.of(new UsageReport.BorrowerCount("Ana", 1), new UsageReport.BorrowerCount("Ben", 1)),
+                report.topBorrowers());
+    }
+
+    @Test
+    void getTypeUsage_shouldSpreadUtilizationOverEveryDeviceOfTheType() {
+        analyticsService.onLoanChanged(LoanChangedEvent.created(loan(10L, 1L, "Ana", NOW - 6 * HOUR, 0)));
+        analyticsService.onLoanChanged(LoanChangedEvent.created(loan(11L, 2L, "Ana", NOW - 3 * HOUR, 0)));
+
+        UsageReport report = analyticsService.getTypeUsage("Electronics", NOW).orElseThrow();
+
+        assertEquals(2, report.devices());
+        assertEquals(2, report.activeLoans());
+        assertEquals(9.0 / (156 * 2), report.windows().get(0).utilization(), 1e-9);
+        assertEquals(List.of(new UsageReport.BorrowerCount("Ana", 2)), report.topBorrowers());
+        assertTrue(analyticsService.getTypeUsage("Furniture", NOW).isEmpty());
+    }
+
+    @Test
+    void getDeviceUsage_loansOlderThanTheWindows_shouldOnlyCountInTotals() {
+        Loan old = loan(10L, 1L, "Ana", NOW - 40 * DAY, NOW - 35 * DAY);
+        analyticsService.onLoanChanged(LoanChangedEvent.created(old));
+        analyticsService.onLoanChanged(LoanChangedEvent.returned(old));
+        // Still open, so it covers both windows completely
+        analyticsService.onLoanChanged(LoanChangedEvent.created(loan(11L, 1L, "Ben", NOW - 40 * DAY, 0)));
+
+        UsageReport report = analyticsService.getDeviceUsage(1L, NOW).orElseThrow();
+
+        assertEquals(2, report.totalLoans());
+        assertEquals(5 * DAY, report.meanLoanDurationMillis());
+        for (UsageReport.Window window : report.windows()) {
+            assertEquals(0, window.loans());
+            assertEquals(1.0, window.utilization(), 1e-9);
+        }
+    }
+
+    @Test
+    void getDeviceUsage_ringMovedPastAnOpenLoan_shouldStillCountIt() {
+        analyticsService.onLoanChanged(LoanChangedEvent.created(loan(10L, 1L, "Ana", NOW - 10 * DAY, 0)));
+        Loan later = loan(11L, 2L, "Ben", NOW + 25 * DAY, NOW + 26 * DAY);
+        analyticsService.onLoanChanged(LoanChangedEvent.created(later));
+        analyticsService.onLoanChanged(LoanChangedEvent.returned(later));
+
+        UsageReport.Window month = analyticsService.getDeviceUsage(1L, NOW + 30 * DAY).orElseThrow().windows().get(1);
+
+        assertEquals(1.0, month.utilization(), 1e-9);
+    }
+
+    @Test
+    void onLoanChanged_returnBeforeCreation_shouldCountTheLoanOnce() {
+        Loan loan = loan(10L, 1L, "Ana", NOW - 2 * HOUR, NOW - HOUR);
+
+        analyticsService.onLoanChanged(LoanChangedEvent.returned(loan));
+        analyticsService.onLoanChanged(LoanChangedEvent.created(loan));
+
+        UsageReport report = analyticsService.getDeviceUsage(1L, NOW).orElseThrow();
+        assertEquals(1, report.totalLoans());
+        assertEquals(0, report.activeLoans());
+        assertEquals(HOUR, report.windows().get(0).loanedMillis());
+    }
+
+    @Test
+    void topBorrowers_shouldKeepTheFiveMostFrequent() {
+        String[] borrowers = {"A", "B", "C", "D", "E", "F", "F", "F", "E", "G", "G", "G", "G"};
+        for (int i = 0; i < borrowers.length; i++) {
+            analyticsService.onLoanChanged(LoanChangedEvent.created(loan(100L + i, 1L, borrowers[i], NOW - DAY, 0)));
+        }
+
+        List<String> top = analyticsService.getDeviceUsage(1L, NOW).orElseThrow().topBorrowers().stream()
+                .map(UsageReport.BorrowerCount::borrowedBy)
+                .toList();
+
+        assertEquals(List.of("G", "F", "E", "A", "B"), top);
+    }
+
+    @Test
+    void onLoanChanged_deviceWithoutRegistrationEvent_shouldLookUpItsType() {
+        when(deviceRepository.findById(3L)).thenReturn(Optional.of(device(3L, "Furniture")));
+
+        analyticsService.onLoanChanged(LoanChangedEvent.created(loan(10L, 3L, "Ana", NOW - HOUR, 0)));
+        analyticsService.onLoanChanged(LoanChangedEvent.returned(loan(10L, 3L, "Ana", NOW - HOUR, NOW)));
+
+        assertEquals(1, analyticsService.getTypeUsage("Furniture", NOW).orElseThrow().totalLoans());
+        verify(deviceRepository, times(1)).findById(3L);
+    }
+
+    @Test
+    void getDeviceUsage_unknownDevice_shouldBeEmpty() {
+        assertTrue(analyticsService.getDeviceUsage(99L, NOW).isEmpty());
+    }
+
+    private static Device device(Long id, String type) {
+        return new Device(id, "Device " + id, type, "Office", DeviceStatus.AVAILABLE, 0L);
+    }
+
+    private static Loan loan(Long id, Long deviceId, String borrowedBy, long startDate, long endDate) {
+        return new Loan(id, deviceId, borrowedBy, startDate, endDate, endDate != 0);
+    }
+}
@@ -0,0 +1,40 @@
+package edu.unac.service;
+
+import edu.unac.repository.LoanRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BorrowerLoanCountsTest {
+
+    @Test
+    void afterSingletonsInstantiated_shouldLoadOpenLoansAndEnforceLimit() {
+        LoanRepository loanRepository = mock(LoanRepository.class);
+        when(loanRepository.countOpenByBorrower()).thenReturn(List.of(openLoans("Alice", 2), openLoans("Bob", 1)));
+        BorrowerLoanCounts counts = new BorrowerLoanCounts(loanRepository, 2);
+
+        counts.afterSingletonsInstantiated();
+        counts.claim("Bob");
+
+        assertEquals(2, counts.openLoans("Alice"));
+        assertEquals(2, counts.openLoans("Bob"));
+        assertThrows(IllegalStateException.class, () -> counts.claim("Alice"));
+    }
+
+    private LoanRepository.OpenLoanCount openLoans(String borrower, long open) {
+        return new LoanRepository.OpenLoanCount() {
+            @Override
+            public String getBorrowedBy() {
+                return borrower;
+            }
+
+            @Override
+            public long getOpen() {
+                return open;
+            }
+        };
+    }
+}
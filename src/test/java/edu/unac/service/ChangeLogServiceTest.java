@@ -0,0 +1,92 @@
+package edu.unac.service;
+
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "inventory.changes.retention=PT0S")
+class ChangeLogServiceTest {
+    @Autowired
+    private ChangeLogService changeLogService;
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void compactionExpiresOldChangesTest() throws Exception {
+        long since = changeLogService.getDeviceChanges(null, 10).nextSince();
+        Device device = deviceService.registerDevice(new Device(null, "Laptop", "Electronics", "Office", null, 0L));
+        deviceService.updateDeviceStatus(device.getId(), DeviceStatus.MAINTENANCE);
+        Thread.sleep(5);
+
+        changeLogService.compact();
+
+        assertThrows(ChangesCompactedException.class, () -> changeLogService.getDeviceChanges(since, 10));
+        long restart = changeLogService.getDeviceChanges(null, 10).nextSince();
+        assertTrue(restart >= since + 2);
+        assertEquals(0, changeLogService.getDeviceChanges(restart, 10).changes().size());
+    }
+
+    @Test
+    void sinceFromBeforeRestartTest() {
+        // A client still holding a sequence from a run whose in-memory database got further
+        long latest = changeLogService.getDeviceChanges(null, 10).nextSince();
+
+        assertThrows(ChangesCompactedException.class, () -> changeLogService.getDeviceChanges(latest + 5000, 10));
+        assertThrows(ChangesCompactedException.class, () -> changeLogService.getLoanChanges(latest + 1, 10));
+        assertEquals(0, changeLogService.getDeviceChanges(latest, 10).changes().size());
+    }
+
+    @Test
+    void laterCommitStaysHiddenUntilEarlierSequenceCompletesTest() throws Exception {
+        long since = changeLogService.getDeviceChanges(null, 10).nextSince();
+        CountDownLatch assigned = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // Takes its sequence, then waits before committing
+        CompletableFuture<Device> slow = CompletableFuture.supplyAsync(() -> transactionTemplate.execute(status -> {
+            Device device = deviceService.registerDevice(new Device(null, "Projector", "Multimedia", "Room 101", null, 0L));
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    assigned.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            return device;
+        }));
+        assertTrue(assigned.await(10, TimeUnit.SECONDS));
+        Device fast = deviceService.registerDevice(new Device(null, "Camera", "Photo", "Lab", null, 0L));
+
+        assertEquals(0, changeLogService.getDeviceChanges(since, 10).changes().size());
+        assertEquals(since, changeLogService.getDeviceChanges(null, 10).nextSince());
+
+        release.countDown();
+        Device projector = slow.get(10, TimeUnit.SECONDS);
+        List<Long> ids = changeLogService.getDeviceChanges(since, 10).changes().stream()
+                .map(ChangeSet.Change::id)
+                .toList();
+        assertEquals(List.of(projector.getId(), fast.getId()), ids);
+    }
+}
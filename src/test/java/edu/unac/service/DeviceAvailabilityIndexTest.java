@@ -0,0 +1,102 @@
+package edu.unac.service;
+
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.event.DeviceChangedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceAvailabilityIndexTest {
+    private DeviceAvailabilityIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new DeviceAvailabilityIndex();
+        index.onDeviceChanged(DeviceChangedEvent.registered(device(1L, "Multimedia", "Room 101", DeviceStatus.AVAILABLE)));
+        index.onDeviceChanged(DeviceChangedEvent.registered(device(2L, "Multimedia", "Office", DeviceStatus.AVAILABLE)));
+        index.onDeviceChanged(DeviceChangedEvent.registered(device(3L, "Electronics", "Room 101", DeviceStatus.AVAILABLE)));
+        index.onDeviceChanged(DeviceChangedEvent.statusChanged(device(4L, "Multimedia", "Room 101", DeviceStatus.LOANED)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void availableIds_shouldIntersectStatusTypeAndLocation() {
+        assertEquals(List.of(1L, 2L, 3L), index.availableIds(null, null));
+        assertEquals(List.of(1L, 2L), index.availableIds("Multimedia", null));
+        assertEquals(List.of(1L, 3L), index.availableIds(null, "Room 101"));
+        assertEquals(List.of(1L), index.availableIds("Multimedia", "Room 101"));
+        assertEquals(List.of(), index.availableIds("Furniture", null));
+    }
+
+    @Test
+    void statusChanges_shouldMoveDevicesBetweenStatuses() {
+        index.onDeviceChanged(DeviceChangedEvent.statusChanged(device(1L, "Multimedia", "Room 101", DeviceStatus.LOANED)));
+        index.onDeviceChanged(DeviceChangedEvent.statusChanged(device(4L, "Multimedia", "Room 101", DeviceStatus.AVAILABLE)));
+        index.onDeviceChanged(DeviceChangedEvent.deleted(2L));
+
+        assertEquals(List.of(4L), index.availableIds("Multimedia", null));
+        assertTrue(index.isUnavailable(1L));
+        assertFalse(index.isUnavailable(4L));
+        // Deleted and never seen devices are unknown, not unavailable
+        assertEquals(Optional.empty(), index.statusOf(2L));
+        assertFalse(index.isUnavailable(99L));
+    }
+
+    @Test
+    void transaction_shouldApplyBeforeCommitAndRestoreOnRollback() {
+        TransactionSynchronizationManager.initSynchronization();
+        index.onDeviceChanged(DeviceChangedEvent.statusChanged(device(1L, "Multimedia", "Room 101", DeviceStatus.LOANED)));
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+
+        assertEquals(Optional.of(DeviceStatus.AVAILABLE), index.statusOf(1L));
+        synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+        assertEquals(Optional.of(DeviceStatus.LOANED), index.statusOf(1L));
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertEquals(Optional.of(DeviceStatus.AVAILABLE), index.statusOf(1L));
+    }
+
+    @Test
+    void rollback_shouldNotUndoLaterChange() {
+        TransactionSynchronizationManager.initSynchronization();
+        index.onDeviceChanged(DeviceChangedEvent.statusChanged(device(1L, "Multimedia", "Room 101", DeviceStatus.LOANED)));
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+        TransactionSynchronizationManager.clearSynchronization();
+
+        // Another change outside the failing transaction, applied before it completes
+        index.onDeviceChanged(DeviceChangedEvent.statusChanged(device(1L, "Multimedia", "Room 101", DeviceStatus.MAINTENANCE)));
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertEquals(Optional.of(DeviceStatus.MAINTENANCE), index.statusOf(1L));
+    }
+
+    @Test
+    void rebuild_shouldReplaceContents() {
+        index.rebuild(cursor -> cursor == null
+                ? List.of(device(5L, "Photo", "Lab", DeviceStatus.AVAILABLE), device(6L, "Photo", "Lab", DeviceStatus.LOANED))
+                : List.of());
+
+        assertEquals(List.of(5L), index.availableIds(null, null));
+        assertEquals(Optional.empty(), index.statusOf(1L));
+        assertTrue(index.isUnavailable(6L));
+    }
+
+    private static Device device(Long id, String type, String location, DeviceStatus status) {
+        return new Device(id, "Device " + id, type, location, status, 0L);
+    }
+}
@@ -0,0 +1,52 @@
+package edu.unac.service;
+
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceCacheTest {
+    private final DeviceCache cache = new DeviceCache(100, Duration.ofMinutes(5));
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void get_shouldServeLoadedDeviceFromCache() {
+        cache.get(1L, id -> load(id, DeviceStatus.AVAILABLE));
+        Optional<Device> cached = cache.get(1L, id -> load(id, DeviceStatus.LOANED));
+
+        assertEquals(DeviceStatus.AVAILABLE, cached.orElseThrow().getStatus());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void get_invalidatedWhileLoading_shouldNotCacheStaleRow() {
+        // The row is read, then another transaction commits and invalidates before the load is stored
+        Optional<Device> stale = cache.get(1L, id -> {
+            Optional<Device> row = load(id, DeviceStatus.AVAILABLE);
+            cache.invalidate(id);
+            return row;
+        });
+        Optional<Device> fresh = cache.get(1L, id -> load(id, DeviceStatus.LOANED));
+
+        assertEquals(DeviceStatus.AVAILABLE, stale.orElseThrow().getStatus());
+        assertEquals(DeviceStatus.LOANED, fresh.orElseThrow().getStatus());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_shouldReturnCopies() {
+        cache.get(1L, id -> load(id, DeviceStatus.AVAILABLE)).orElseThrow().setStatus(DeviceStatus.RETIRED);
+
+        assertEquals(DeviceStatus.AVAILABLE, cache.get(1L, id -> Optional.empty()).orElseThrow().getStatus());
+    }
+
+    private Optional<Device> load(Long id, DeviceStatus status) {
+        loads.incrementAndGet();
+        return Optional.of(new Device(id, "Laptop", "Electronics", "Office", status, 1_000L));
+    }
+}
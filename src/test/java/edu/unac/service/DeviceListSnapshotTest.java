@@ -0,0 +1,172 @@
+package edu.unac.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.event.DeviceChangedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceListSnapshotTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Stands in for the device table
+    private final TreeMap<Long, Device> rows = new TreeMap<>();
+    private int pageQueries;
+    private DeviceListSnapshot snapshot;
+
+    @BeforeEach
+    void setUp() {
+        snapshot = new DeviceListSnapshot(objectMapper, 150);
+        for (long id = 1; id <= 120; id++) {
+            rows.put(id, new Device(id, "Device " + id, "Multimedia", "Room 101", DeviceStatus.AVAILABLE, 1_000L));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void page_shouldMatchJacksonAndKeepGzippedFirstPage() throws IOException {
+        DeviceListSnapshot.EncodedDevicePage first = page(null, CursorPage.DEFAULT_LIMIT).orElseThrow();
+
+        assertArrayEquals(objectMapper.writeValueAsBytes(new ArrayList<>(rows.values()).subList(0, 100)), first.json());
+        assertArrayEquals(first.json(), new GZIPInputStream(new ByteArrayInputStream(first.gzip())).readAllBytes());
+        assertEquals(100L, first.nextCursor());
+
+        DeviceListSnapshot.EncodedDevicePage last = page(first.nextCursor(), CursorPage.DEFAULT_LIMIT).orElseThrow();
+        assertEquals(20, decode(last).size());
+        assertNull(last.nextCursor());
+        assertNull(last.gzip());
+        assertEquals("[]", new String(page(500L, 10).orElseThrow().json()));
+        // The list was read once; later pages come from the snapshot
+        assertEquals(1, pageQueries);
+    }
+
+    @Test
+    void committedChanges_shouldBePatchedInOnNextRead() throws IOException {
+        page(null, 10);
+        rows.get(2L).setStatus(DeviceStatus.LOANED);
+        rows.remove(3L);
+        rows.put(121L, new Device(121L, "Projector", "Multimedia", "Office", DeviceStatus.AVAILABLE, 2_000L));
+        snapshot.onDeviceChanged(DeviceChangedEvent.statusChanged(rows.get(2L)));
+        snapshot.onDeviceChanged(DeviceChangedEvent.deleted(3L));
+        snapshot.onDeviceChanged(DeviceChangedEvent.registered(rows.get(121L)));
+
+        List<Device> devices = decode(page(null, 1000).orElseThrow());
+        assertEquals(new ArrayList<>(rows.values()), devices);
+        assertEquals(1, pageQueries);
+    }
+
+    @Test
+    void changePastFirstPage_shouldKeepItsBytes() throws IOException {
+        DeviceListSnapshot.EncodedDevicePage before = page(null, CursorPage.DEFAULT_LIMIT).orElseThrow();
+        rows.get(110L).setStatus(DeviceStatus.LOANED);
+        snapshot.onDeviceChanged(DeviceChangedEvent.statusChanged(rows.get(110L)));
+
+        assertSame(before, page(null, CursorPage.DEFAULT_LIMIT).orElseThrow());
+        assertEquals(DeviceStatus.LOANED, decode(page(100L, 10).orElseThrow()).get(9).getStatus());
+    }
+
+    @Test
+    void deletingEveryRowPastFirstPage_shouldDropItsNextCursor() throws IOException {
+        page(null, CursorPage.DEFAULT_LIMIT);
+        for (long id = 101; id <= 120; id++) {
+            rows.remove(id);
+            snapshot.onDeviceChanged(DeviceChangedEvent.deleted(id));
+        }
+
+        DeviceListSnapshot.EncodedDevicePage first = page(null, CursorPage.DEFAULT_LIMIT).orElseThrow();
+        assertNull(first.nextCursor());
+        assertEquals(new ArrayList<>(rows.values()), decode(first));
+    }
+
+    @Test
+    void invalidate_shouldRereadWritesThatPublishedNoEvent() throws IOException {
+        page(null, 10);
+        rows.get(1L).setName("Renamed");
+        snapshot.invalidate();
+
+        assertEquals("Renamed", decode(page(null, 10).orElseThrow()).get(0).getName());
+        assertEquals(2, pageQueries);
+    }
+
+    @Test
+    void transaction_shouldHideSnapshotUntilCompleted() throws IOException {
+        page(null, 10);
+        TransactionSynchronizationManager.initSynchronization();
+        rows.get(1L).setName("Renamed");
+        snapshot.onDeviceChanged(DeviceChangedEvent.statusChanged(rows.get(1L)));
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+
+        assertEquals(Optional.empty(), page(null, 10));
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertEquals("Renamed", decode(page(null, 10).orElseThrow()).get(0).getName());
+    }
+
+    @Test
+    void rollback_shouldLeaveSnapshotUnchanged() throws IOException {
+        byte[] before = page(null, 10).orElseThrow().json();
+        TransactionSynchronizationManager.initSynchronization();
+        snapshot.onDeviceChanged(DeviceChangedEvent.statusChanged(rows.get(1L)));
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertArrayEquals(before, page(null, 10).orElseThrow().json());
+    }
+
+    @Test
+    void oversizedList_shouldFallBackUntilDeletion() {
+        for (long id = 121; id <= 151; id++) {
+            rows.put(id, new Device(id, "Device " + id, "Multimedia", "Office", DeviceStatus.AVAILABLE, 1_000L));
+        }
+        assertEquals(Optional.empty(), page(null, 10));
+
+        rows.remove(151L);
+        snapshot.onDeviceChanged(DeviceChangedEvent.deleted(151L));
+        assertTrue(page(null, 10).isPresent());
+    }
+
+    private Optional<DeviceListSnapshot.EncodedDevicePage> page(Long cursor, int limit) {
+        return snapshot.page(cursor, limit, this::pageAfter, this::byIds);
+    }
+
+    private List<Device> pageAfter(Long cursor) {
+        if (cursor == null) {
+            pageQueries++;
+        }
+        return (cursor == null ? rows : rows.tailMap(cursor, false)).values().stream()
+                .limit(50)
+                .map(Device::copy)
+                .toList();
+    }
+
+    private List<Device> byIds(Collection<Long> ids) {
+        return ids.stream().filter(rows::containsKey).map(id -> rows.get(id).copy()).toList();
+    }
+
+    private List<Device> decode(DeviceListSnapshot.EncodedDevicePage page) throws IOException {
+        return objectMapper.readValue(page.json(), new TypeReference<>() { });
+    }
+}
@@ -0,0 +1,118 @@
+package edu.unac.service;
+
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.event.DeviceChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceSearchIndexTest {
+    private DeviceSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new DeviceSearchIndex();
+        index.index(device(1L, "Projector Epson", "Multimedia", "Room 101"));
+        index.index(device(2L, "Laptop 3", "Electronics", "Office"));
+        index.index(device(3L, "Laptop 12", "Electronics", "Lab"));
+        index.index(device(4L, "Camera", "Photo", "Laptop cart"));
+    }
+
+    @Test
+    void search_partialName_shouldMatchSubstringsCaseInsensitively() {
+        assertEquals(List.of(1L), index.search("JECT", 10));
+    }
+
+    @Test
+    void search_severalTerms_shouldRequireAllOfThem() {
+        assertEquals(List.of(2L), index.search("laptop 3", 10));
+        assertEquals(List.of(3L), index.search("lap 12", 10));
+    }
+
+    @Test
+    void search_shortTerm_shouldOnlyMatchWordPrefixes() {
+        assertEquals(List.of(1L), index.search("ep", 10));
+        assertEquals(List.of(), index.search("ps", 10));
+    }
+
+    @Test
+    void search_shouldRankNameMatchesAboveOtherFields() {
+        assertEquals(List.of(2L, 3L, 4L), index.search("laptop", 10));
+        assertEquals(List.of(2L, 3L), index.search("laptop", 2));
+    }
+
+    @Test
+    void search_allTrigramsPresentButNotAdjacent_shouldNotMatch() {
+        index.index(device(5L, "Abcxbcab", "Misc", "Store"));
+
+        // abc, bca and cab all occur in "abcxbcab", but "abcab" does not
+        assertEquals(List.of(), index.search("abcab", 10));
+        assertEquals(List.of(5L), index.search("xbcab", 10));
+    }
+
+    @Test
+    void search_blankQueryOrInvalidLimit_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> index.search("  ", 10));
+        assertThrows(IllegalArgumentException.class, () -> index.search(null, 10));
+        assertThrows(IllegalArgumentException.class, () -> index.search("laptop", 0));
+    }
+
+    @Test
+    void onDeviceChanged_shouldFollowRegistrationsAndDeletions() {
+        index.onDeviceChanged(DeviceChangedEvent.registered(device(5L, "Laptop 99", "Electronics", "Office")));
+        index.onDeviceChanged(DeviceChangedEvent.deleted(2L));
+
+        assertEquals(List.of(3L, 5L, 4L), index.search("laptop", 10));
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    void index_renamedDevice_shouldOnlyMatchTheNewName() {
+        index.index(device(1L, "Scanner", "Multimedia", "Room 101"));
+
+        assertEquals(List.of(), index.search("projector", 10));
+        assertEquals(List.of(1L), index.search("scan", 10));
+    }
+
+    @Test
+    void remove_manyDevices_shouldCompactAndKeepTheRest() {
+        for (long id = 100; id < 3_100; id++) {
+            index.index(device(id, "Tablet " + id, "Electronics", "Store"));
+        }
+        for (long id = 100; id < 3_000; id++) {
+            index.remove(id);
+        }
+
+        assertEquals(104, index.size());
+        assertEquals(List.of(3_000L, 3_001L), index.search("tablet", 2));
+        assertEquals(List.of(2L, 3L, 4L), index.search("laptop", 10));
+    }
+
+    @Test
+    void rebuild_shouldKeepChangesPublishedWhileItRuns() {
+        List<List<Device>> pages = new ArrayList<>(List.of(
+                List.of(device(1L, "Projector Epson", "Multimedia", "Room 101"), device(2L, "Laptop 3", "Electronics", "Office")),
+                List.of()));
+
+        index.rebuild(cursor -> {
+            if (cursor == null) {
+                // Committed after the first page was read, so that page no longer has the latest rows
+                index.onDeviceChanged(DeviceChangedEvent.deleted(2L));
+                index.onDeviceChanged(DeviceChangedEvent.registered(device(7L, "Laptop 7", "Electronics", "Office")));
+            }
+            return pages.remove(0);
+        });
+
+        assertEquals(List.of(7L), index.search("laptop", 10));
+        assertEquals(2, index.size());
+    }
+
+    private static Device device(Long id, String name, String type, String location) {
+        return new Device(id, name, type, location, DeviceStatus.AVAILABLE, 0L);
+    }
+}
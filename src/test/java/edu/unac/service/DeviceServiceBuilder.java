@@ -0,0 +1,54 @@
+package edu.unac.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.unac.repository.DeviceRepository;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.Duration;
+
+// Builds a DeviceService for unit tests; everything not set is a fresh in-memory collaborator and no events are published
+final class DeviceServiceBuilder {
+    private final DeviceRepository deviceRepository;
+    private ApplicationEventPublisher eventPublisher = event -> { };
+    private DeviceCache deviceCache = new DeviceCache(10_000, Duration.ofMinutes(5));
+    private DeviceSearchIndex searchIndex = new DeviceSearchIndex();
+    private DeviceAvailabilityIndex availabilityIndex = new DeviceAvailabilityIndex();
+    private DeviceListSnapshot listSnapshot = new DeviceListSnapshot(new ObjectMapper(), 100_000);
+
+    private DeviceServiceBuilder(DeviceRepository deviceRepository) {
+        this.deviceRepository = deviceRepository;
+    }
+
+    static DeviceServiceBuilder deviceService(DeviceRepository deviceRepository) {
+        return new DeviceServiceBuilder(deviceRepository);
+    }
+
+    DeviceServiceBuilder eventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+        return this;
+    }
+
+    DeviceServiceBuilder deviceCache(DeviceCache deviceCache) {
+        this.deviceCache = deviceCache;
+        return this;
+    }
+
+    DeviceServiceBuilder searchIndex(DeviceSearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+        return this;
+    }
+
+    DeviceServiceBuilder availabilityIndex(DeviceAvailabilityIndex availabilityIndex) {
+        this.availabilityIndex = availabilityIndex;
+        return this;
+    }
+
+    DeviceServiceBuilder listSnapshot(DeviceListSnapshot listSnapshot) {
+        this.listSnapshot = listSnapshot;
+        return this;
+    }
+
+    DeviceService build() {
+        return new DeviceService(deviceRepository, eventPublisher, deviceCache, searchIndex, availabilityIndex, listSnapshot);
+    }
+}
@@ -2,15 +2,21 @@ package edu.unac.service;
 
 import edu.unac.domain.Device;
 import edu.unac.domain.DeviceStatus;
+import edu.unac.event.DeviceChangedEvent;
 import edu.unac.repository.DeviceRepository;
 import net.bytebuddy.implementation.bytecode.Division;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.domain.Specification;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 
+import static edu.unac.service.DeviceServiceBuilder.deviceService;
 import static org.mockito.Mockito.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -22,7 +28,7 @@ class DeviceServiceTest {
     @BeforeEach
     void setUp() {
         deviceRepository = mock(DeviceRepository.class);
-        deviceService = new DeviceService(deviceRepository);
+        deviceService = deviceService(deviceRepository).build();
     }
 
     @Test
@@ -75,6 +81,31 @@ class DeviceServiceTest {
         verify(deviceRepository).findAll();
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void getDevicesPage_moreRowsThanLimit_shouldReturnNextCursor() {
+        Device first = new Device();
+        first.setId(4L);
+        Device second = new Device();
+        second.setId(7L);
+        Device extra = new Device();
+        extra.setId(9L);
+        when(deviceRepository.findBy(any(Specification.class), any(Function.class)))
+                .thenReturn(Arrays.asList(first, second, extra));
+
+        CursorPage<Device> page = deviceService.getDevicesPage(null, 2, DeviceStatus.AVAILABLE, null, null);
+
+        assertEquals(2, page.items().size());
+        assertEquals(7L, page.nextCursor());
+    }
+
+    @Test
+    void getDevicesPage_invalidLimit_shouldThrowException() {
+        Exception exception = assertThrows(IllegalArgumentException.class, () ->
+                deviceService.getDevicesPage(null, 0, null, null, null));
+        assertEquals("Page limit must be at least 1", exception.getMessage());
+    }
+
     @Test
     void getDeviceById_shouldReturnDevice() {
         Device device = new Device();
@@ -87,6 +118,44 @@ class DeviceServiceTest {
         assertEquals(1L, result.get().getId());
     }
 
+    @Test
+    void getDeviceById_cachedDevice_shouldNotHitRepositoryAgain() {
+        Device device = new Device();
+        device.setId(1L);
+        device.setName("Laptop");
+        when(deviceRepository.findById(1L)).thenReturn(Optional.of(device));
+
+        deviceService.getDeviceById(1L);
+        Optional<Device> result = deviceService.getDeviceById(1L);
+
+        assertEquals("Laptop", result.orElseThrow().getName());
+        assertNotSame(device, result.get());
+        verify(deviceRepository, times(1)).findById(1L);
+        assertEquals(1, deviceService.getCacheStats().get("devices").hits());
+    }
+
+    @Test
+    void updateDeviceStatus_shouldPublishEventThatInvalidatesCache() {
+        DeviceCache deviceCache = new DeviceCache(100, Duration.ofMinutes(1));
+        List<Object> events = new ArrayList<>();
+        deviceService = deviceService(deviceRepository)
+                .eventPublisher(events::add)
+                .deviceCache(deviceCache)
+                .build();
+
+        Device device = new Device(1L, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, 0L);
+        when(deviceRepository.findById(1L)).thenReturn(Optional.of(device));
+        when(deviceRepository.save(any(Device.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        deviceService.getDeviceById(1L);
+
+        deviceService.updateDeviceStatus(1L, DeviceStatus.MAINTENANCE);
+        events.forEach(event -> deviceCache.onDeviceChanged((DeviceChangedEvent) event));
+
+        assertEquals(DeviceChangedEvent.statusChanged(device), events.get(0));
+        assertEquals(DeviceStatus.MAINTENANCE, deviceService.getDeviceById(1L).orElseThrow().getStatus());
+        verify(deviceRepository, times(3)).findById(1L);
+    }
+
     @Test
     void updateDeviceStatus_existingDevice_shouldUpdateStatus() {
         Device device = new Device();
@@ -136,4 +205,22 @@ class DeviceServiceTest {
 
         verify(deviceRepository).deleteById(1L);
     }
-}
\ No newline at end of file
+
+    @Test
+    void buildIndexes_shouldFillBothIndexesFromOneScan() {
+        Device laptop = new Device(1L, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, 1_000L);
+        DeviceSearchIndex searchIndex = new DeviceSearchIndex();
+        DeviceAvailabilityIndex availabilityIndex = new DeviceAvailabilityIndex();
+        deviceService = deviceService(deviceRepository)
+                .searchIndex(searchIndex)
+                .availabilityIndex(availabilityIndex)
+                .build();
+        doReturn(List.of(laptop)).doReturn(List.of()).when(deviceRepository).findBy(any(Specification.class), any());
+
+        deviceService.buildIndexes();
+
+        assertEquals(List.of(1L), searchIndex.search("lap", 10));
+        assertEquals(List.of(1L), availabilityIndex.availableIds("Electronics", null));
+        verify(deviceRepository, times(2)).findBy(any(Specification.class), any());
+    }
+}
@@ -0,0 +1,99 @@
+package edu.unac.service;
+
+import edu.unac.domain.Loan;
+import edu.unac.repository.LoanArchiveRepository;
+import edu.unac.repository.LoanRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "inventory.archive.chunk-size=2",
+        "inventory.archive.interval=PT1H"
+})
+class LoanArchiveTest {
+    private static final long DAY = 86_400_000L;
+
+    @Autowired
+    private LoanArchive loanArchive;
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private LoanArchiveRepository loanArchiveRepository;
+
+    @BeforeEach
+    void setup() {
+        loanRepository.deleteAll();
+        loanArchiveRepository.deleteAll();
+    }
+
+    @Test
+    void codecRoundTripTest() {
+        long start = 1_700_000_000_000L;
+        List<Loan> loans = List.of(
+                new Loan(3L, 7L, "Juan Perez", start, start + DAY, true, start + 14 * DAY, false, 2L),
+                new Loan(9L, 7L, null, start + DAY, start + 3 * DAY, true, 0L, true, 3L),
+                new Loan(12L, 7L, "Juan Perez", start + 2 * DAY, start + 2 * DAY + 5, true, start + DAY, true, 0L));
+
+        List<Loan> decoded = LoanArchiveCodec.decode(7L, LoanArchiveCodec.encode(loans));
+
+        assertEquals(loans, decoded);
+    }
+
+    @Test
+    void archiveMovesOnlyOldReturnedLoansTest() {
+        long now = System.currentTimeMillis();
+        Loan old1 = save(1L, now - 100 * DAY, true);
+        Loan old2 = save(2L, now - 95 * DAY, true);
+        Loan old3 = save(1L, now - 91 * DAY, true);
+        Loan recent = save(1L, now - DAY, true);
+        Loan open = save(2L, now - 200 * DAY, false);
+
+        LoanArchiveReport report = loanArchive.archiveOlderThan(Duration.ofDays(90));
+
+        assertEquals(3, report.archivedLoans());
+        assertEquals(5, report.hotLoansBefore());
+        assertEquals(2, report.hotLoansAfter());
+        assertEquals(3, report.archivedLoansTotal());
+        assertTrue(report.archiveBytes() > 0);
+        // Batches of two split device 1's loans from device 2's: (1: old1, old3), (2: old2)
+        assertEquals(2, report.chunks());
+        assertEquals(List.of(recent.getId(), open.getId()),
+                loanRepository.findAll().stream().map(Loan::getId).sorted().toList());
+
+        assertEquals(List.of(recent), loanService.getLoansByDeviceId(1L, false));
+        assertEquals(List.of(old1, old3, recent), loanService.getLoansByDeviceId(1L, true));
+        assertEquals(List.of(old2, open), loanService.getLoansByDeviceId(2L, true));
+
+        List<Loan> exported = new ArrayList<>();
+        loanService.exportLoans(exported::add, true);
+        assertEquals(5, exported.size());
+
+        // A second run finds nothing left to move
+        assertEquals(0, loanArchive.archiveOlderThan(Duration.ofDays(90)).archivedLoans());
+    }
+
+    @Test
+    void archiveRejectsNegativeAgeTest() {
+        assertThrows(IllegalArgumentException.class, () -> loanArchive.archiveOlderThan(Duration.ofDays(-1)));
+    }
+
+    private Loan save(Long deviceId, long endDate, boolean returned) {
+        return loanRepository.save(new Loan(null, deviceId, "Juan Perez", endDate - DAY, endDate, returned,
+                endDate + DAY, false, null));
+    }
+}
@@ -0,0 +1,125 @@
+package edu.unac.service;
+
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.domain.Loan;
+import edu.unac.repository.DeviceRepository;
+import edu.unac.repository.LoanRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "inventory.loans.group-commit.enabled=true",
+        "inventory.loans.group-commit.max-wait=PT0.2S"
+})
+class LoanGroupCommitterTest {
+    @Autowired
+    private LoanGroupCommitter groupCommitter;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void concurrentCallsShareOneTransactionTest() throws Exception {
+        List<Device> devices = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            devices.add(deviceRepository.save(new Device(null, "Laptop " + i, "Electronics", "Office", DeviceStatus.AVAILABLE, 0L)));
+        }
+        long windowsBefore = meterRegistry.summary("inventory.loans.group.commit.size").count();
+
+        List<Loan> loans = all(devices.stream()
+                .map(device -> (Callable<Loan>) () -> groupCommitter.registerLoan(new Loan(null, device.getId(), "Juan Perez", 0L, 0L, false)))
+                .toList());
+
+        assertTrue(meterRegistry.summary("inventory.loans.group.commit.size").count() - windowsBefore < devices.size());
+        for (Loan loan : loans) {
+            assertNotNull(loan.getId());
+            assertTrue(loan.getDueDate() > loan.getStartDate());
+            assertEquals(DeviceStatus.LOANED, deviceRepository.findById(loan.getDeviceId()).orElseThrow().getStatus());
+        }
+
+        List<Loan> returned = all(loans.stream()
+                .map(loan -> (Callable<Loan>) () -> groupCommitter.markAsReturned(loan.getId()))
+                .toList());
+
+        for (Loan loan : returned) {
+            assertTrue(loan.isReturned());
+            assertTrue(loanRepository.findById(loan.getId()).orElseThrow().isReturned());
+            assertEquals(DeviceStatus.AVAILABLE, deviceRepository.findById(loan.getDeviceId()).orElseThrow().getStatus());
+        }
+    }
+
+    @Test
+    void everyCallerGetsItsOwnOutcomeTest() throws Exception {
+        Device free = deviceRepository.save(new Device(null, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, 0L));
+        Device contested = deviceRepository.save(new Device(null, "Projector", "Multimedia", "Room101", DeviceStatus.AVAILABLE, 0L));
+        Loan closed = loanRepository.save(new Loan(null, free.getId(), "Maria Lopez", 0L, 1L, true));
+
+        List<Future<Loan>> outcomes = submitTogether(List.of(
+                () -> groupCommitter.registerLoan(new Loan(null, free.getId(), "Juan Perez", 0L, 0L, false)),
+                () -> groupCommitter.registerLoan(new Loan(null, contested.getId(), "Ana Gomez", 0L, 0L, false)),
+                () -> groupCommitter.registerLoan(new Loan(null, contested.getId(), "Luis Diaz", 0L, 0L, false)),
+                () -> groupCommitter.registerLoan(new Loan(null, -1L, "Juan Perez", 0L, 0L, false)),
+                () -> groupCommitter.markAsReturned(-1L),
+                () -> groupCommitter.markAsReturned(closed.getId())));
+
+        assertEquals("Juan Perez", outcomes.get(0).get().getBorrowedBy());
+        int contestedWins = 0;
+        for (Future<Loan> outcome : outcomes.subList(1, 3)) {
+            try {
+                outcome.get();
+                contestedWins++;
+            } catch (ExecutionException e) {
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+            }
+        }
+        assertEquals(1, contestedWins);
+        assertInstanceOf(IllegalArgumentException.class, assertThrows(ExecutionException.class, () -> outcomes.get(3).get()).getCause());
+        assertInstanceOf(IllegalArgumentException.class, assertThrows(ExecutionException.class, () -> outcomes.get(4).get()).getCause());
+        assertInstanceOf(IllegalStateException.class, assertThrows(ExecutionException.class, () -> outcomes.get(5).get()).getCause());
+    }
+
+    private static <T> List<T> all(List<Callable<T>> calls) throws Exception {
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : submitTogether(calls)) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    private static <T> List<Future<T>> submitTogether(List<Callable<T>> calls) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(calls.size());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>();
+        for (Callable<T> call : calls) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return call.call();
+            }));
+        }
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+        return futures;
+    }
+}
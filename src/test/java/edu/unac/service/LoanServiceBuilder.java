@@ -0,0 +1,64 @@
+package edu.unac.service;
+
+import edu.unac.repository.DeviceRepository;
+import edu.unac.repository.LoanRepository;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.Duration;
+
+// Builds a LoanService for unit tests; everything not set is a fresh in-memory collaborator and no events are published
+final class LoanServiceBuilder {
+    private final LoanRepository loanRepository;
+    private final DeviceRepository deviceRepository;
+    private ApplicationEventPublisher eventPublisher = event -> { };
+    private DeviceCache deviceCache = new DeviceCache(10_000, Duration.ofMinutes(5));
+    private Duration defaultLoanDuration = Duration.ofDays(14);
+    private BorrowerLoanCounts borrowerLoanCounts;
+    private DeviceAvailabilityIndex availabilityIndex = new DeviceAvailabilityIndex();
+    private LoanArchive loanArchive;
+
+    private LoanServiceBuilder(LoanRepository loanRepository, DeviceRepository deviceRepository) {
+        this.loanRepository = loanRepository;
+        this.deviceRepository = deviceRepository;
+        this.borrowerLoanCounts = new BorrowerLoanCounts(loanRepository, 0);
+    }
+
+    static LoanServiceBuilder loanService(LoanRepository loanRepository, DeviceRepository deviceRepository) {
+        return new LoanServiceBuilder(loanRepository, deviceRepository);
+    }
+
+    LoanServiceBuilder eventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+        return this;
+    }
+
+    LoanServiceBuilder deviceCache(DeviceCache deviceCache) {
+        this.deviceCache = deviceCache;
+        return this;
+    }
+
+    LoanServiceBuilder defaultLoanDuration(Duration defaultLoanDuration) {
+        this.defaultLoanDuration = defaultLoanDuration;
+        return this;
+    }
+
+    LoanServiceBuilder borrowerLoanCounts(BorrowerLoanCounts borrowerLoanCounts) {
+        this.borrowerLoanCounts = borrowerLoanCounts;
+        return this;
+    }
+
+    LoanServiceBuilder availabilityIndex(DeviceAvailabilityIndex availabilityIndex) {
+        this.availabilityIndex = availabilityIndex;
+        return this;
+    }
+
+    LoanServiceBuilder loanArchive(LoanArchive loanArchive) {
+        this.loanArchive = loanArchive;
+        return this;
+    }
+
+    LoanService build() {
+        return new LoanService(loanRepository, deviceRepository, eventPublisher, deviceCache, defaultLoanDuration,
+                borrowerLoanCounts, availabilityIndex, loanArchive);
+    }
+}
@@ -0,0 +1,122 @@
+package edu.unac.service;
+
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.domain.Loan;
+import edu.unac.repository.DeviceRepository;
+import edu.unac.repository.LoanRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class LoanServiceConcurrencyTest {
+    private static final int DEVICES = 8;
+    private static final int BORROWERS_PER_DEVICE = 16;
+    private static final int ROUNDS = 3;
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @BeforeEach
+    void setup() {
+        loanRepository.deleteAll();
+        deviceRepository.deleteAll();
+    }
+
+    @Test
+    void concurrentLoansOfSameDeviceTest() throws Exception {
+        List<Device> devices = new ArrayList<>();
+        for (int i = 0; i < DEVICES; i++) {
+            devices.add(deviceRepository.save(new Device(null, "Laptop " + i, "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis())));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(DEVICES * BORROWERS_PER_DEVICE);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                AtomicInteger loaned = new AtomicInteger();
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> attempts = new ArrayList<>();
+                for (Device device : devices) {
+                    for (int b = 0; b < BORROWERS_PER_DEVICE; b++) {
+                        String borrower = "Borrower " + b;
+                        attempts.add(pool.submit(() -> {
+                            start.await();
+                            try {
+                                loanService.registerLoan(new Loan(null, device.getId(), borrower, 0L, 0L, false));
+                                loaned.incrementAndGet();
+                            } catch (IllegalStateException | ConcurrencyFailureException e) {
+                                // Lost the race for this device
+                            }
+                            return null;
+                        }));
+                    }
+                }
+                start.countDown();
+                for (Future<?> attempt : attempts) {
+                    attempt.get(30, TimeUnit.SECONDS);
+                }
+
+                assertEquals(DEVICES, loaned.get());
+                for (Device device : devices) {
+                    List<Loan> open = loanRepository.findByDeviceId(device.getId()).stream()
+                            .filter(loan -> !loan.isReturned())
+                            .toList();
+                    assertEquals(1, open.size());
+                    assertEquals(DeviceStatus.LOANED, deviceRepository.findById(device.getId()).orElseThrow().getStatus());
+                }
+
+                returnAllConcurrently(pool);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void returnAllConcurrently(ExecutorService pool) throws Exception {
+        List<Loan> open = loanRepository.findAll().stream().filter(loan -> !loan.isReturned()).toList();
+        AtomicInteger returned = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> attempts = new ArrayList<>();
+        for (Loan loan : open) {
+            for (int i = 0; i < 4; i++) {
+                attempts.add(pool.submit(() -> {
+                    start.await();
+                    try {
+                        loanService.markAsReturned(loan.getId());
+                        returned.incrementAndGet();
+                    } catch (IllegalStateException | ConcurrencyFailureException e) {
+                        // Already returned by another request
+                    }
+                    return null;
+                }));
+            }
+        }
+        start.countDown();
+        for (Future<?> attempt : attempts) {
+            attempt.get(30, TimeUnit.SECONDS);
+        }
+
+        assertEquals(open.size(), returned.get());
+        assertTrue(deviceRepository.findAll().stream().allMatch(device -> device.getStatus() == DeviceStatus.AVAILABLE));
+    }
+}
@@ -3,16 +3,20 @@ package edu.unac.service;
 import edu.unac.domain.Device;
 import edu.unac.domain.DeviceStatus;
 import edu.unac.domain.Loan;
+import edu.unac.event.DeviceChangedEvent;
 import edu.unac.repository.DeviceRepository;
 import edu.unac.repository.LoanRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
+import static edu.unac.service.LoanServiceBuilder.loanService;
 import static org.mockito.Mockito.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -33,13 +37,59 @@ class LoanServiceTest {
         Loan loan = new Loan(null, device.getId(), "Juan Perez", System.currentTimeMillis(), System.currentTimeMillis() + 604800000L, false);
 
         when(deviceRepository.findById(device.getId())).thenReturn(Optional.of(device));
-        when(deviceRepository.save(device)).thenReturn(new Device(device.getId(), device.getName(), device.getType(), device.getLocation(), DeviceStatus.LOANED, device.getAddedDate()));
+        when(deviceRepository.compareAndSetStatus(device.getId(), DeviceStatus.AVAILABLE, DeviceStatus.LOANED)).thenReturn(1);
         when(loanRepository.save(loan)).thenReturn(new Loan(1L, device.getId(), "Juan Perez", loan.getStartDate(), loan.getEndDate(), false));
 
-        LoanService loanService = new LoanService(loanRepository, deviceRepository);
+        LoanService loanService = loanService(loanRepository, deviceRepository).build();
         Loan registeredLoan = loanService.registerLoan(loan);
 
         assertEquals("Juan Perez", registeredLoan.getBorrowedBy());
+        verify(deviceRepository).compareAndSetStatus(device.getId(), DeviceStatus.AVAILABLE, DeviceStatus.LOANED);
+    }
+
+    @Test
+    void registerLoanDefaultDueDateTest() {
+        Device device = new Device(1L, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis());
+        Loan loan = new Loan(null, device.getId(), "Juan Perez", 0L, 0L, false);
+
+        when(deviceRepository.findById(device.getId())).thenReturn(Optional.of(device));
+        when(deviceRepository.compareAndSetStatus(device.getId(), DeviceStatus.AVAILABLE, DeviceStatus.LOANED)).thenReturn(1);
+        when(loanRepository.save(loan)).thenReturn(loan);
+
+        LoanService loanService = loanService(loanRepository, deviceRepository)
+                .defaultLoanDuration(Duration.ofDays(7))
+                .build();
+        Loan registeredLoan = loanService.registerLoan(loan);
+
+        assertEquals(registeredLoan.getStartDate() + Duration.ofDays(7).toMillis(), registeredLoan.getDueDate());
+        assertFalse(registeredLoan.isOverdue());
+    }
+
+    @Test
+    void registerLoanDueDateInPastTest() {
+        Loan loan = new Loan(null, 1L, "Juan Perez", 0L, 0L, false, System.currentTimeMillis() - 1_000L, false, null);
+
+        LoanService loanService = loanService(loanRepository, deviceRepository).build();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> loanService.registerLoan(loan));
+        verify(deviceRepository, never()).compareAndSetStatus(any(), any(), any());
+        verify(loanRepository, never()).save(any());
+    }
+
+    @Test
+    void registerLoanLostRaceTest() {
+        Device device = new Device(1L, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis());
+        Loan loan = new Loan(null, device.getId(), "Juan Perez", System.currentTimeMillis(), System.currentTimeMillis() + 604800000L, false);
+
+        when(deviceRepository.findById(device.getId())).thenReturn(Optional.of(device));
+        when(deviceRepository.compareAndSetStatus(device.getId(), DeviceStatus.AVAILABLE, DeviceStatus.LOANED)).thenReturn(0);
+
+        LoanService loanService = loanService(loanRepository, deviceRepository).build();
+
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> loanService.registerLoan(loan));
+        verify(loanRepository, never()).save(any());
     }
 
     @Test
@@ -48,7 +98,7 @@ class LoanServiceTest {
 
         when(deviceRepository.findById(1L)).thenReturn(Optional.empty());
 
-        LoanService loanService = new LoanService(loanRepository, deviceRepository);
+        LoanService loanService = loanService(loanRepository, deviceRepository).build();
 
         assertThrows(IllegalArgumentException.class,
                 () -> loanService.registerLoan(loan));
@@ -61,12 +111,115 @@ class LoanServiceTest {
 
         when(deviceRepository.findById(device.getId())).thenReturn(Optional.of(device));
 
-        LoanService loanService = new LoanService(loanRepository, deviceRepository);
+        LoanService loanService = loanService(loanRepository, deviceRepository).build();
 
         assertThrows(IllegalStateException.class,
                 () -> loanService.registerLoan(loan));
     }
 
+    @Test
+    void registerLoansBestEffortTest() {
+        Device device = new Device(1L, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis());
+        Loan first = new Loan(null, device.getId(), "Juan Perez", 0L, 0L, false);
+        Loan duplicate = new Loan(null, device.getId(), "Maria Lopez", 0L, 0L, false);
+        Loan unknown = new Loan(null, 2L, "Maria Lopez", 0L, 0L, false);
+
+        when(deviceRepository.findAllById(any())).thenReturn(List.of(device));
+
+        LoanService loanService = loanService(loanRepository, deviceRepository).build();
+        List<LoanBatchResult> results = loanService.registerLoans(List.of(first, duplicate, unknown), BatchMode.BEST_EFFORT);
+
+        assertTrue(results.get(0).applied());
+        assertEquals("Device is not available for loan", results.get(1).error());
+        assertEquals("Device not found", results.get(2).error());
+        assertEquals(LoanBatchResult.ErrorKind.UNAVAILABLE, results.get(1).errorKind());
+        assertEquals(LoanBatchResult.ErrorKind.NOT_FOUND, results.get(2).errorKind());
+        assertEquals(DeviceStatus.LOANED, device.getStatus());
+        verify(loanRepository).saveAll(List.of(first));
+    }
+
+    @Test
+    void registerLoanBorrowerLimitTest() {
+        Device device1 = new Device(1L, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis());
+        Device device2 = new Device(2L, "Tablet", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis());
+        Loan first = new Loan(null, device1.getId(), "Juan Perez", 0L, 0L, false);
+        Loan second = new Loan(null, device2.getId(), "Juan Perez", 0L, 0L, false);
+
+        when(deviceRepository.findById(device1.getId())).thenReturn(Optional.of(device1));
+        when(deviceRepository.findById(device2.getId())).thenReturn(Optional.of(device2));
+        when(deviceRepository.compareAndSetStatus(any(), eq(DeviceStatus.AVAILABLE), eq(DeviceStatus.LOANED))).thenReturn(1);
+        when(loanRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        BorrowerLoanCounts borrowerLoanCounts = new BorrowerLoanCounts(loanRepository, 1);
+        LoanService loanService = loanService(loanRepository, deviceRepository)
+                .borrowerLoanCounts(borrowerLoanCounts)
+                .build();
+        loanService.registerLoan(first);
+
+        assertThrows(IllegalStateException.class,
+                () -> loanService.registerLoan(second));
+        assertEquals(1, borrowerLoanCounts.openLoans("Juan Perez"));
+        verify(deviceRepository, never()).compareAndSetStatus(device2.getId(), DeviceStatus.AVAILABLE, DeviceStatus.LOANED);
+    }
+
+    @Test
+    void registerLoanKnownUnavailableFailsFastTest() {
+        Device device = new Device(1L, "Laptop", "Electronics", "Office", DeviceStatus.LOANED, System.currentTimeMillis());
+        Loan loan = new Loan(null, device.getId(), "Juan Perez", 0L, 0L, false);
+
+        DeviceAvailabilityIndex availabilityIndex = new DeviceAvailabilityIndex();
+        availabilityIndex.onDeviceChanged(DeviceChangedEvent.statusChanged(device));
+        LoanService loanService = loanService(loanRepository, deviceRepository)
+                .availabilityIndex(availabilityIndex)
+                .build();
+
+        assertThrows(IllegalStateException.class,
+                () -> loanService.registerLoan(loan));
+        verify(deviceRepository, never()).findById(any());
+        verify(deviceRepository, never()).compareAndSetStatus(any(), any(), any());
+    }
+
+    @Test
+    void registerLoansBorrowerLimitTest() {
+        Device device1 = new Device(1L, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis());
+        Device device2 = new Device(2L, "Tablet", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis());
+        Loan first = new Loan(null, device1.getId(), "Juan Perez", 0L, 0L, false);
+        Loan second = new Loan(null, device2.getId(), "Juan Perez", 0L, 0L, false);
+
+        when(deviceRepository.findAllById(any())).thenReturn(List.of(device1, device2));
+
+        BorrowerLoanCounts borrowerLoanCounts = new BorrowerLoanCounts(loanRepository, 1);
+        LoanService loanService = loanService(loanRepository, deviceRepository)
+                .borrowerLoanCounts(borrowerLoanCounts)
+                .build();
+        List<LoanBatchResult> results = loanService.registerLoans(List.of(first, second), BatchMode.BEST_EFFORT);
+
+        assertTrue(results.get(0).applied());
+        assertEquals(BorrowerLoanCounts.LIMIT_REACHED, results.get(1).error());
+        assertEquals(LoanBatchResult.ErrorKind.LIMIT_REACHED, results.get(1).errorKind());
+        assertEquals(DeviceStatus.AVAILABLE, device2.getStatus());
+        assertEquals(1, borrowerLoanCounts.openLoans("Juan Perez"));
+    }
+
+    @Test
+    void registerLoansAllOrNothingTest() {
+        Device device = new Device(1L, "Laptop", "Electronics", "Office", DeviceStatus.AVAILABLE, System.currentTimeMillis());
+        Loan valid = new Loan(null, device.getId(), "Juan Perez", 0L, 0L, false);
+        Loan unknown = new Loan(null, 2L, "Maria Lopez", 0L, 0L, false);
+
+        when(deviceRepository.findAllById(any())).thenReturn(List.of(device));
+
+        LoanService loanService = loanService(loanRepository, deviceRepository).build();
+        List<LoanBatchResult> results = loanService.registerLoans(List.of(valid, unknown), BatchMode.ALL_OR_NOTHING);
+
+        assertFalse(results.get(0).applied());
+        assertFalse(results.get(1).applied());
+        assertEquals(LoanBatchResult.ErrorKind.BATCH_REJECTED, results.get(0).errorKind());
+        assertEquals(LoanBatchResult.ErrorKind.NOT_FOUND, results.get(1).errorKind());
+        assertEquals(DeviceStatus.AVAILABLE, device.getStatus());
+        verify(loanRepository, never()).saveAll(any());
+    }
+
     @Test
     void getAllLoansTest() {
         Loan loan1 = new Loan(null, 1L, "Juan Perez", System.currentTimeMillis(), System.currentTimeMillis() + 604800000L, false);
@@ -74,7 +227,7 @@ class LoanServiceTest {
 
         when(loanRepository.findAll()).thenReturn(List.of(loan1, loan2));
 
-        LoanService loanService = new LoanService(loanRepository, deviceRepository);
+        LoanService loanService = loanService(loanRepository, deviceRepository).build();
         List<Loan> loans = loanService.getAllLoans();
 
         assertEquals(2, loans.size());
@@ -86,7 +239,7 @@ class LoanServiceTest {
 
         when(loanRepository.findById(1L)).thenReturn(Optional.of(loan));
 
-        LoanService loanService = new LoanService(loanRepository, deviceRepository);
+        LoanService loanService = loanService(loanRepository, deviceRepository).build();
         Optional<Loan> foundLoan = loanService.getLoanById(1L);
 
         assertTrue(foundLoan.isPresent());
@@ -99,21 +252,37 @@ class LoanServiceTest {
 
         when(loanRepository.findById(1L)).thenReturn(Optional.of(loan));
         when(deviceRepository.findById(device.getId())).thenReturn(Optional.of(device));
-        when(deviceRepository.save(device)).thenReturn(new Device(device.getId(), device.getName(), device.getType(), device.getLocation(), DeviceStatus.AVAILABLE, device.getAddedDate()));
-        when(loanRepository.save(loan)).thenReturn(new Loan(1L, device.getId(), "Juan Perez", loan.getStartDate(), System.currentTimeMillis(), true));
+        when(loanRepository.markReturnedIfOpen(eq(1L), anyLong())).thenReturn(1);
+        when(deviceRepository.compareAndSetStatus(device.getId(), DeviceStatus.LOANED, DeviceStatus.AVAILABLE)).thenReturn(1);
 
-        LoanService loanService = new LoanService(loanRepository, deviceRepository);
+        LoanService loanService = loanService(loanRepository, deviceRepository).build();
         Loan returnedLoan = loanService.markAsReturned(1L);
 
         assertTrue(returnedLoan.isReturned());
-        assertEquals(DeviceStatus.AVAILABLE, device.getStatus());
+        verify(deviceRepository).compareAndSetStatus(device.getId(), DeviceStatus.LOANED, DeviceStatus.AVAILABLE);
+    }
+
+    @Test
+    void markAsReturnedLostRaceTest() {
+        Device device = new Device(1L, "Laptop", "Electronics", "Office", DeviceStatus.LOANED, System.currentTimeMillis());
+        Loan loan = new Loan(1L, device.getId(), "Juan Perez", System.currentTimeMillis(), System.currentTimeMillis() + 604800000L, false);
+
+        when(loanRepository.findById(1L)).thenReturn(Optional.of(loan));
+        when(deviceRepository.findById(device.getId())).thenReturn(Optional.of(device));
+        when(loanRepository.markReturnedIfOpen(eq(1L), anyLong())).thenReturn(0);
+
+        LoanService loanService = loanService(loanRepository, deviceRepository).build();
+
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> loanService.markAsReturned(1L));
+        verify(deviceRepository, never()).compareAndSetStatus(any(), any(), any());
     }
 
     @Test
     void markAsReturnedLoanNotFoundTest() {
         when(loanRepository.findById(1L)).thenReturn(Optional.empty());
 
-        LoanService loanService = new LoanService(loanRepository, deviceRepository);
+        LoanService loanService = loanService(loanRepository, deviceRepository).build();
 
         assertThrows(IllegalArgumentException.class,
                 () -> loanService.markAsReturned(1L));
@@ -125,7 +294,7 @@ class LoanServiceTest {
 
         when(loanRepository.findById(1L)).thenReturn(Optional.of(loan));
 
-        LoanService loanService = new LoanService(loanRepository, deviceRepository);
+        LoanService loanService = loanService(loanRepository, deviceRepository).build();
 
         assertThrows(IllegalStateException.class,
                 () -> loanService.markAsReturned(1L));
@@ -138,7 +307,7 @@ class LoanServiceTest {
         when(loanRepository.findById(1L)).thenReturn(Optional.of(loan));
         when(deviceRepository.findById(loan.getDeviceId())).thenReturn(Optional.empty());
 
-        LoanService loanService = new LoanService(loanRepository, deviceRepository);
+        LoanService loanService = loanService(loanRepository, deviceRepository).build();
 
         assertThrows(IllegalArgumentException.class,
                 () -> loanService.markAsReturned(1L));
@@ -152,7 +321,7 @@ class LoanServiceTest {
 
         when(loanRepository.findByDeviceId(device.getId())).thenReturn(List.of(loan1, loan2));
 
-        LoanService loanService = new LoanService(loanRepository, deviceRepository);
+        LoanService loanService = loanService(loanRepository, deviceRepository).build();
         List<Loan> loans = loanService.getLoansByDeviceId(device.getId());
 
         assertEquals(2, loans.size());
@@ -0,0 +1,89 @@
+package edu.unac.service;
+
+import edu.unac.domain.Loan;
+import edu.unac.event.LoanChangedEvent;
+import edu.unac.repository.LoanRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "inventory.overdue.chunk-size=2",
+        "inventory.overdue.max-chunks-per-run=2",
+        "inventory.overdue.scan-interval=PT1H"
+})
+@RecordApplicationEvents
+class OverdueLoanScannerTest {
+    @Autowired
+    private OverdueLoanScanner overdueLoanScanner;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private ApplicationEvents events;
+
+    @BeforeEach
+    void setup() {
+        loanRepository.deleteAll();
+    }
+
+    @Test
+    void scanFlagsOnlyOpenLoansPastTheirDueDateTest() {
+        long now = System.currentTimeMillis();
+        Loan late = save(now - 2_000L, false);
+        Loan lateToo = save(now - 1_000L, false);
+        Loan lateReturned = save(now - 1_000L, true);
+        Loan notDue = save(now + 60_000L, false);
+        Loan noDueDate = save(0L, false);
+
+        OverdueScanReport report = overdueLoanScanner.scan(now);
+
+        assertEquals(2, report.flagged());
+        assertEquals(0, report.backlog());
+        assertTrue(loanRepository.findById(late.getId()).orElseThrow().isOverdue());
+        assertTrue(loanRepository.findById(lateToo.getId()).orElseThrow().isOverdue());
+        assertFalse(loanRepository.findById(lateReturned.getId()).orElseThrow().isOverdue());
+        assertFalse(loanRepository.findById(notDue.getId()).orElseThrow().isOverdue());
+        assertFalse(loanRepository.findById(noDueDate.getId()).orElseThrow().isOverdue());
+        assertEquals(late.getVersion() + 1, loanRepository.findById(late.getId()).orElseThrow().getVersion());
+
+        List<LoanChangedEvent> flagged = events.stream(LoanChangedEvent.class).toList();
+        assertEquals(List.of(late.getId(), lateToo.getId()), flagged.stream().map(LoanChangedEvent::loanId).toList());
+        assertTrue(flagged.stream().allMatch(event -> event.kind() == LoanChangedEvent.Kind.OVERDUE && event.loan().isOverdue()));
+    }
+
+    @Test
+    void scanLeavesWhatDoesNotFitInOneRunAsBacklogTest() {
+        long now = System.currentTimeMillis();
+        for (int i = 5; i > 0; i--) {
+            save(now - i * 1_000L, false);
+        }
+
+        OverdueScanReport first = overdueLoanScanner.scan(now);
+
+        assertEquals(4, first.flagged());
+        assertEquals(2, first.chunks());
+        assertEquals(1, first.backlog());
+
+        OverdueScanReport second = overdueLoanScanner.scan(now);
+
+        assertEquals(1, second.flagged());
+        assertEquals(0, second.backlog());
+        assertEquals(5, loanRepository.countByReturnedFalseAndOverdueTrue());
+        assertEquals(0, overdueLoanScanner.scan(now).flagged());
+    }
+
+    private Loan save(long dueDate, boolean returned) {
+        return loanRepository.save(new Loan(null, 1L, "Juan Perez", dueDate - 60_000L, 0L, returned, dueDate, false, null));
+    }
+}
@@ -0,0 +1,115 @@
+package edu.unac.service;
+
+import edu.unac.domain.Device;
+import edu.unac.domain.DeviceStatus;
+import edu.unac.domain.Loan;
+import edu.unac.repository.DeviceRepository;
+import edu.unac.repository.LoanRepository;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Drives the service hot paths from virtual threads and fails if JFR saw one park while pinned to its carrier
+// A tiny connection pool makes threads park waiting for connections, which is when pinning shows up
+@SpringBootTest(properties = {
+        "spring.threads.virtual.enabled=true",
+        "spring.datasource.hikari.maximum-pool-size=2"
+})
+class VirtualThreadPinningTest {
+    private static final int DEVICES = 16;
+    private static final int CLIENTS = 128;
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @BeforeEach
+    void setup() {
+        loanRepository.deleteAll();
+        deviceRepository.deleteAll();
+    }
+
+    @Test
+    void serviceCallsDoNotPinCarrierThreadsTest() throws Exception {
+        List<Long> deviceIds = new ArrayList<>();
+        for (int i = 0; i < DEVICES; i++) {
+            deviceIds.add(deviceService.registerDevice(new Device(null, "Laptop " + i, "Electronics", "Office", null, 0L)).getId());
+        }
+
+        Path dump = Files.createTempFile("pinning", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+
+            // Pinned carriers waiting on the pool can deadlock outright, so bound the wait rather than close()
+            ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+            try {
+                List<Future<?>> done = new ArrayList<>();
+                for (int c = 0; c < CLIENTS; c++) {
+                    Long deviceId = deviceIds.get(c % DEVICES);
+                    done.add(clients.submit(() -> {
+                        deviceService.getDeviceById(deviceId);
+                        deviceService.getAvailableDevices();
+                        try {
+                            Loan loan = loanService.registerLoan(new Loan(null, deviceId, "Borrower", 0L, 0L, false));
+                            loanService.markAsReturned(loan.getId());
+                        } catch (IllegalStateException | ConcurrencyFailureException e) {
+                            // Lost the race for this device
+                        }
+                        deviceService.getDevicesPage(null, 50, DeviceStatus.AVAILABLE, null, null);
+                        return null;
+                    }));
+                }
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+                for (Future<?> future : done) {
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                }
+            } finally {
+                clients.shutdownNow();
+            }
+
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> pinned = RecordingFile.readAllEvents(dump).stream()
+                .filter(event -> event.getEventType().getName().equals("jdk.VirtualThreadPinned"))
+                .toList();
+        Files.deleteIfExists(dump);
+        assertTrue(pinned.isEmpty(), () -> "Pinned virtual threads:\n" + pinned.stream()
+                .map(event -> event.getStackTrace() == null ? "?" : event.getStackTrace().getFrames().stream()
+                        .limit(25)
+                        .map(RecordedFrame::getMethod)
+                        .map(method -> method.getType().getName() + "." + method.getName())
+                        .collect(Collectors.joining("\n  ", "  ", "")))
+                .distinct()
+                .collect(Collectors.joining("\n---\n")));
+    }
+}